@@ -0,0 +1,119 @@
+package org.jenkinsci.confluence.plugins;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.Executor;
+
+import com.atlassian.confluence.util.http.HttpResponse;
+import com.atlassian.confluence.util.http.HttpRetrievalService;
+import com.atlassian.renderer.v2.SubRenderer;
+
+/**
+ * Stubs and update center documents shared by the benchmarks.
+ * <p>
+ * The stubs are dynamic proxies rather than mocks so that they add as little as possible
+ * to the measured work.
+ */
+final class BenchmarkFixtures {
+
+    /**
+     * Runs refreshes on the calling thread; the benchmarks never go stale anyway.
+     */
+    static final Executor SAME_THREAD = new Executor() {
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private BenchmarkFixtures() {
+    }
+
+    /**
+     * Returns the checked-in update center, wrapped in {@code updateCenter.post(...);} like the
+     * real update site, with {@code warnings} synthetic security warnings for {@code pluginId}.
+     * A quarter of the warnings match the distributed version, the rest only older ones.
+     */
+    static byte[] updateCenter(String pluginId, int warnings) throws IOException {
+        String json = new String(readFixture(), "ISO-8859-1").trim();
+        StringBuilder doc = new StringBuilder(json.length() + warnings * 200 + 32);
+        doc.append("updateCenter.post(\n{\"warnings\":[");
+        for (int i = 0; i < warnings; i++) {
+            if (i > 0)
+                doc.append(',');
+            String pattern = i % 4 == 0 ? ".*" : "0[.]" + i + "(|[.].*)";
+            doc.append("{\"id\":\"SECURITY-").append(i).append("\",\"type\":\"plugin\",\"name\":\"")
+                    .append(pluginId).append("\",\"message\":\"Synthetic warning ").append(i)
+                    .append("\",\"url\":\"https://jenkins.io/security/advisory/#SECURITY-").append(i)
+                    .append("\",\"versions\":[{\"pattern\":\"").append(pattern).append("\"}]}");
+        }
+        doc.append("],").append(json.substring(1)).append("\n);");
+        return doc.toString().getBytes("ISO-8859-1");
+    }
+
+    /**
+     * Returns a service that answers every request with 200 and the given body.
+     */
+    static HttpRetrievalService serving(final byte[] body) {
+        final HttpResponse response = stub(HttpResponse.class, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                String name = method.getName();
+                if (name.equals("getStatusCode"))
+                    return 200;
+                if (name.equals("getResponse"))
+                    return new ByteArrayInputStream(body);
+                if (name.equals("getHeaders") || name.equals("finish"))
+                    return null;
+                throw new UnsupportedOperationException(method.toString());
+            }
+        });
+        return stub(HttpRetrievalService.class, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                String name = method.getName();
+                if (name.equals("get"))
+                    return response;
+                if (name.equals("getDefaultRequestFor"))
+                    return null; // never inspected: the stub sends no validators
+                throw new UnsupportedOperationException(method.toString());
+            }
+        });
+    }
+
+    /**
+     * Returns a renderer that hands the wiki markup back unchanged.
+     */
+    static SubRenderer echo() {
+        return stub(SubRenderer.class, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if (method.getName().equals("render"))
+                    return args[0];
+                throw new UnsupportedOperationException(method.toString());
+            }
+        });
+    }
+
+    private static <T> T stub(Class<T> type, InvocationHandler handler) {
+        return type.cast(Proxy.newProxyInstance(BenchmarkFixtures.class.getClassLoader(),
+                new Class<?>[] { type }, handler));
+    }
+
+    private static byte[] readFixture() throws IOException {
+        InputStream in = BenchmarkFixtures.class.getResourceAsStream("/update-center.json");
+        if (in == null)
+            throw new IOException("update-center.json is not on the classpath");
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(1 << 20);
+            byte[] buf = new byte[8192];
+            int n;
+            while ((n = in.read(buf)) != -1)
+                out.write(buf, 0, n);
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package org.jenkinsci.confluence.plugins;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.atlassian.renderer.RenderContext;
+
+/**
+ * Renders {@code jenkins-plugin-info} from many threads at once against a {@link StubUpdateSite}
+ * and reports throughput, latency percentiles, upstream requests and heap growth.
+ * Renders that only return the loading placeholder are counted apart from those that show
+ * the info box, as they do not exercise the update center at all.
+ * <p>
+ * All threads start together on an empty cache, as after a restart, so the first renders
+ * show how the macro copes with a slow or failing update site. Snapshots expire every
+ * {@code refreshInterval}, so later renders run alongside revalidations. Settings are read
+ * from system properties prefixed with {@code loadtest.}:
+ *
+ * <pre>
+ * java -Dloadtest.threads=200 -Dloadtest.latency=2000 -Dloadtest.errorRate=0.1 \
+ *     -cp "target/benchmarks.jar:$(cat target/classpath.txt)" org.jenkinsci.confluence.plugins.LoadTest
+ * </pre>
+ */
+public final class LoadTest {
+
+    private static final int THREADS = Integer.getInteger("loadtest.threads", 200);
+
+    private static final long DURATION = Long.getLong("loadtest.duration", 20) * 1000L;
+
+    private static final long LATENCY = Long.getLong("loadtest.latency", 500);
+
+    private static final double ERROR_RATE = Double.parseDouble(System.getProperty("loadtest.errorRate", "0"));
+
+    private static final double STATUS_RATE = Double.parseDouble(System.getProperty("loadtest.statusRate", "0"));
+
+    private static final int STATUS = Integer.getInteger("loadtest.status", 503);
+
+    private static final long REFRESH_INTERVAL = Long.getLong("loadtest.refreshInterval", 5000);
+
+    private static final boolean RENDER_CACHE = Boolean.parseBoolean(System.getProperty("loadtest.renderCache",
+            "true"));
+
+    /**
+     * Fraction of renders asking for a plugin that does not exist.
+     */
+    private static final double UNKNOWN_RATE = 0.05;
+
+    private static final String PLACEHOLDER_PREFIX = "<div class=\"jenkins-plugin-info-pending\"";
+
+    private LoadTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        StubUpdateSite site = new StubUpdateSite(BenchmarkFixtures.updateCenter("subversion", 20), LATENCY,
+                ERROR_RATE, STATUS_RATE, STATUS);
+        UpdateCenterCache cache = new UpdateCenterCache(REFRESH_INTERVAL, Executors
+                .newSingleThreadExecutor(daemon("refresh")));
+        final JenkinsPluginInfoMacro macro = new JenkinsPluginInfoMacro();
+        macro.setHttpRetrievalService(site.service());
+        macro.setSubRenderer(BenchmarkFixtures.echo());
+        macro.setJenkinsRetriever(new JenkinsRetriever(cache));
+        macro.renderCache = RENDER_CACHE ? new RenderCache(RenderCache.MAX_ENTRIES, RenderCache.MAX_WEIGHT)
+                : new RenderCache(0, 0);
+        final String[] pluginIds = pluginIds(site);
+
+        System.out.printf("threads=%d duration=%ds latency=%dms errorRate=%s statusRate=%s status=%d "
+                + "refreshInterval=%dms renderCache=%s%n", THREADS, DURATION / 1000, LATENCY, ERROR_RATE,
+                STATUS_RATE, STATUS, REFRESH_INTERVAL, RENDER_CACHE);
+
+        long heapBefore = usedHeapAfterGc();
+        long[] gcBefore = gcCountAndTime();
+
+        final LatencyHistogram latencies = new LatencyHistogram();
+        final LatencyHistogram firstRenders = new LatencyHistogram();
+        final AtomicLong failures = new AtomicLong();
+        final AtomicLong placeholders = new AtomicLong();
+        final CountDownLatch start = new CountDownLatch(1);
+        final long[] deadline = new long[1];
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS, daemon("page view"));
+        for (int t = 0; t < THREADS; t++) {
+            pool.execute(new Runnable() {
+                public void run() {
+                    RenderContext renderContext = new RenderContext();
+                    Map<String, String> parameters = new HashMap<String, String>();
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    boolean first = true;
+                    while (System.nanoTime() < deadline[0]) {
+                        parameters.put("pluginId", random.nextDouble() < UNKNOWN_RATE ? "no-such-plugin-"
+                                + random.nextInt(100) : pluginIds[random.nextInt(pluginIds.length)]);
+                        long begin = System.nanoTime();
+                        String output;
+                        try {
+                            output = macro.execute(parameters, null, renderContext);
+                        } catch (Exception e) {
+                            output = null;
+                        }
+                        long elapsed = System.nanoTime() - begin;
+                        latencies.record(elapsed);
+                        if (first) {
+                            firstRenders.record(elapsed);
+                            first = false;
+                        }
+                        if (output == null || output.contains("Cannot Load Update Center"))
+                            failures.incrementAndGet();
+                        else if (output.startsWith(PLACEHOLDER_PREFIX))
+                            placeholders.incrementAndGet();
+                    }
+                }
+            });
+        }
+        long began = System.nanoTime();
+        deadline[0] = began + TimeUnit.MILLISECONDS.toNanos(DURATION);
+        start.countDown();
+        pool.shutdown();
+        pool.awaitTermination(DURATION + 60 * 1000L + 10 * LATENCY, TimeUnit.MILLISECONDS);
+        double seconds = (System.nanoTime() - began) / 1e9;
+
+        long[] gcAfter = gcCountAndTime();
+        long heapAfter = usedHeapAfterGc();
+
+        long rendered = latencies.getCount() - failures.get() - placeholders.get();
+        System.out.printf("renders:     %d (%.0f/s): %d info boxes (%.0f/s), %d placeholders, %d failed%n",
+                latencies.getCount(), latencies.getCount() / seconds, rendered, rendered / seconds,
+                placeholders.get(), failures.get());
+        System.out.printf("latency ms:  p50 %.3f  p99 %.3f  p99.9 %.3f  max %.3f  mean %.3f%n",
+                latencies.getP50Millis(), latencies.getP99Millis(), latencies.getP999Millis(),
+                latencies.getMaxMillis(), latencies.getMeanMillis());
+        System.out.printf("first render per thread ms:  p50 %.3f  p99 %.3f  max %.3f%n", firstRenders
+                .getP50Millis(), firstRenders.getP99Millis(), firstRenders.getMaxMillis());
+        System.out.printf("upstream:    %d requests: %d update center (%d not modified), %d stats, "
+                + "%d injected errors, %d injected %d statuses%n", site.getUpstreamRequests(),
+                site.updateCenterRequests.get(),
+                site.notModified.get(), site.statsRequests.get(), site.injectedErrors.get(),
+                site.injectedStatuses.get(), STATUS);
+        System.out.printf("heap:        %+.1f MB retained after GC, %d collections taking %d ms during the run%n",
+                (heapAfter - heapBefore) / 1048576.0, gcAfter[0] - gcBefore[0], gcAfter[1] - gcBefore[1]);
+        System.out.printf("circuit breaker: %s%n", cache.getCircuitBreaker().isOpen() ? "open" : "closed");
+        if (site.getUpstreamRequests() == 0)
+            throw new IllegalStateException("The update site was never asked for the update center");
+    }
+
+    /**
+     * @return the plugins of the fixture, loaded through a separate stub so that the
+     *         measured site's counters start at zero
+     */
+    private static String[] pluginIds(StubUpdateSite site) throws Exception {
+        PluginIndex plugins = new JenkinsRetriever(new UpdateCenterCache(Long.MAX_VALUE,
+                BenchmarkFixtures.SAME_THREAD)).getUpdateCenter(BenchmarkFixtures.serving(BenchmarkFixtures
+                .updateCenter("subversion", 0))).getPlugins();
+        String[] ids = new String[plugins.size()];
+        for (int i = 0; i < ids.length; i++)
+            ids[i] = plugins.getId(i);
+        return ids;
+    }
+
+    private static long usedHeapAfterGc() throws InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    private static long[] gcCountAndTime() {
+        long[] total = new long[2];
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total[0] += Math.max(0, gc.getCollectionCount());
+            total[1] += Math.max(0, gc.getCollectionTime());
+        }
+        return total;
+    }
+
+    private static ThreadFactory daemon(final String name) {
+        final AtomicLong count = new AtomicLong();
+        return new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, name + " " + count.getAndIncrement());
+                t.setDaemon(true);
+                return t;
+            }
+        };
+    }
+}
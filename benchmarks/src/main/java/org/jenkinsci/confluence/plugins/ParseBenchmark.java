@@ -0,0 +1,57 @@
+package org.jenkinsci.confluence.plugins;
+
+import java.util.concurrent.TimeUnit;
+
+import org.json.simple.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.atlassian.confluence.util.http.HttpRetrievalService;
+
+/**
+ * Retrieving and parsing the update center from an in-memory response. The response is
+ * the checked-in update-center.json, about 650 KB with 790 plugins.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class ParseBenchmark {
+
+    private HttpRetrievalService httpRetrievalService;
+
+    private JenkinsRetriever jenkinsRetriever;
+
+    @Setup
+    public void setUp() throws Exception {
+        httpRetrievalService = BenchmarkFixtures.serving(BenchmarkFixtures.updateCenter("subversion", 0));
+        jenkinsRetriever = new JenkinsRetriever(new UpdateCenterCache(Long.MAX_VALUE,
+                BenchmarkFixtures.SAME_THREAD));
+    }
+
+    /**
+     * The whole document as a json-simple tree, as the macro used to read it.
+     */
+    @Benchmark
+    public JSONObject fullTree() throws Exception {
+        return jenkinsRetriever.retrieveUpdateCenterDetails(httpRetrievalService);
+    }
+
+    /**
+     * What a cache refresh does: prune while parsing, then build the plugin and warning indexes.
+     */
+    @Benchmark
+    public UpdateCenterSnapshot snapshot() throws Exception {
+        return jenkinsRetriever.retrieveUpdateCenterSnapshot(httpRetrievalService, null);
+    }
+}
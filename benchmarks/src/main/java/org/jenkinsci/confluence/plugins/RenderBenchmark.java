@@ -0,0 +1,119 @@
+package org.jenkinsci.confluence.plugins;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.atlassian.confluence.util.http.HttpRetrievalService;
+import com.atlassian.renderer.RenderContext;
+
+/**
+ * Rendering {@code jenkins-plugin-info} against an already loaded snapshot.
+ * <p>
+ * The {@code uncached} benchmarks run with the render cache disabled, so they measure the index
+ * lookups, the warning scan and building the wiki markup on every call.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class RenderBenchmark {
+
+    /**
+     * Plugin that gets the synthetic warnings.
+     */
+    private static final String MANY_WARNINGS = "subversion";
+
+    /**
+     * Plugin without warnings.
+     */
+    private static final String SINGLE = "ant";
+
+    @Param({ "200" })
+    public int warnings;
+
+    private JenkinsPluginInfoMacro uncached;
+
+    private JenkinsPluginInfoMacro cached;
+
+    private Map<String, String> single;
+
+    private Map<String, String> manyWarnings;
+
+    private RenderContext renderContext;
+
+    @Setup
+    public void setUp() throws Exception {
+        HttpRetrievalService httpRetrievalService = BenchmarkFixtures.serving(BenchmarkFixtures
+                .updateCenter(MANY_WARNINGS, warnings));
+        uncached = macro(httpRetrievalService, new RenderCache(0, 0));
+        cached = macro(httpRetrievalService, new RenderCache(RenderCache.MAX_ENTRIES,
+                RenderCache.MAX_WEIGHT));
+        single = parameters(SINGLE);
+        manyWarnings = parameters(MANY_WARNINGS);
+        renderContext = new RenderContext();
+
+        // load the snapshots outside of the measurement
+        uncached.execute(single, null, renderContext);
+        cached.execute(single, null, renderContext);
+    }
+
+    @Benchmark
+    public String uncachedSingle() throws Exception {
+        return uncached.execute(single, null, renderContext);
+    }
+
+    @Benchmark
+    public String uncachedManyWarnings() throws Exception {
+        return uncached.execute(manyWarnings, null, renderContext);
+    }
+
+    @Benchmark
+    public String cachedSingle() throws Exception {
+        return cached.execute(single, null, renderContext);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public String uncachedConcurrent() throws Exception {
+        return uncached.execute(single, null, renderContext);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public String cachedConcurrent() throws Exception {
+        return cached.execute(single, null, renderContext);
+    }
+
+    private static JenkinsPluginInfoMacro macro(HttpRetrievalService httpRetrievalService,
+            RenderCache renderCache) {
+        JenkinsPluginInfoMacro macro = new JenkinsPluginInfoMacro();
+        macro.setHttpRetrievalService(httpRetrievalService);
+        macro.setSubRenderer(BenchmarkFixtures.echo());
+        macro.setJenkinsRetriever(new JenkinsRetriever(new UpdateCenterCache(Long.MAX_VALUE,
+                BenchmarkFixtures.SAME_THREAD)));
+        macro.renderCache = renderCache;
+        return macro;
+    }
+
+    private static Map<String, String> parameters(String pluginId) {
+        Map<String, String> parameters = new HashMap<String, String>();
+        parameters.put("pluginId", pluginId);
+        return parameters;
+    }
+}
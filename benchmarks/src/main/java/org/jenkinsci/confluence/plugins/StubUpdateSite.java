@@ -0,0 +1,134 @@
+package org.jenkinsci.confluence.plugins;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.atlassian.confluence.util.http.HttpRequest;
+import com.atlassian.confluence.util.http.HttpResponse;
+import com.atlassian.confluence.util.http.HttpRetrievalService;
+
+/**
+ * In-process stand-in for updates.jenkins.io and stats.jenkins.io that can be made slow
+ * and unreliable, and counts what it was asked for.
+ * <p>
+ * Every request waits for the configured latency first. A fraction of requests then fails
+ * with an {@link IOException}, another fraction is answered with an error status, and the
+ * rest with the update center. The update center carries an ETag, so revalidations with
+ * the same tag are answered with 304. Statistics are never available (404).
+ */
+final class StubUpdateSite {
+
+    private static final String ETAG = "\"fixture\"";
+
+    private final byte[] updateCenter;
+
+    private final long latencyMillis;
+
+    private final double errorRate;
+
+    private final double statusRate;
+
+    private final int status;
+
+    final AtomicInteger updateCenterRequests = new AtomicInteger();
+
+    final AtomicInteger notModified = new AtomicInteger();
+
+    final AtomicInteger statsRequests = new AtomicInteger();
+
+    final AtomicInteger injectedErrors = new AtomicInteger();
+
+    final AtomicInteger injectedStatuses = new AtomicInteger();
+
+    /**
+     * @param latencyMillis how long every request takes before it is answered
+     * @param errorRate fraction of requests that fail with an {@link IOException}
+     * @param statusRate fraction of requests that are answered with {@code status}
+     */
+    StubUpdateSite(byte[] updateCenter, long latencyMillis, double errorRate, double statusRate, int status) {
+        this.updateCenter = updateCenter;
+        this.latencyMillis = latencyMillis;
+        this.errorRate = errorRate;
+        this.statusRate = statusRate;
+        this.status = status;
+    }
+
+    HttpRetrievalService service() {
+        return stub(HttpRetrievalService.class, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) throws IOException {
+                String name = method.getName();
+                if (name.equals("getDefaultRequestFor")) {
+                    HttpRequest request = new HttpRequest();
+                    request.setUrl((String) args[0]);
+                    return request;
+                }
+                if (name.equals("get") && args[0] instanceof HttpRequest) {
+                    HttpRequest request = (HttpRequest) args[0];
+                    return answer(request.getUrl(), request.getHeaders().get("If-None-Match"));
+                }
+                if (name.equals("get"))
+                    return answer((String) args[0], null);
+                throw new UnsupportedOperationException(method.toString());
+            }
+        });
+    }
+
+    int getUpstreamRequests() {
+        return updateCenterRequests.get() + statsRequests.get();
+    }
+
+    private HttpResponse answer(String url, String ifNoneMatch) throws IOException {
+        boolean stats = url != null && url.endsWith(".stats.json");
+        (stats ? statsRequests : updateCenterRequests).incrementAndGet();
+        try {
+            Thread.sleep(latencyMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+        double dice = ThreadLocalRandom.current().nextDouble();
+        if (dice < errorRate) {
+            injectedErrors.incrementAndGet();
+            throw new IOException("Injected failure");
+        }
+        if (dice < errorRate + statusRate) {
+            injectedStatuses.incrementAndGet();
+            return response(status, null);
+        }
+        if (stats)
+            return response(404, null);
+        if (ETAG.equals(ifNoneMatch)) {
+            notModified.incrementAndGet();
+            return response(304, null);
+        }
+        return response(200, updateCenter);
+    }
+
+    private static HttpResponse response(final int status, final byte[] body) {
+        return stub(HttpResponse.class, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                String name = method.getName();
+                if (name.equals("getStatusCode"))
+                    return status;
+                if (name.equals("getResponse"))
+                    return new ByteArrayInputStream(body != null ? body : new byte[0]);
+                if (name.equals("getHeaders"))
+                    return "ETag".equals(args[0]) && body != null ? new String[] { ETAG } : null;
+                if (name.equals("finish"))
+                    return null;
+                throw new UnsupportedOperationException(method.toString());
+            }
+        });
+    }
+
+    private static <T> T stub(Class<T> type, InvocationHandler handler) {
+        return type.cast(Proxy.newProxyInstance(StubUpdateSite.class.getClassLoader(), new Class<?>[] { type },
+                handler));
+    }
+}
@@ -0,0 +1,133 @@
+package org.jenkinsci.confluence.plugins;
+
+import java.io.IOException;
+import java.util.List;
+
+import com.atlassian.confluence.util.http.HttpRetrievalService;
+import com.atlassian.renderer.RenderContext;
+import com.atlassian.renderer.v2.RenderMode;
+import com.atlassian.renderer.v2.SubRenderer;
+import com.atlassian.renderer.v2.macro.BaseMacro;
+
+import org.jenkinsci.confluence.plugins.exception.PluginHttpException;
+import org.json.simple.parser.ParseException;
+
+/**
+ * Common plumbing of the macros rendering update center data: injected services, the
+ * shared caches, and the message shown when the update center cannot be loaded.
+ */
+public abstract class AbstractUpdateCenterMacro extends BaseMacro {
+
+    protected HttpRetrievalService httpRetrievalService;
+
+    protected JenkinsRetriever jenkinsRetriever = new JenkinsRetriever();
+
+    protected RenderCache renderCache = RenderCache.getInstance();
+
+    protected SubRenderer subRenderer;
+
+    /**
+     * How long a render waits for the update center when none has been loaded yet, in
+     * milliseconds.
+     */
+    long renderBudget = JenkinsPluginInfoMacro.RENDER_BUDGET;
+
+    /**
+     * Shown instead of the output while the update center is still loading. Unlike the
+     * placeholder of {@link JenkinsPluginInfoMacro} it is not filled in later, as only the info
+     * box is served on its own.
+     */
+    static final String LOADING = "<div class=\"jenkins-plugin-info-pending\"><p>The update center is still "
+            + "loading. Reload the page in a few seconds to see this information.</p></div>\n";
+
+    /**
+     * Setter method for automatic injection of the {@link HttpRetrievalService}.
+     *
+     * @param httpRetrievalService the http retrieval service to use
+     */
+    public void setHttpRetrievalService(HttpRetrievalService httpRetrievalService) {
+        this.httpRetrievalService = httpRetrievalService;
+    }
+
+    void setJenkinsRetriever(JenkinsRetriever jenkinsRetriever) {
+        this.jenkinsRetriever = jenkinsRetriever;
+    }
+
+    /**
+     * @param subRenderer
+     *            The subRenderer to set.
+     */
+    public void setSubRenderer(SubRenderer subRenderer) {
+        this.subRenderer = subRenderer;
+    }
+
+    /**
+     * non inline, so we return false
+     */
+    public boolean isInline() {
+        return false;
+    }
+
+    /**
+     * no body supported, so this returns false
+     */
+    public boolean hasBody() {
+        return false;
+    }
+
+    /**
+     * the execute method takes care of formatting the output,
+     * so NO_RENDER is returned
+     */
+    public RenderMode getBodyRenderMode() {
+        return RenderMode.NO_RENDER;
+    }
+
+    protected static int length(String s) {
+        return s != null ? s.length() : 4;
+    }
+
+    /**
+     * @return about the length of the markup linking to all the given warnings, to size the
+     *         {@link WikiWriter} up front
+     */
+    protected static int linksLength(List<SecurityWarning> warnings) {
+        int length = 0;
+        for (SecurityWarning warning : warnings)
+            length += length(warning.getMessage()) + length(warning.getUrl()) + 8;
+        return length;
+    }
+
+    /**
+     * @return the snapshot, or null if it has not been loaded within {@link #renderBudget}
+     */
+    protected UpdateCenterSnapshot getUpdateCenter() throws IOException, PluginHttpException, ParseException {
+        return jenkinsRetriever.getUpdateCenter(httpRetrievalService, renderBudget);
+    }
+
+    protected String renderLoading() {
+        PluginInfoMetrics.getInstance().recordPlaceholder();
+        return LOADING;
+    }
+
+    protected String renderFailure(IOException e, RenderContext renderContext) {
+        return subRenderer.render("h4. Plugin Information\n"
+                                  + "{warning:title=Cannot Load Update Center}\n"
+                                  + "IOException: " + e.getMessage() + "\n"
+                                  + "{warning}\n", renderContext);
+    }
+
+    protected String renderFailure(PluginHttpException e, RenderContext renderContext) {
+        return subRenderer.render("h4. Plugin Information\n"
+                + "{warning:title=Cannot Load Update Center}\n" + "error "
+                + e.getStatusCode() + " loading update-center.json\n"
+                + "{warning}\n", renderContext);
+    }
+
+    protected String renderFailure(ParseException e, RenderContext renderContext) {
+        return subRenderer.render("h4. Plugin Information\n"
+                                  + "{warning:title=Cannot Load Update Center}\n"
+                                  + "ParseException: " + e + "\n"
+                                  + "{warning}\n", renderContext);
+    }
+}
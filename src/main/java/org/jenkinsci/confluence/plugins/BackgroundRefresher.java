@@ -0,0 +1,226 @@
+package org.jenkinsci.confluence.plugins;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
+import com.atlassian.confluence.setup.BootstrapManager;
+import com.atlassian.confluence.util.http.HttpRetrievalService;
+
+/**
+ * Keeps the update center and the statistics of popular plugins loaded, so that rendering
+ * a page only reads data that is already in memory instead of holding a Confluence request
+ * thread while the update site answers.
+ *
+ * <p>
+ * Registered as a plugin component, it starts when the plugin is enabled and stops when it
+ * is disabled. All work runs on a small pool of its own, made of virtual threads on runtimes
+ * that have them. Stopping also ends the threads of the caches and unregisters the metrics
+ * MBean, so that nothing keeps the classes of a disabled plugin loaded.
+ *
+ * <p>
+ * The current snapshot is also written to the Confluence home directory whenever it
+ * changes, and read back on start before the first refresh, so that a restart does not
+ * leave the macros without data until the download completes.
+ */
+public class BackgroundRefresher implements InitializingBean, DisposableBean {
+    public static final int THREADS = Integer.getInteger(BackgroundRefresher.class.getName() + ".threads", 2);
+
+    /**
+     * How often to check whether the update center is due, in milliseconds. Failed refreshes
+     * are retried on this schedule, subject to the circuit breaker.
+     */
+    public static final long CHECK_INTERVAL = Long.getLong(BackgroundRefresher.class.getName() + ".checkInterval",
+            60 * 1000L);
+
+    /**
+     * How often to refresh the statistics of plugins that are read often, in milliseconds.
+     */
+    public static final long STATS_INTERVAL = Long.getLong(BackgroundRefresher.class.getName() + ".statsInterval",
+            15 * 60 * 1000L);
+
+    private static final long SHUTDOWN_TIMEOUT = 10 * 1000L;
+
+    private final JenkinsRetriever jenkinsRetriever;
+
+    private HttpRetrievalService httpRetrievalService;
+
+    private volatile SnapshotStore snapshotStore;
+
+    private ScheduledExecutorService executor;
+
+    public BackgroundRefresher() {
+        this(new JenkinsRetriever());
+    }
+
+    BackgroundRefresher(JenkinsRetriever jenkinsRetriever) {
+        this.jenkinsRetriever = jenkinsRetriever;
+    }
+
+    /**
+     * Setter method for automatic injection of the {@link HttpRetrievalService}.
+     */
+    public void setHttpRetrievalService(HttpRetrievalService httpRetrievalService) {
+        this.httpRetrievalService = httpRetrievalService;
+    }
+
+    /**
+     * Setter method for automatic injection of the {@link BootstrapManager}, which tells
+     * where to keep the snapshot.
+     */
+    public void setBootstrapManager(BootstrapManager bootstrapManager) {
+        String home = bootstrapManager.getApplicationHome();
+        if (home != null || SnapshotStore.FILE != null)
+            setSnapshotStore(SnapshotStore.inHome(home != null ? new File(home) : null));
+    }
+
+    void setSnapshotStore(SnapshotStore snapshotStore) {
+        this.snapshotStore = snapshotStore;
+    }
+
+    public void afterPropertiesSet() {
+        start();
+    }
+
+    public void destroy() throws InterruptedException {
+        stop();
+    }
+
+    public synchronized boolean isRunning() {
+        return executor != null;
+    }
+
+    public synchronized void start() {
+        if (executor != null)
+            return;
+        PluginInfoMetrics.getInstance().register();
+        restoreSnapshot();
+        executor = new ScheduledThreadPoolExecutor(THREADS, threadFactory("jenkins-plugin-info refresh"));
+        jenkinsRetriever.getUpdateCenterCache().startBackgroundRefresh(executor);
+        LocalUpdateCenterSource localSource = jenkinsRetriever.getLocalSource();
+        if (localSource != null) {
+            try {
+                localSource.startWatching(jenkinsRetriever.getUpdateCenterCache());
+            } catch (IOException e) {
+                // still reloaded on the regular schedule
+            }
+        }
+        executor.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                refreshUpdateCenter();
+            }
+        }, 0, CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+        executor.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                if (canLoad())
+                    jenkinsRetriever.refreshHotStats(httpRetrievalService);
+            }
+        }, STATS_INTERVAL, STATS_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops refreshing and waits a little for a download in progress to give up. Renders
+     * waiting for a load that never started are released with an error. The caches and
+     * metrics are released too; they start again on demand if the plugin is still in use.
+     */
+    public synchronized void stop() throws InterruptedException {
+        if (executor == null)
+            return;
+        jenkinsRetriever.getUpdateCenterCache().stopBackgroundRefresh();
+        LocalUpdateCenterSource localSource = jenkinsRetriever.getLocalSource();
+        if (localSource != null) {
+            try {
+                localSource.stopWatching();
+            } catch (IOException e) {
+                // the watching thread ends either way
+            }
+        }
+        for (Runnable pending : executor.shutdownNow()) {
+            if (pending instanceof Future)
+                ((Future<?>) pending).cancel(false);
+        }
+        executor.awaitTermination(SHUTDOWN_TIMEOUT, TimeUnit.MILLISECONDS);
+        executor = null;
+        saveSnapshot();
+        jenkinsRetriever.getUpdateCenterCache().shutdown();
+        jenkinsRetriever.getStatsCache().shutdown();
+        PluginInfoMetrics.getInstance().unregister();
+    }
+
+    private void refreshUpdateCenter() {
+        if (canLoad() && jenkinsRetriever.getUpdateCenterCache().needsRefresh()) {
+            try {
+                jenkinsRetriever.refreshUpdateCenter(httpRetrievalService);
+            } catch (Exception e) {
+                // recorded by the circuit breaker and the metrics, retried on the next check
+            }
+        }
+        // also catches snapshots loaded on behalf of a render
+        saveSnapshot();
+    }
+
+    /**
+     * Serves the stored snapshot until the first refresh completes. An expired one is
+     * revalidated with the update site rather than downloaded again.
+     */
+    private void restoreSnapshot() {
+        SnapshotStore store = snapshotStore;
+        if (store == null || jenkinsRetriever.getUpdateCenterCache().peek() != null)
+            return;
+        UpdateCenterSnapshot snapshot = store.load();
+        if (snapshot != null)
+            jenkinsRetriever.getUpdateCenterCache().restore(snapshot);
+    }
+
+    private void saveSnapshot() {
+        SnapshotStore store = snapshotStore;
+        if (store == null)
+            return;
+        try {
+            store.save(jenkinsRetriever.getUpdateCenterCache().peek());
+        } catch (IOException e) {
+            // not essential, tried again on the next check
+        }
+    }
+
+    /**
+     * @return false until the {@link HttpRetrievalService} is injected, unless reading local files
+     */
+    private boolean canLoad() {
+        return httpRetrievalService != null || jenkinsRetriever.getLocalSource() != null;
+    }
+
+    /**
+     * Looked up by reflection, as the plugin is compiled for Java 7.
+     *
+     * @return a factory for virtual threads on Java 21 and later, for daemon threads otherwise
+     */
+    static ThreadFactory threadFactory(final String name) {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            builder = builderType.getMethod("name", String.class, long.class).invoke(builder, name + " ", 0L);
+            Method factory = builderType.getMethod("factory");
+            return (ThreadFactory) factory.invoke(builder);
+        } catch (Exception e) {
+            // not supported by this runtime
+        }
+        final AtomicInteger count = new AtomicInteger();
+        return new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, name + " " + count.getAndIncrement());
+                t.setDaemon(true);
+                return t;
+            }
+        };
+    }
+}
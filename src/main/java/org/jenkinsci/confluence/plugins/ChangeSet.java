@@ -0,0 +1,145 @@
+package org.jenkinsci.confluence.plugins;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * The plugins whose rendered information differs between two update center snapshots, so
+ * that caches derived from the older one only need to drop what is affected.
+ *
+ * <p>
+ * A plugin is affected if it was added or removed, if its title or version changed, or if
+ * any of its security warnings was added, removed or changed. A new version also moves
+ * warnings between current and older, which is covered by the version change.
+ */
+public final class ChangeSet {
+    private final long baseGeneration;
+
+    private final Set<String> added;
+
+    private final Set<String> removed;
+
+    private final Set<String> updated;
+
+    private final Set<String> warningsChanged;
+
+    private final Set<String> affected;
+
+    private ChangeSet(long baseGeneration, Set<String> added, Set<String> removed, Set<String> updated,
+            Set<String> warningsChanged) {
+        this.baseGeneration = baseGeneration;
+        this.added = Collections.unmodifiableSet(added);
+        this.removed = Collections.unmodifiableSet(removed);
+        this.updated = Collections.unmodifiableSet(updated);
+        this.warningsChanged = Collections.unmodifiableSet(warningsChanged);
+        Set<String> affected = new HashSet<String>(added);
+        affected.addAll(removed);
+        affected.addAll(updated);
+        affected.addAll(warningsChanged);
+        this.affected = Collections.unmodifiableSet(affected);
+    }
+
+    /**
+     * Compares two snapshots plugin by plugin.
+     */
+    public static ChangeSet between(UpdateCenterSnapshot previous, UpdateCenterSnapshot next) {
+        Set<String> added = new TreeSet<String>();
+        Set<String> removed = new TreeSet<String>();
+        Set<String> updated = new TreeSet<String>();
+
+        // both indexes are sorted by id, so walk them side by side
+        PluginIndex a = previous.getPlugins();
+        PluginIndex b = next.getPlugins();
+        int i = 0, j = 0;
+        while (i < a.size() || j < b.size()) {
+            int c = i == a.size() ? 1 : j == b.size() ? -1 : a.getId(i).compareTo(b.getId(j));
+            if (c < 0) {
+                removed.add(a.getId(i++));
+            } else if (c > 0) {
+                added.add(b.getId(j++));
+            } else {
+                if (!eq(a.getTitle(i), b.getTitle(j)) || !eq(a.getVersion(i), b.getVersion(j))
+                        || !DependencyGraph.sameDependencies(previous.getDependencies(), i, next.getDependencies(), j))
+                    updated.add(a.getId(i));
+                i++;
+                j++;
+            }
+        }
+
+        Set<String> warningsChanged = new TreeSet<String>();
+        WarningIndex before = previous.getWarnings();
+        WarningIndex after = next.getWarnings();
+        Set<String> withWarnings = new HashSet<String>(before.getPluginIds());
+        withWarnings.addAll(after.getPluginIds());
+        for (String pluginId : withWarnings) {
+            if (!before.get(pluginId).equals(after.get(pluginId)))
+                warningsChanged.add(pluginId);
+        }
+
+        return new ChangeSet(previous.getGeneration(), added, removed, updated, warningsChanged);
+    }
+
+    /**
+     * @return the generation of the snapshot these changes are relative to
+     */
+    public long getBaseGeneration() {
+        return baseGeneration;
+    }
+
+    public Set<String> getAdded() {
+        return added;
+    }
+
+    public Set<String> getRemoved() {
+        return removed;
+    }
+
+    /**
+     * @return plugins whose title, version or dependencies changed
+     */
+    public Set<String> getUpdated() {
+        return updated;
+    }
+
+    public Set<String> getWarningsChanged() {
+        return warningsChanged;
+    }
+
+    /**
+     * @return all plugins whose rendered information may have changed
+     */
+    public Set<String> getAffectedPluginIds() {
+        return affected;
+    }
+
+    /**
+     * @return true if output that depends on the given plugins may have changed. An unknown
+     *         set of plugins, null, is always affected.
+     */
+    public boolean affects(Collection<String> pluginIds) {
+        if (pluginIds == null)
+            return true;
+        for (String pluginId : pluginIds) {
+            if (affected.contains(pluginId))
+                return true;
+        }
+        return false;
+    }
+
+    public boolean isEmpty() {
+        return affected.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "added " + added + ", removed " + removed + ", updated " + updated + ", warnings changed "
+                + warningsChanged;
+    }
+
+    private static boolean eq(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+}
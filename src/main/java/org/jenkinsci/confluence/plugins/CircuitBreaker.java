@@ -0,0 +1,90 @@
+package org.jenkinsci.confluence.plugins;
+
+/**
+ * Stops calling a failing upstream for a while.
+ *
+ * <p>
+ * After {@code threshold} consecutive failures the circuit opens and no attempt is
+ * allowed until the backoff has elapsed. The backoff starts at {@code baseDelay} and
+ * doubles with every further failure, up to {@code maxDelay}. A single success closes
+ * the circuit again.
+ */
+public class CircuitBreaker {
+    public static final int THRESHOLD = Integer.getInteger(CircuitBreaker.class.getName() + ".threshold", 3);
+
+    public static final long BASE_DELAY = Long.getLong(CircuitBreaker.class.getName() + ".baseDelay",
+            60 * 1000L);
+
+    public static final long MAX_DELAY = Long.getLong(CircuitBreaker.class.getName() + ".maxDelay",
+            60 * 60 * 1000L);
+
+    private final int threshold;
+
+    private final long baseDelay;
+
+    private final long maxDelay;
+
+    private final Clock clock;
+
+    private int failures;
+
+    /**
+     * No attempt is allowed before this time, in milliseconds since the epoch.
+     */
+    private long openUntil;
+
+    private Exception lastFailure;
+
+    public CircuitBreaker() {
+        this(THRESHOLD, BASE_DELAY, MAX_DELAY);
+    }
+
+    public CircuitBreaker(int threshold, long baseDelay, long maxDelay) {
+        this(threshold, baseDelay, maxDelay, Clock.SYSTEM);
+    }
+
+    CircuitBreaker(int threshold, long baseDelay, long maxDelay, Clock clock) {
+        this.threshold = threshold;
+        this.baseDelay = baseDelay;
+        this.maxDelay = maxDelay;
+        this.clock = clock;
+    }
+
+    public synchronized boolean allowRequest() {
+        return clock.currentTimeMillis() >= openUntil;
+    }
+
+    public synchronized boolean isOpen() {
+        return !allowRequest();
+    }
+
+    public synchronized void recordSuccess() {
+        failures = 0;
+        openUntil = 0;
+        lastFailure = null;
+    }
+
+    public synchronized void recordFailure(Exception e) {
+        failures++;
+        lastFailure = e;
+        if (failures >= threshold) {
+            int doublings = Math.min(failures - threshold, 30);
+            long delay = Math.min(maxDelay, baseDelay << doublings);
+            if (delay < 0) // overflow
+                delay = maxDelay;
+            openUntil = clock.currentTimeMillis() + delay;
+        }
+    }
+
+    public synchronized int getFailures() {
+        return failures;
+    }
+
+    /**
+     * @return the failure that last went through {@link #recordFailure(Exception)}, or null
+     *         if the last attempt succeeded
+     */
+    public synchronized Exception getLastFailure() {
+        return lastFailure;
+    }
+}
@@ -0,0 +1,18 @@
+package org.jenkinsci.confluence.plugins;
+
+/**
+ * Source of the current time for expiry and backoff decisions, so that tests can move it
+ * along by hand.
+ */
+interface Clock {
+    Clock SYSTEM = new Clock() {
+        public long currentTimeMillis() {
+            return System.currentTimeMillis();
+        }
+    };
+
+    /**
+     * @return the current time in milliseconds since the epoch
+     */
+    long currentTimeMillis();
+}
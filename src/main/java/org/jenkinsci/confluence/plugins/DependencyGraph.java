@@ -0,0 +1,348 @@
+package org.jenkinsci.confluence.plugins;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+/**
+ * Dependencies between the plugins of one update center snapshot.
+ *
+ * <p>
+ * Every plugin is a node numbered like its position in the {@link PluginIndex}; plugins
+ * that are depended on but not distributed get the numbers after those, in the order of
+ * their ids. Edges are stored in compressed sparse row form: the dependencies of node
+ * {@code n} are the entries {@code offsets[n]} to {@code offsets[n + 1] - 1} of the edge
+ * arrays, sorted by target, and the dependents are stored the same way in the opposite
+ * direction. Transitive closures are computed on first use and then kept for the life of
+ * the snapshot.
+ */
+public final class DependencyGraph {
+    public static final DependencyGraph EMPTY = new Builder(PluginIndex.EMPTY).build();
+
+    private static final int[] NONE = new int[0];
+
+    private final PluginIndex plugins;
+
+    /**
+     * Ids of the nodes after the plugins in the index, sorted.
+     */
+    private final String[] missing;
+
+    private final int[] offsets;
+
+    private final int[] targets;
+
+    private final boolean[] optional;
+
+    private final String[] requiredVersions;
+
+    private final int[] reverseOffsets;
+
+    private final int[] sources;
+
+    /**
+     * For every entry of {@link #sources}, the position of the same edge in {@link #targets}.
+     */
+    private final int[] reverseEdges;
+
+    private final AtomicReferenceArray<int[]> closures;
+
+    private DependencyGraph(PluginIndex plugins, String[] missing, int[] offsets, int[] targets,
+            boolean[] optional, String[] requiredVersions) {
+        this.plugins = plugins;
+        this.missing = missing;
+        this.offsets = offsets;
+        this.targets = targets;
+        this.optional = optional;
+        this.requiredVersions = requiredVersions;
+
+        int nodes = offsets.length - 1;
+        reverseOffsets = new int[nodes + 1];
+        for (int target : targets)
+            reverseOffsets[target + 1]++;
+        for (int n = 0; n < nodes; n++)
+            reverseOffsets[n + 1] += reverseOffsets[n];
+        // filling by source keeps the dependents of each node sorted
+        sources = new int[targets.length];
+        reverseEdges = new int[targets.length];
+        int[] fill = Arrays.copyOf(reverseOffsets, nodes);
+        for (int n = 0; n < nodes; n++) {
+            for (int e = offsets[n]; e < offsets[n + 1]; e++) {
+                int at = fill[targets[e]]++;
+                sources[at] = n;
+                reverseEdges[at] = e;
+            }
+        }
+        closures = new AtomicReferenceArray<int[]>(nodes);
+    }
+
+    /**
+     * Builds the graph from the {@code plugins} object of update-center.json.
+     *
+     * @param index the plugins of the same snapshot, which determine the node numbers
+     */
+    public static DependencyGraph fromJSON(JSONObject plugins, PluginIndex index) {
+        Builder builder = new Builder(index);
+        for (int i = 0; i < index.size(); i++) {
+            Object plugin = plugins.get(index.getId(i));
+            if (!(plugin instanceof JSONObject))
+                continue;
+            Object dependencies = ((JSONObject) plugin).get("dependencies");
+            if (!(dependencies instanceof JSONArray))
+                continue;
+            for (Object o : (JSONArray) dependencies) {
+                if (!(o instanceof JSONObject))
+                    continue;
+                JSONObject dependency = (JSONObject) o;
+                Object name = dependency.get("name");
+                if (name == null)
+                    continue;
+                Object version = dependency.get("version");
+                builder.add(index.getId(i), name.toString(), Boolean.TRUE.equals(dependency.get("optional"))
+                        || "true".equals(dependency.get("optional")), version != null ? version.toString() : null);
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * @return the number of nodes, i.e. the plugins in the index and those only depended on
+     */
+    public int size() {
+        return offsets.length - 1;
+    }
+
+    /**
+     * @return the number of dependencies in the graph
+     */
+    public int getEdgeCount() {
+        return targets.length;
+    }
+
+    /**
+     * @return the node of the plugin, or a negative value if nothing depends on it and it
+     *         is not distributed
+     */
+    public int nodeOf(String id) {
+        int i = plugins.indexOf(id);
+        if (i >= 0)
+            return i;
+        i = Arrays.binarySearch(missing, id);
+        return i >= 0 ? plugins.size() + i : -1;
+    }
+
+    public String getId(int node) {
+        return node < plugins.size() ? plugins.getId(node) : missing[node - plugins.size()];
+    }
+
+    /**
+     * @return whether the plugin is in the update center, as opposed to only depended on
+     */
+    public boolean isDistributed(int node) {
+        return node < plugins.size();
+    }
+
+    public int getDependencyCount(int node) {
+        return offsets[node + 1] - offsets[node];
+    }
+
+    /**
+     * @return the node the {@code i}th dependency of {@code node} points to
+     */
+    public int getDependency(int node, int i) {
+        return targets[offsets[node] + i];
+    }
+
+    public boolean isOptional(int node, int i) {
+        return optional[offsets[node] + i];
+    }
+
+    /**
+     * @return the minimum version of the {@code i}th dependency, or null if none is given
+     */
+    public String getRequiredVersion(int node, int i) {
+        return requiredVersions[offsets[node] + i];
+    }
+
+    public int getDependentCount(int node) {
+        return reverseOffsets[node + 1] - reverseOffsets[node];
+    }
+
+    /**
+     * @return the {@code i}th node depending on {@code node}
+     */
+    public int getDependent(int node, int i) {
+        return sources[reverseOffsets[node] + i];
+    }
+
+    /**
+     * @return whether the {@code i}th dependent only depends on {@code node} optionally
+     */
+    public boolean isOptionalDependent(int node, int i) {
+        return optional[reverseEdges[reverseOffsets[node] + i]];
+    }
+
+    /**
+     * Returns everything needed to install the plugin: its required dependencies, theirs,
+     * and so on. Optional dependencies are not followed.
+     *
+     * @return the nodes, sorted and without {@code node} itself; must not be modified
+     */
+    public int[] getClosure(int node) {
+        int[] closure = closures.get(node);
+        if (closure == null) {
+            // computed at most a few times if renders race, always to the same result
+            closure = computeClosure(node);
+            closures.set(node, closure);
+        }
+        return closure;
+    }
+
+    private int[] computeClosure(int node) {
+        if (getDependencyCount(node) == 0)
+            return NONE;
+        boolean[] seen = new boolean[size()];
+        int[] queue = new int[size()];
+        int head = 0, tail = 0;
+        seen[node] = true;
+        queue[tail++] = node;
+        while (head < tail) {
+            int n = queue[head++];
+            for (int e = offsets[n]; e < offsets[n + 1]; e++) {
+                int target = targets[e];
+                if (!optional[e] && !seen[target]) {
+                    seen[target] = true;
+                    queue[tail++] = target;
+                }
+            }
+        }
+        int[] closure = Arrays.copyOfRange(queue, 1, tail);
+        Arrays.sort(closure);
+        return closure;
+    }
+
+    /**
+     * @return whether the plugin at {@code node} of {@code a} has the same dependencies as
+     *         the one at {@code nodeB} of {@code b}
+     */
+    static boolean sameDependencies(DependencyGraph a, int nodeA, DependencyGraph b, int nodeB) {
+        int n = a.getDependencyCount(nodeA);
+        if (n != b.getDependencyCount(nodeB))
+            return false;
+        for (int i = 0; i < n; i++) {
+            if (!a.getId(a.getDependency(nodeA, i)).equals(b.getId(b.getDependency(nodeB, i)))
+                    || a.isOptional(nodeA, i) != b.isOptional(nodeB, i)
+                    || !eq(a.getRequiredVersion(nodeA, i), b.getRequiredVersion(nodeB, i)))
+                return false;
+        }
+        return true;
+    }
+
+    private static boolean eq(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    /**
+     * Collects dependencies in any order and lays them out once in {@link #build()}.
+     */
+    public static final class Builder {
+        private final PluginIndex plugins;
+
+        private final List<Object[]> edges = new ArrayList<Object[]>();
+
+        private final Map<String, String> pool = new HashMap<String, String>();
+
+        /**
+         * @param plugins the index that determines the node numbers
+         */
+        public Builder(PluginIndex plugins) {
+            this.plugins = plugins;
+        }
+
+        /**
+         * Adds a dependency of a plugin in the index. Dependencies of other plugins, of a
+         * plugin on itself, and repeated ones are ignored.
+         */
+        public Builder add(String pluginId, String dependencyId, boolean optional, String requiredVersion) {
+            int source = plugins.indexOf(pluginId);
+            if (source < 0 || pluginId.equals(dependencyId))
+                return this;
+            edges.add(new Object[] { source, dependencyId, optional, dedup(requiredVersion) });
+            return this;
+        }
+
+        private static int compareInts(int a, int b) {
+            return a < b ? -1 : a == b ? 0 : 1;
+        }
+
+        private String dedup(String s) {
+            if (s == null)
+                return null;
+            String existing = pool.get(s);
+            if (existing != null)
+                return existing;
+            pool.put(s, s);
+            return s;
+        }
+
+        public DependencyGraph build() {
+            TreeSet<String> notDistributed = new TreeSet<String>();
+            for (Object[] edge : edges) {
+                String target = (String) edge[1];
+                if (!plugins.contains(target))
+                    notDistributed.add(target);
+            }
+            String[] missing = notDistributed.toArray(new String[notDistributed.size()]);
+            int nodes = plugins.size() + missing.length;
+
+            final int[] from = new int[edges.size()];
+            final int[] to = new int[edges.size()];
+            Integer[] sorted = new Integer[edges.size()];
+            for (int e = 0; e < edges.size(); e++) {
+                Object[] edge = edges.get(e);
+                from[e] = (Integer) edge[0];
+                int target = plugins.indexOf((String) edge[1]);
+                to[e] = target >= 0 ? target : plugins.size() + Arrays.binarySearch(missing, edge[1]);
+                sorted[e] = e;
+            }
+
+            // by source, then target; the sort is stable, so the first of repeated edges wins
+            Arrays.sort(sorted, new Comparator<Integer>() {
+                public int compare(Integer a, Integer b) {
+                    int c = compareInts(from[a], from[b]);
+                    return c != 0 ? c : compareInts(to[a], to[b]);
+                }
+            });
+            int[] order = new int[sorted.length];
+            int count = 0;
+            for (Integer e : sorted) {
+                if (count > 0 && from[order[count - 1]] == from[e] && to[order[count - 1]] == to[e])
+                    continue;
+                order[count++] = e;
+            }
+
+            int[] offsets = new int[nodes + 1];
+            int[] targets = new int[count];
+            boolean[] optional = new boolean[count];
+            String[] requiredVersions = new String[count];
+            for (int k = 0; k < count; k++) {
+                int e = order[k];
+                offsets[from[e] + 1]++;
+                targets[k] = to[e];
+                optional[k] = (Boolean) edges.get(e)[2];
+                requiredVersions[k] = (String) edges.get(e)[3];
+            }
+            for (int n = 0; n < nodes; n++)
+                offsets[n + 1] += offsets[n];
+            return new DependencyGraph(plugins, missing, offsets, targets, optional, requiredVersions);
+        }
+    }
+}
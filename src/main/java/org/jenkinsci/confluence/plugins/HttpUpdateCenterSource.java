@@ -0,0 +1,32 @@
+package org.jenkinsci.confluence.plugins;
+
+import java.io.IOException;
+
+import org.jenkinsci.confluence.plugins.exception.PluginHttpException;
+import org.json.simple.parser.ParseException;
+
+import com.atlassian.confluence.util.http.HttpRetrievalService;
+
+/**
+ * Downloads from {@link JenkinsRetriever#UPDATE_CENTER_URL} and
+ * {@link JenkinsRetriever#STATS_URL}, through Confluence's {@link HttpRetrievalService}.
+ */
+public class HttpUpdateCenterSource implements UpdateCenterSource {
+    private final JenkinsRetriever jenkinsRetriever;
+
+    private final HttpRetrievalService httpRetrievalService;
+
+    public HttpUpdateCenterSource(JenkinsRetriever jenkinsRetriever, HttpRetrievalService httpRetrievalService) {
+        this.jenkinsRetriever = jenkinsRetriever;
+        this.httpRetrievalService = httpRetrievalService;
+    }
+
+    public UpdateCenterSnapshot load(UpdateCenterSnapshot previous) throws IOException, PluginHttpException,
+            ParseException {
+        return jenkinsRetriever.retrieveUpdateCenterSnapshot(httpRetrievalService, previous);
+    }
+
+    public String load(String pluginId) throws IOException, PluginHttpException {
+        return jenkinsRetriever.retrieveStatsResponse(httpRetrievalService, pluginId);
+    }
+}
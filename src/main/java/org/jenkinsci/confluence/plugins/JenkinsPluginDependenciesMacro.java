@@ -0,0 +1,162 @@
+package org.jenkinsci.confluence.plugins;
+
+import java.io.IOException;
+import java.util.Map;
+
+import com.atlassian.renderer.RenderContext;
+import com.atlassian.renderer.v2.macro.MacroException;
+
+import org.jenkinsci.confluence.plugins.exception.PluginHttpException;
+import org.json.simple.parser.ParseException;
+
+/**
+ * Renders the dependencies of a plugin, the plugins depending on it, and everything it
+ * needs to be installed, pointing out security warnings of the plugins it requires.
+ *
+ * <p>
+ * All of it comes from the snapshot's {@link DependencyGraph}, which keeps the transitive
+ * closure of a plugin once it has been computed.
+ */
+public class JenkinsPluginDependenciesMacro extends AbstractUpdateCenterMacro {
+
+    private static final String CACHE_KEY_PREFIX = "\u0002dependencies\u0000";
+
+    private static final String DEPENDENCIES_HEADER = "h4. Dependencies\n";
+
+    private static final String DEPENDENCIES_TABLE = "|| Plugin || Required Version || Current Version ||\n";
+
+    private static final String DEPENDENTS_HEADER = "h4. Dependents\n";
+
+    private static final String CLOSURE_HEADER = "h4. All Required Plugins\n";
+
+    private static final String INHERITED_START = "{warning}Some of the plugins required by this plugin may not be safe to use. Please review the following warnings before use:\n\n";
+
+    private static final String INHERITED_END = "\n{warning}\n\n";
+
+    private static final WikiWriter.Template NO_INFORMATION = new WikiWriter.Template(
+            "No information on the dependencies of the plugin '%s' is available.\n");
+
+    private static final String OPTIONAL = " (optional)";
+
+    private static final String NONE = "None.\n";
+
+    public String execute(Map parameters, String body, RenderContext renderContext)
+            throws MacroException {
+        String pluginId = (String) parameters.get("pluginId");
+        if (pluginId == null) {
+            pluginId = (String) parameters.get("0"); // Accept pluginId value without "pluginId="
+        }
+        if (pluginId == null) {
+            return "No plugin specified.";
+        }
+
+        long start = System.nanoTime();
+        try {
+            UpdateCenterSnapshot updateCenter = getUpdateCenter();
+            if (updateCenter == null) {
+                return renderLoading();
+            }
+            String cacheKey = RenderCache.key(renderContext, CACHE_KEY_PREFIX + pluginId);
+            String cached = renderCache.get(updateCenter, cacheKey);
+            if (cached != null) {
+                return cached;
+            }
+
+            String rendered = subRenderer.render(markup(updateCenter, pluginId), renderContext);
+            // dependents and inherited warnings can change with any other plugin
+            renderCache.put(updateCenter, cacheKey, null, rendered);
+            return rendered;
+        }
+        catch (IOException e) {
+            return renderFailure(e, renderContext);
+        } catch (PluginHttpException e) {
+            return renderFailure(e, renderContext);
+        } catch (ParseException e) {
+            return renderFailure(e, renderContext);
+        } finally {
+            PluginInfoMetrics.getInstance().recordRender(System.nanoTime() - start);
+        }
+    }
+
+    static String markup(UpdateCenterSnapshot updateCenter, String pluginId) {
+        DependencyGraph graph = updateCenter.getDependencies();
+        int node = graph.nodeOf(pluginId);
+        if (node < 0) {
+            WikiWriter w = new WikiWriter(NO_INFORMATION.length() + pluginId.length());
+            return w.print(NO_INFORMATION, pluginId).toString();
+        }
+        PluginIndex plugins = updateCenter.getPlugins();
+        WarningIndex warnings = updateCenter.getWarnings();
+        int[] closure = graph.getClosure(node);
+
+        int dependencies = graph.getDependencyCount(node);
+        int dependents = graph.getDependentCount(node);
+        int length = DEPENDENCIES_HEADER.length() + DEPENDENCIES_TABLE.length() + DEPENDENTS_HEADER.length()
+                + CLOSURE_HEADER.length() + INHERITED_START.length() + INHERITED_END.length()
+                + 96 * (dependencies + dependents + closure.length);
+        WikiWriter w = new WikiWriter(length);
+
+        w.append(DEPENDENCIES_HEADER);
+        if (dependencies == 0) {
+            w.append(NONE);
+        } else {
+            w.append(DEPENDENCIES_TABLE);
+            for (int i = 0; i < dependencies; i++) {
+                int dependency = graph.getDependency(node, i);
+                w.append("| ");
+                link(w, graph, plugins, dependency);
+                if (graph.isOptional(node, i))
+                    w.append(OPTIONAL);
+                String required = graph.getRequiredVersion(node, i);
+                String current = graph.isDistributed(dependency) ? plugins.getVersion(dependency) : null;
+                w.append(" | ", required != null ? required : "n/a", " | ");
+                w.append(current != null ? current : "n/a", " |\n");
+            }
+        }
+
+        w.append('\n').append(DEPENDENTS_HEADER);
+        for (int i = 0; i < dependents; i++) {
+            if (i > 0)
+                w.append(", ");
+            link(w, graph, plugins, graph.getDependent(node, i));
+            if (graph.isOptionalDependent(node, i))
+                w.append(OPTIONAL);
+        }
+        w.append(dependents == 0 ? NONE : "\n");
+
+        w.append('\n').append(CLOSURE_HEADER);
+        boolean inherited = false;
+        for (int required : closure) {
+            for (SecurityWarning warning : warnings.get(graph.getId(required)).getCurrent()) {
+                if (!inherited)
+                    w.append(INHERITED_START);
+                inherited = true;
+                w.append("* ");
+                link(w, graph, plugins, required);
+                w.append(": ").href(warning.getMessage(), warning.getUrl()).append('\n');
+            }
+        }
+        if (inherited)
+            w.append(INHERITED_END);
+        for (int i = 0; i < closure.length; i++) {
+            if (i > 0)
+                w.append(", ");
+            link(w, graph, plugins, closure[i]);
+        }
+        w.append(closure.length == 0 ? NONE : "\n");
+        return w.toString();
+    }
+
+    /**
+     * Links to the plugin site for distributed plugins, or just names the others.
+     */
+    private static void link(WikiWriter w, DependencyGraph graph, PluginIndex plugins, int node) {
+        String id = graph.getId(node);
+        if (!graph.isDistributed(node)) {
+            w.escape(id);
+            return;
+        }
+        String title = plugins.getTitle(node);
+        w.href(title != null ? title : id, "https://plugins.jenkins.io/" + id);
+    }
+}
@@ -1,68 +1,174 @@
 package org.jenkinsci.confluence.plugins;
 
 import java.io.IOException;
-import java.util.HashSet;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
-import java.util.regex.Pattern;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.atlassian.renderer.RenderContext;
 import com.atlassian.confluence.renderer.PageContext;
 import com.atlassian.confluence.labels.Label;
 import com.atlassian.confluence.core.ContentEntityObject;
-import com.atlassian.renderer.v2.RenderMode;
-import com.atlassian.renderer.v2.SubRenderer;
-import com.atlassian.renderer.v2.macro.BaseMacro;
 import com.atlassian.renderer.v2.macro.MacroException;
-import com.atlassian.confluence.util.http.HttpRetrievalService;
 
+import org.jenkinsci.confluence.plugins.WarningIndex.PluginWarnings;
 import org.jenkinsci.confluence.plugins.exception.PluginHttpException;
-import org.json.simple.JSONArray;
-import org.json.simple.JSONObject;
 import org.json.simple.parser.ParseException;
 
-public class JenkinsPluginInfoMacro extends BaseMacro {
+public class JenkinsPluginInfoMacro extends AbstractUpdateCenterMacro {
 
-    private HttpRetrievalService httpRetrievalService;
+    private static final String HEADER = "|| Plugin Information ||\n";
 
-    private JenkinsRetriever jenkinsRetriever = new JenkinsRetriever();
+    private static final WikiWriter.Template VIEW_ON_PLUGIN_SITE = new WikiWriter.Template(
+            "| View %e [on the plugin site|https://plugins.jenkins.io/%s] for more information. |\n");
+
+    private static final WikiWriter.Template NO_INFORMATION = new WikiWriter.Template(
+            "| No information for the plugin '%s' is available. It may have been removed from distribution. |\n");
+
+    private static final String SUSPENDED = "| Distribution of this plugin has been suspended due to unresolved security vulnerabilities, see below. |\n";
+
+    private static final String WARNINGS_START = "{warning}The current version of this plugin may not be safe to use. Please review the following warnings before use:\n\n";
+
+    private static final String WARNINGS_END = "\n{warning}\n\n";
+
+    private static final String INFO_START = "{info}Older versions of this plugin may not be safe to use. Please review the following warnings before using an older version:\n\n";
+
+    private static final String INFO_END = "\n{info}\n\n";
+
+    private static final WikiWriter.Template ADOPT = new WikiWriter.Template(
+            "\n\n{note}*This plugin is up for adoption.* %s [Click here to learn more|Adopt a Plugin]!{note}");
 
     /**
-     * Setter method for automatic injection of the {@link HttpRetrievalService}.
-     *
-     * @param httpRetrievalService the http retrieval service to use
+     * How many similarly spelled plugins to suggest for an unknown id.
+     */
+    private static final int SUGGESTIONS = 3;
+
+    private static final String DID_YOU_MEAN = "| Did you mean ";
+
+    private static final String DEFAULT_ADOPT_MESSAGE = "Want to help improve this plugin?";
+
+    /**
+     * Polls the servlet every 5 seconds, for up to 2 minutes, until it has the info box.
      */
-    public void setHttpRetrievalService(HttpRetrievalService httpRetrievalService) {
-        this.httpRetrievalService = httpRetrievalService;
+    private static final String PLACEHOLDER_SCRIPT = "(function(){"
+            + "var e=document.getElementById('$ID'),n=0,u=(window.AJS&&AJS.contextPath?AJS.contextPath():'')"
+            + "+'/plugins/servlet/jenkins-plugin-info?$QUERY';"
+            + "function retry(){if(++n<24)setTimeout(load,5000);}"
+            + "function load(){var r=new XMLHttpRequest();r.open('GET',u);"
+            + "r.onload=function(){if(r.status==200)e.outerHTML=r.responseText;else if(r.status==503)retry();};"
+            + "r.onerror=retry;r.send();}"
+            + "load();})();";
+
+    /**
+     * How long a render waits for the update center when none has been loaded yet, in
+     * milliseconds. After that a placeholder is returned, which the browser replaces with the
+     * info box from {@link PluginInfoServlet} once the load in progress completes.
+     */
+    public static final long RENDER_BUDGET = Long.getLong(JenkinsPluginInfoMacro.class.getName()
+            + ".renderBudget", 2000L);
+
+    private static final AtomicLong PLACEHOLDERS = new AtomicLong();
+
+    private String getString(String value) {
+        if(value != null)
+            return value;
+        else
+            return "n/a";
     }
-    
+
     /**
-     * non inline, so we return false
+     * @return about the length of the markup built by {@link #execute(Map, String, RenderContext)}
      */
-    public boolean isInline() {
-        return false;
+    private static int estimateLength(String pluginId, String title, List<SecurityWarning> currentWarnings,
+            List<SecurityWarning> olderWarnings, List<String> suggestions, boolean adopt, String message) {
+        int length = HEADER.length();
+        if (title != null)
+            length += VIEW_ON_PLUGIN_SITE.length() + title.length() + pluginId.length();
+        else
+            length += Math.max(NO_INFORMATION.length() + pluginId.length(), SUSPENDED.length());
+        if (!suggestions.isEmpty()) {
+            length += DID_YOU_MEAN.length() + 4;
+            for (String suggestion : suggestions)
+                length += 2 * suggestion.length() + 32;
+        }
+        if (!currentWarnings.isEmpty())
+            length += WARNINGS_START.length() + linksLength(currentWarnings) + WARNINGS_END.length();
+        if (!olderWarnings.isEmpty())
+            length += INFO_START.length() + linksLength(olderWarnings) + INFO_END.length();
+        if (adopt)
+            length += ADOPT.length() + (message != null ? message.length() : DEFAULT_ADOPT_MESSAGE.length());
+        return length;
     }
-    
+
     /**
-     * no body supported, so this returns false
+     * The box filled in this way always shows the default adoption message: the servlet does
+     * not accept markup from the request, so a custom {@code adopt-message} is not passed on.
+     *
+     * @return HTML that loads the info box from {@link PluginInfoServlet} and replaces itself
+     *         with it, retrying while the update center is still loading
      */
-    public boolean hasBody() {
-        return false;
+    static String placeholder(String pluginId, boolean adopt) {
+        String id = "jenkins-plugin-info-" + PLACEHOLDERS.incrementAndGet();
+        StringBuilder query = new StringBuilder("pluginId=").append(urlEncode(pluginId));
+        if (adopt)
+            query.append("&adopt=true");
+        StringBuilder html = new StringBuilder(PLACEHOLDER_SCRIPT.length() + 200);
+        html.append("<div class=\"jenkins-plugin-info-pending\" id=\"").append(id).append("\">")
+                .append("<p>Loading information on the plugin ").append(htmlEscape(pluginId))
+                .append("&hellip;</p></div>\n<script type=\"text/javascript\">")
+                .append(PLACEHOLDER_SCRIPT.replace("$ID", id).replace("$QUERY", query.toString()))
+                .append("</script>\n");
+        return html.toString();
+    }
+
+    private static String urlEncode(String s) {
+        try {
+            return URLEncoder.encode(s, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static String htmlEscape(String s) {
+        StringBuilder b = new StringBuilder(s.length() + 16);
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '<')
+                b.append("&lt;");
+            else if (c == '>')
+                b.append("&gt;");
+            else if (c == '&')
+                b.append("&amp;");
+            else if (c == '"')
+                b.append("&quot;");
+            else if (c == '\'')
+                b.append("&#39;");
+            else
+                b.append(c);
+        }
+        return b.toString();
     }
-    
+
     /**
-     * the execute method takes care of formatting the output,
-     * so NO_RENDER is returned
+     * Writes links to the given plugins, as in "a, b or c".
      */
-    public RenderMode getBodyRenderMode() {
-        return RenderMode.NO_RENDER;
+    private static void alternatives(WikiWriter w, List<String> pluginIds) {
+        for (int i = 0; i < pluginIds.size(); i++) {
+            if (i > 0)
+                w.append(i == pluginIds.size() - 1 ? " or " : ", ");
+            String id = pluginIds.get(i);
+            w.href(id, "https://plugins.jenkins.io/" + id);
+        }
     }
-    
-    private String getString(JSONObject o, String prop) {
-        if(o.containsKey(prop))
-            return o.get(prop).toString();
-        else
-            return "n/a";
+
+    private static void bullets(WikiWriter w, List<SecurityWarning> warnings) {
+        for (SecurityWarning warning : warnings) {
+            w.append("* ").href(warning.getMessage(), warning.getUrl()).append('\n');
+        }
     }
 
     /**
@@ -83,169 +189,119 @@ public class JenkinsPluginInfoMacro extends BaseMacro {
             return "No plugin specified.";
         }
 
-        try {
-            JSONObject updateCenter = jenkinsRetriever.retrieveUpdateCenterDetails(httpRetrievalService);
-            JSONObject plugins = (JSONObject) updateCenter.get("plugins");
-
-            WikiWriter toBeRendered = null;
-
-            // warnings applicable to this plugin no matter what the release is
-            Set<JSONObject> pluginWarnings = new HashSet<JSONObject>();
-
-            // warnings applicable to the current version, which include warnings for all versions even if unpublished
-            Set<JSONObject> currentWarnings = new HashSet<JSONObject>();
-
-            JSONArray warnings = (JSONArray) updateCenter.get("warnings");
-            if (warnings != null) {
-                for (Object w : warnings) {
-                    JSONObject warning = (JSONObject) w;
-                    try {
-                        if (!"plugin".equals(warning.get("type"))) {
-                            // not a plugin warning
-                            continue;
-                        }
-                        if (!pluginId.equals(warning.get("name"))) {
-                            // not about this plugin
-                            continue;
-                        }
-
-                        pluginWarnings.add(warning);
-
-                        JSONArray warningVersions = (JSONArray) warning.get("versions");
-                        if (warningVersions == null) {
-                            warningVersions = new JSONArray();
-                        }
-                        if (isWarningRelevantForAnyVersion(warningVersions) || isWarningRelevantForSpecificVersion("ifThisMatchesAnythingDoes", warningVersions)) {
-                            currentWarnings.add(warning);
-                        }
-                    } catch (RuntimeException ex) {
-                        // ignore -- something wrong on the update site, better to not break the wiki page
-                    }
+        boolean adopt = false;
+        if (renderContext instanceof PageContext) {
+            PageContext pc = (PageContext) renderContext;
+            ContentEntityObject entity = pc.getEntity();
+            for (Label label : entity.getLabels()) {
+                if ("adopt-this-plugin".equals(label.getName())) {
+                    adopt = true;
                 }
             }
+        }
+        String message = adopt ? (String) parameters.get("adopt-message") : null;
 
-            toBeRendered = new WikiWriter().append("|| Plugin Information ||\n");
-
-            if (plugins.containsKey(pluginId)) {
-                JSONObject pluginJSON = (JSONObject) plugins.get(pluginId);
+        String rendered = render(pluginId, adopt, message, renderBudget, renderContext, true);
+        if (rendered == null) {
+            PluginInfoMetrics.getInstance().recordPlaceholder();
+            return placeholder(pluginId, adopt);
+        }
+        return rendered;
+    }
 
-                String title = getString(pluginJSON, "title");
+    /**
+     * Renders the info box, waiting at most {@code timeoutMillis} for the update center if
+     * it has not been loaded yet.
+     *
+     * @param cache whether to keep the output for later renders; only for page renders, as
+     *            output rendered outside of a page may resolve links differently
+     * @return the info box or an error message, or null if the update center is still loading
+     */
+    String render(String pluginId, boolean adopt, String message, long timeoutMillis,
+            RenderContext renderContext, boolean cache) {
+        long start = System.nanoTime();
+        try {
+            UpdateCenterSnapshot updateCenter = jenkinsRetriever.getUpdateCenter(httpRetrievalService,
+                    timeoutMillis);
+            if (updateCenter == null) {
+                return null;
+            }
+            PluginIndex plugins = updateCenter.getPlugins();
 
-                String version = getString(pluginJSON, "version");
+            // the output only depends on these inputs and the update center data
+            String cacheKey = RenderCache.key(renderContext, pluginId, adopt, message);
+            String cached = renderCache.get(updateCenter, cacheKey);
+            if (cached != null) {
+                return cached;
+            }
 
-                // filter warnings by whether they apply to the distributed version
+            // warnings applicable to the current version, which include warnings for all versions even if unpublished,
+            // and those only applicable to older releases
+            PluginWarnings pluginWarnings = updateCenter.getWarnings().get(pluginId);
+            List<SecurityWarning> currentWarnings = pluginWarnings.getCurrent();
+            List<SecurityWarning> olderWarnings = pluginWarnings.getOlder();
+
+            int plugin = plugins.indexOf(pluginId);
+            String title = plugin >= 0 ? getString(plugins.getTitle(plugin)) : null;
+
+            // point out the likely typo when there is nothing else to show
+            List<String> suggestions = Collections.emptyList();
+            if (plugin < 0 && currentWarnings.isEmpty()) {
+                suggestions = new ArrayList<String>(SUGGESTIONS);
+                for (int suggestion : updateCenter.getSearchIndex().suggest(pluginId, SUGGESTIONS))
+                    suggestions.add(plugins.getId(suggestion));
+            }
 
-                for (JSONObject warning : pluginWarnings) {
-                    JSONArray warningVersions = (JSONArray) warning.get("versions");
-                    if (warningVersions == null) {
-                        warningVersions = new JSONArray();
-                    }
-                    if (isWarningRelevantForSpecificVersion(version, warningVersions)) {
-                        pluginWarnings.add(warning);
-                    }
+            WikiWriter toBeRendered = new WikiWriter(estimateLength(pluginId, title, currentWarnings,
+                    olderWarnings, suggestions, adopt, message));
+            toBeRendered.append(HEADER);
+
+            if (plugin >= 0) {
+                toBeRendered.print(VIEW_ON_PLUGIN_SITE, title, pluginId);
+            } else if (currentWarnings.isEmpty()) {
+                toBeRendered.print(NO_INFORMATION, pluginId);
+                if (!suggestions.isEmpty()) {
+                    toBeRendered.append(DID_YOU_MEAN);
+                    alternatives(toBeRendered, suggestions);
+                    toBeRendered.append("? |\n");
                 }
-                toBeRendered.append("| View " + title + " [on the plugin site|https://plugins.jenkins.io/" + pluginId + "] for more information. |\n");
-
             } else {
-                if (currentWarnings.isEmpty()) {
-                    toBeRendered.append("| No information for the plugin '" + pluginId + "' is available. It may have been removed from distribution. |\n");
-                } else {
-                    toBeRendered.append("| Distribution of this plugin has been suspended due to unresolved security vulnerabilities, see below. |\n");
-                }
+                toBeRendered.append(SUSPENDED);
             }
 
             if (!currentWarnings.isEmpty()) {
                 // there are warnings
-                toBeRendered.append("{warning}The current version of this plugin may not be safe to use. Please review the following warnings before use:\n\n");
-                for (JSONObject warning : currentWarnings) {
-                    toBeRendered.append(String.format("* [%s|%s]\n", warning.get("message"), warning.get("url")));
-                }
-                toBeRendered.append("\n{warning}\n\n");
+                toBeRendered.append(WARNINGS_START);
+                bullets(toBeRendered, currentWarnings);
+                toBeRendered.append(WARNINGS_END);
             }
 
-            // remove redundant warnings for plugins with current warnings
-            pluginWarnings.removeAll(currentWarnings);
-
-            if (!pluginWarnings.isEmpty()) {
-                toBeRendered.append("{info}Older versions of this plugin may not be safe to use. Please review the following warnings before using an older version:\n\n");
-                for (JSONObject warning : pluginWarnings) {
-                    toBeRendered.append(String.format("* [%s|%s]\n", warning.get("message"), warning.get("url")));
-                }
-                toBeRendered.append("\n{info}\n\n");
+            if (!olderWarnings.isEmpty()) {
+                toBeRendered.append(INFO_START);
+                bullets(toBeRendered, olderWarnings);
+                toBeRendered.append(INFO_END);
             }
 
-            if (renderContext instanceof PageContext) {
-                PageContext pc = (PageContext) renderContext;
-                ContentEntityObject entity = pc.getEntity();
-                for (Label label : entity.getLabels()) {
-                    if ("adopt-this-plugin".equals(label.getName())) {
-                        toBeRendered.append("\n\n{note}*This plugin is up for adoption.* ");
-
-                        String message = (String) parameters.get("adopt-message");
-                        if (message == null) {
-                            toBeRendered.append("Want to help improve this plugin?");
-                        } else {
-                            toBeRendered.append(message);
-                        }
-
-                        toBeRendered.append(" [Click here to learn more|Adopt a Plugin]!{note}");
-                    }
-                }
+            if (adopt) {
+                toBeRendered.print(ADOPT, message != null ? message : DEFAULT_ADOPT_MESSAGE);
             }
-            
-            return subRenderer.render(toBeRendered.toString(), renderContext);
+
+            String rendered = subRenderer.render(toBeRendered.toString(), renderContext);
+            List<String> shown = new ArrayList<String>(suggestions.size() + 1);
+            shown.add(pluginId);
+            shown.addAll(suggestions);
+            if (cache)
+                renderCache.put(updateCenter, cacheKey, shown, rendered);
+            return rendered;
         }
         catch (IOException e) {
-            return subRenderer.render("h4. Plugin Information\n"
-                                      + "{warning:title=Cannot Load Update Center}\n"
-                                      + "IOException: " + e.getMessage() + "\n"
-                                      + "{warning}\n", renderContext);
+            return renderFailure(e, renderContext);
         } catch (PluginHttpException e) {
-            return subRenderer.render("h4. Plugin Information\n"
-                    + "{warning:title=Cannot Load Update Center}\n" + "error "
-                    + e.getStatusCode() + " loading update-center.json\n"
-                    + "{warning}\n", renderContext);
+            return renderFailure(e, renderContext);
         } catch (ParseException e) {
-            return subRenderer.render("h4. Plugin Information\n"
-                                      + "{warning:title=Cannot Load Update Center}\n"
-                                      + "ParseException: " + e + "\n"
-                                      + "{warning}\n", renderContext);
-        }
-    }
-
-    private boolean isWarningRelevantForAnyVersion(JSONArray versions) {
-        return versions == null || versions.size() == 0;
-    }
-
-    private boolean isWarningRelevantForSpecificVersion(String pluginVersion, JSONArray versions) {
-
-        if (isWarningRelevantForAnyVersion(versions)) {
-            return false;
+            return renderFailure(e, renderContext);
+        } finally {
+            PluginInfoMetrics.getInstance().recordRender(System.nanoTime() - start);
         }
-
-        for (Object v : versions) {
-            try {
-                JSONObject versionEntry = (JSONObject) v;
-                String patt = versionEntry.get("pattern").toString();
-                Pattern pattern = Pattern.compile(patt);
-                if (pattern.matcher(pluginVersion).matches()) {
-                    return true;
-                }
-            } catch (Exception e) {
-                // ignore
-            }
-        }
-        return false;
-    }
-
-    private SubRenderer subRenderer;
-
-    /**
-     * @param subRenderer
-     *            The subRenderer to set.
-     */
-    public void setSubRenderer(SubRenderer subRenderer) {
-        this.subRenderer = subRenderer;
     }
-    
 }
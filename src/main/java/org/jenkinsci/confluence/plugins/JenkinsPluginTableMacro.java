@@ -0,0 +1,151 @@
+package org.jenkinsci.confluence.plugins;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.atlassian.renderer.RenderContext;
+import com.atlassian.renderer.v2.macro.MacroException;
+
+import org.jenkinsci.confluence.plugins.WarningIndex.PluginWarnings;
+import org.jenkinsci.confluence.plugins.exception.PluginHttpException;
+import org.json.simple.parser.ParseException;
+
+/**
+ * Renders a single table with version and security information for a list of plugins.
+ *
+ * <p>
+ * All plugins are resolved against the same update center snapshot and the whole table
+ * goes through the {@code SubRenderer} once, so a page listing a hundred plugins costs
+ * about as much as one {@link JenkinsPluginInfoMacro}.
+ */
+public class JenkinsPluginTableMacro extends AbstractUpdateCenterMacro {
+
+    private static final String HEADER = "|| Plugin || Version || Security Warnings ||\n";
+
+    /**
+     * Room for the fixed markup, title and version of one row.
+     */
+    private static final int ROW_LENGTH = 160;
+
+    /**
+     * @return the plugin ids listed in the {@code pluginIds} parameter, separated by commas
+     *         or whitespace, without duplicates
+     */
+    static List<String> parsePluginIds(String value) {
+        Set<String> ids = new LinkedHashSet<String>();
+        if (value != null) {
+            for (String id : value.split("[,\\s]+")) {
+                if (id.length() > 0)
+                    ids.add(id);
+            }
+        }
+        return new ArrayList<String>(ids);
+    }
+
+    /**
+     * Starts the next entry of the security column.
+     */
+    private static void separate(WikiWriter w, boolean first, int plugin) {
+        if (!first)
+            w.br();
+        else if (plugin < 0)
+            w.append(" "); // after the explanation why the plugin is missing
+    }
+
+    public String execute(Map parameters, String body, RenderContext renderContext)
+            throws MacroException {
+        String value = (String) parameters.get("pluginIds");
+        if (value == null) {
+            value = (String) parameters.get("0"); // Accept the list without "pluginIds="
+        }
+        List<String> pluginIds = parsePluginIds(value);
+        if (pluginIds.isEmpty()) {
+            return "No plugins specified.";
+        }
+
+        long start = System.nanoTime();
+        try {
+            UpdateCenterSnapshot updateCenter = getUpdateCenter();
+            if (updateCenter == null) {
+                return renderLoading();
+            }
+
+            StringBuilder key = new StringBuilder("\u0001table");
+            for (String pluginId : pluginIds)
+                key.append('\u0000').append(pluginId);
+            String cacheKey = RenderCache.key(renderContext, key.toString());
+            String cached = renderCache.get(updateCenter, cacheKey);
+            if (cached != null) {
+                return cached;
+            }
+
+            PluginIndex plugins = updateCenter.getPlugins();
+            WarningIndex warnings = updateCenter.getWarnings();
+
+            int length = HEADER.length();
+            for (String pluginId : pluginIds) {
+                PluginWarnings pluginWarnings = warnings.get(pluginId);
+                length += ROW_LENGTH + 2 * pluginId.length() + linksLength(pluginWarnings.getCurrent())
+                        + linksLength(pluginWarnings.getOlder());
+            }
+
+            WikiWriter toBeRendered = new WikiWriter(length).append(HEADER);
+            for (String pluginId : pluginIds) {
+                PluginWarnings pluginWarnings = warnings.get(pluginId);
+                int plugin = plugins.indexOf(pluginId);
+
+                toBeRendered.append("| ");
+                if (plugin >= 0) {
+                    String title = plugins.getTitle(plugin);
+                    toBeRendered.href(title != null ? title : pluginId, "https://plugins.jenkins.io/" + pluginId);
+                    String version = plugins.getVersion(plugin);
+                    toBeRendered.append(" | ", version != null ? version : "n/a", " | ");
+                } else if (pluginWarnings.getCurrent().isEmpty()) {
+                    toBeRendered.escape(pluginId).append(" | n/a | No information available. It may have been removed from distribution.");
+                } else {
+                    toBeRendered.escape(pluginId).append(" | n/a | Distribution suspended due to unresolved security vulnerabilities.");
+                }
+
+                boolean first = true;
+                for (SecurityWarning warning : pluginWarnings.getCurrent()) {
+                    separate(toBeRendered, first, plugin);
+                    toBeRendered.append("(!) ").href(warning.getMessage(), warning.getUrl());
+                    first = false;
+                }
+                if (!pluginWarnings.getOlder().isEmpty()) {
+                    separate(toBeRendered, first, plugin);
+                    toBeRendered.append("(i) Older versions: ");
+                    boolean firstOlder = true;
+                    for (SecurityWarning warning : pluginWarnings.getOlder()) {
+                        if (!firstOlder)
+                            toBeRendered.append(", ");
+                        toBeRendered.href(warning.getMessage(), warning.getUrl());
+                        firstOlder = false;
+                    }
+                    first = false;
+                }
+                if (first && plugin >= 0) {
+                    toBeRendered.append("(/) None");
+                }
+                toBeRendered.append(" |\n");
+            }
+
+            String rendered = subRenderer.render(toBeRendered.toString(), renderContext);
+            renderCache.put(updateCenter, cacheKey, pluginIds, rendered);
+            return rendered;
+        }
+        catch (IOException e) {
+            return renderFailure(e, renderContext);
+        } catch (PluginHttpException e) {
+            return renderFailure(e, renderContext);
+        } catch (ParseException e) {
+            return renderFailure(e, renderContext);
+        } finally {
+            PluginInfoMetrics.getInstance().recordRender(System.nanoTime() - start);
+        }
+    }
+}
@@ -1,50 +1,258 @@
 package org.jenkinsci.confluence.plugins;
 
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.Collection;
+import java.util.Map;
 
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.CountingInputStream;
 import org.jenkinsci.confluence.plugins.exception.PluginHttpException;
 import org.json.simple.JSONObject;
 import org.json.simple.parser.JSONParser;
 import org.json.simple.parser.ParseException;
 
+import com.atlassian.confluence.util.http.HttpRequest;
 import com.atlassian.confluence.util.http.HttpResponse;
 import com.atlassian.confluence.util.http.HttpRetrievalService;
 
 public class JenkinsRetriever {
 
-	public JSONObject retrieveUpdateCenterDetails(
+	/**
+	 * Where to download the update center from; may point to a mirror.
+	 */
+	static final String UPDATE_CENTER_URL = System.getProperty(
+			JenkinsRetriever.class.getName() + ".updateCenterUrl",
+			"https://updates.jenkins.io/update-center.json");
+
+	/**
+	 * Where to download installation statistics from, followed by
+	 * {@code <pluginId>.stats.json}; may point to a mirror.
+	 */
+	static final String STATS_URL = System.getProperty(
+			JenkinsRetriever.class.getName() + ".statsUrl",
+			"http://stats.jenkins.io/plugin-installation-trend/");
+
+	private final UpdateCenterCache updateCenterCache;
+
+	private final StatsCache statsCache;
+
+	/**
+	 * Replaces downloading when set.
+	 */
+	private final LocalUpdateCenterSource localSource;
+
+	private final PluginInfoMetrics metrics = PluginInfoMetrics.getInstance();
+
+	public JenkinsRetriever() {
+		this(UpdateCenterCache.getInstance(), StatsCache.getInstance(),
+				LocalUpdateCenterSource.getConfigured());
+	}
+
+	JenkinsRetriever(UpdateCenterCache updateCenterCache) {
+		this(updateCenterCache, StatsCache.getInstance());
+	}
+
+	JenkinsRetriever(UpdateCenterCache updateCenterCache, StatsCache statsCache) {
+		this(updateCenterCache, statsCache, null);
+	}
+
+	JenkinsRetriever(UpdateCenterCache updateCenterCache,
+			StatsCache statsCache, LocalUpdateCenterSource localSource) {
+		this.updateCenterCache = updateCenterCache;
+		this.statsCache = statsCache;
+		this.localSource = localSource;
+	}
+
+	/**
+	 * Returns the shared update center snapshot, only going to the network
+	 * when none has been loaded yet or the current one has expired.
+	 */
+	public UpdateCenterSnapshot getUpdateCenter(
+			HttpRetrievalService httpRetrievalService) throws IOException,
+			PluginHttpException, ParseException {
+		return updateCenterCache.get(source(httpRetrievalService));
+	}
+
+	/**
+	 * Returns the shared update center snapshot, waiting at most
+	 * {@code timeoutMillis} if none has been loaded yet.
+	 *
+	 * @return the snapshot, or null if it is still being loaded
+	 * @see UpdateCenterCache#get(UpdateCenterCache.Loader, long)
+	 */
+	public UpdateCenterSnapshot getUpdateCenter(
+			HttpRetrievalService httpRetrievalService, long timeoutMillis)
+			throws IOException, PluginHttpException, ParseException {
+		return updateCenterCache.get(source(httpRetrievalService),
+				timeoutMillis);
+	}
+
+	/**
+	 * Downloads the update center on the calling thread, replacing the shared
+	 * snapshot.
+	 *
+	 * @see UpdateCenterCache#refresh(UpdateCenterCache.Loader)
+	 */
+	public UpdateCenterSnapshot refreshUpdateCenter(
 			HttpRetrievalService httpRetrievalService) throws IOException,
 			PluginHttpException, ParseException {
-		HttpResponse response = httpRetrievalService
-				.get("https://updates.jenkins.io/update-center.json");
-		if (response.getStatusCode() != 200) {
-			throw new PluginHttpException(response.getStatusCode());
+		return updateCenterCache.refresh(source(httpRetrievalService));
+	}
+
+	/**
+	 * Starts reloading the statistics of plugins that are read often.
+	 *
+	 * @see StatsCache#refreshHot(StatsCache.Loader)
+	 */
+	public int refreshHotStats(HttpRetrievalService httpRetrievalService) {
+		return statsCache.refreshHot(source(httpRetrievalService));
+	}
+
+	UpdateCenterCache getUpdateCenterCache() {
+		return updateCenterCache;
+	}
+
+	StatsCache getStatsCache() {
+		return statsCache;
+	}
+
+	LocalUpdateCenterSource getLocalSource() {
+		return localSource;
+	}
+
+	/**
+	 * @return the local source if one is configured, the update site
+	 *         otherwise
+	 */
+	UpdateCenterSource source(HttpRetrievalService httpRetrievalService) {
+		if (localSource != null) {
+			return localSource;
+		}
+		return new HttpUpdateCenterSource(this, httpRetrievalService);
+	}
+
+	/**
+	 * Loads the update center, revalidating {@code previous} with the update
+	 * site instead of downloading it again when possible.
+	 *
+	 * @param previous
+	 *            the snapshot currently held, or null
+	 * @return {@code previous} (with a fresh timestamp) if the update site
+	 *         answered 304 Not Modified, a newly parsed snapshot otherwise
+	 */
+	public UpdateCenterSnapshot retrieveUpdateCenterSnapshot(
+			HttpRetrievalService httpRetrievalService,
+			UpdateCenterSnapshot previous) throws IOException,
+			PluginHttpException, ParseException {
+		long start = System.nanoTime();
+		HttpRequest request = httpRetrievalService
+				.getDefaultRequestFor(UPDATE_CENTER_URL);
+		boolean conditional = false;
+		if (previous != null && previous.getEtag() != null) {
+			request.setHeader("If-None-Match", previous.getEtag());
+			conditional = true;
+		}
+		if (previous != null && previous.getLastModified() != null) {
+			request.setHeader("If-Modified-Since", previous.getLastModified());
+			conditional = true;
 		}
-		String rawUpdateCenter = IOUtils.toString(response.getResponse())
-				.trim();
-		if (rawUpdateCenter.startsWith("updateCenter.post(")) {
-			rawUpdateCenter = rawUpdateCenter.substring("updateCenter.post("
-					.length());
+		HttpResponse response = httpRetrievalService.get(request);
+		try {
+			if (PluginHttpException.checkStatus(response.getStatusCode(),
+					conditional)) {
+				metrics.recordUpdateCenterFetch(System.nanoTime() - start, 0);
+				return previous.revalidated();
+			}
+			long fetched = System.nanoTime();
+			CountingInputStream body = new CountingInputStream(
+					response.getResponse());
+			JSONObject updateCenter;
+			try {
+				updateCenter = UpdateCenterParser.parse(new JsonpReader(
+						new InputStreamReader(body, "UTF-8")));
+			} finally {
+				body.close();
+			}
+			metrics.recordUpdateCenterFetch(fetched - start, body.getByteCount());
+			UpdateCenterSnapshot snapshot = new UpdateCenterSnapshot(updateCenter,
+					System.currentTimeMillis(), getHeader(response, "ETag"),
+					getHeader(response, "Last-Modified"));
+			metrics.recordUpdateCenterParse(System.nanoTime() - fetched);
+			return snapshot;
+		} finally {
+			response.finish();
 		}
-		if (rawUpdateCenter.endsWith(");")) {
-			rawUpdateCenter = rawUpdateCenter.substring(0,
-					rawUpdateCenter.lastIndexOf(");"));
+	}
+
+	public JSONObject retrieveUpdateCenterDetails(
+			HttpRetrievalService httpRetrievalService) throws IOException,
+			PluginHttpException, ParseException {
+		HttpResponse response = httpRetrievalService.get(UPDATE_CENTER_URL);
+		try {
+			if (response.getStatusCode() != 200) {
+				throw new PluginHttpException(response.getStatusCode());
+			}
+			InputStreamReader body = new InputStreamReader(
+					response.getResponse(), "UTF-8");
+			try {
+				JSONParser parser = new JSONParser();
+				return (JSONObject) parser.parse(new JsonpReader(body));
+			} finally {
+				body.close();
+			}
+		} finally {
+			response.finish();
+		}
+	}
+
+	private static String getHeader(HttpResponse response, String name) {
+		String[] values = response.getHeaders(name);
+		if (values == null || values.length == 0) {
+			return null;
 		}
-		JSONParser parser = new JSONParser();
-		JSONObject updateCenter = (JSONObject) parser.parse(rawUpdateCenter);
-		return updateCenter;
+		return values[0];
+	}
+
+	/**
+	 * Returns the cached installation statistics of a plugin, downloading them
+	 * if they are missing or expired.
+	 *
+	 * @return the installation trend, or null if stats.jenkins.io has no data
+	 *         for the plugin
+	 */
+	public TimeSeries getStats(HttpRetrievalService httpRetrievalService,
+			String pluginId) throws IOException, PluginHttpException,
+			ParseException {
+		return statsCache.get(pluginId, source(httpRetrievalService));
+	}
+
+	/**
+	 * Returns the installation statistics of many plugins, downloading the
+	 * missing ones concurrently.
+	 *
+	 * @see StatsCache#getAll(Collection, StatsCache.Loader)
+	 */
+	public Map<String, TimeSeries> getStats(
+			HttpRetrievalService httpRetrievalService,
+			Collection<String> pluginIds) throws IOException {
+		return statsCache.getAll(pluginIds, source(httpRetrievalService));
 	}
 
 	public String retrieveStatsResponse(
 			HttpRetrievalService httpRetrievalService, String pluginId)
 			throws IOException, PluginHttpException {
+		long start = System.nanoTime();
 		HttpResponse statsResponse = httpRetrievalService
-				.get("http://stats.jenkins.io/plugin-installation-trend/"
-						+ pluginId + ".stats.json");
+				.get(STATS_URL + pluginId + ".stats.json");
 		if (statsResponse.getStatusCode() != 200) {
 			throw new PluginHttpException(statsResponse.getStatusCode());
 		}
-		return IOUtils.toString(statsResponse.getResponse()).trim();
+		CountingInputStream body = new CountingInputStream(
+				statsResponse.getResponse());
+		String stats = IOUtils.toString(body).trim();
+		metrics.recordStatsFetch(System.nanoTime() - start,
+				body.getByteCount());
+		return stats;
 	}
 }
@@ -0,0 +1,53 @@
+package org.jenkinsci.confluence.plugins;
+
+import java.io.IOException;
+import java.util.Map;
+
+import com.atlassian.renderer.RenderContext;
+import com.atlassian.renderer.v2.macro.MacroException;
+
+import org.jenkinsci.confluence.plugins.exception.PluginHttpException;
+import org.json.simple.parser.ParseException;
+
+/**
+ * Renders every plugin that currently has security warnings, grouped by whether the
+ * distributed version is affected, the plugin is suspended, or only older versions are.
+ *
+ * <p>
+ * The report comes from the snapshot's {@link SecurityAdvisoryView}, so its cost does
+ * not depend on the number of warnings once the snapshot is loaded.
+ */
+public class JenkinsSecurityAdvisoriesMacro extends AbstractUpdateCenterMacro {
+
+    private static final String CACHE_KEY = "\u0001advisories";
+
+    public String execute(Map parameters, String body, RenderContext renderContext)
+            throws MacroException {
+        long start = System.nanoTime();
+        try {
+            UpdateCenterSnapshot updateCenter = getUpdateCenter();
+            if (updateCenter == null) {
+                return renderLoading();
+            }
+            String cacheKey = RenderCache.key(renderContext, CACHE_KEY);
+            String cached = renderCache.get(updateCenter, cacheKey);
+            if (cached != null) {
+                return cached;
+            }
+
+            String rendered = subRenderer.render(updateCenter.getAdvisories().getMarkup(), renderContext);
+            // any change may add or remove a plugin from the report
+            renderCache.put(updateCenter, cacheKey, null, rendered);
+            return rendered;
+        }
+        catch (IOException e) {
+            return renderFailure(e, renderContext);
+        } catch (PluginHttpException e) {
+            return renderFailure(e, renderContext);
+        } catch (ParseException e) {
+            return renderFailure(e, renderContext);
+        } finally {
+            PluginInfoMetrics.getInstance().recordRender(System.nanoTime() - start);
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package org.jenkinsci.confluence.plugins;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Removes the {@code updateCenter.post(...);} wrapper around update-center.json while it
+ * is being read, so that the parser can consume the response as it streams in.
+ *
+ * <p>
+ * Leading and trailing white space is skipped, as is the prefix if present. Runs of
+ * {@code )}, {@code ;} and white space are held back until it is known whether they end
+ * the document; at the end, a trailing {@code );} is dropped. Everything else is passed
+ * through without being copied more than once.
+ */
+final class JsonpReader extends Reader {
+    static final String PREFIX = "updateCenter.post(";
+
+    private static final String SUFFIX = ");";
+
+    private final Reader in;
+
+    private final char[] buf = new char[8192];
+
+    private int pos;
+
+    private int limit;
+
+    private boolean started;
+
+    private boolean eof;
+
+    /**
+     * Characters that may be part of the trailing {@code );}.
+     */
+    private final StringBuilder held = new StringBuilder();
+
+    /**
+     * How much of {@link #held} has been returned, or -1 while it is still growing.
+     */
+    private int flushed = -1;
+
+    JsonpReader(Reader in) {
+        this.in = in;
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        if (!started) {
+            skipPrefix();
+            started = true;
+        }
+        int n = 0;
+        while (n < len) {
+            if (flushed >= 0) {
+                int k = Math.min(len - n, held.length() - flushed);
+                held.getChars(flushed, flushed + k, cbuf, off + n);
+                flushed += k;
+                n += k;
+                if (flushed == held.length()) {
+                    held.setLength(0);
+                    flushed = -1;
+                }
+                continue;
+            }
+            if (eof)
+                break;
+            if (pos == limit) {
+                if (n > 0)
+                    break; // don't block with data at hand
+                if (!fill()) {
+                    eof = true;
+                    stripSuffix();
+                }
+                continue;
+            }
+            char c = buf[pos];
+            if (isTrailing(c)) {
+                held.append(c);
+                pos++;
+            } else if (held.length() > 0) {
+                flushed = 0; // not the end after all
+            } else {
+                int end = pos + 1;
+                int max = Math.min(limit, pos + len - n);
+                while (end < max && !isTrailing(buf[end]))
+                    end++;
+                System.arraycopy(buf, pos, cbuf, off + n, end - pos);
+                n += end - pos;
+                pos = end;
+            }
+        }
+        return n == 0 && len > 0 ? -1 : n;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private void skipPrefix() throws IOException {
+        for (;;) {
+            while (pos < limit && buf[pos] <= ' ')
+                pos++;
+            if (pos < limit || !fill())
+                break;
+        }
+        while (limit - pos < PREFIX.length() && fill()) {
+            // read until the prefix can be compared
+        }
+        if (limit - pos < PREFIX.length())
+            return;
+        for (int i = 0; i < PREFIX.length(); i++) {
+            if (buf[pos + i] != PREFIX.charAt(i))
+                return;
+        }
+        pos += PREFIX.length();
+    }
+
+    /**
+     * Drops trailing white space and {@code );} from the held back characters, and
+     * schedules the rest to be returned.
+     */
+    private void stripSuffix() {
+        int end = held.length();
+        while (end > 0 && held.charAt(end - 1) <= ' ')
+            end--;
+        if (end >= SUFFIX.length() && held.substring(end - SUFFIX.length(), end).equals(SUFFIX))
+            end -= SUFFIX.length();
+        held.setLength(end);
+        if (end > 0)
+            flushed = 0;
+    }
+
+    /**
+     * Reads more characters, keeping the unread ones.
+     *
+     * @return false at the end of the input
+     */
+    private boolean fill() throws IOException {
+        if (pos > 0) {
+            System.arraycopy(buf, pos, buf, 0, limit - pos);
+            limit -= pos;
+            pos = 0;
+        }
+        int n = in.read(buf, limit, buf.length - limit);
+        if (n < 0)
+            return false;
+        limit += n;
+        return true;
+    }
+
+    private static boolean isTrailing(char c) {
+        return c <= ' ' || c == ')' || c == ';';
+    }
+}
@@ -0,0 +1,115 @@
+package org.jenkinsci.confluence.plugins;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of durations, cheap enough to record on every render.
+ *
+ * <p>
+ * Durations are counted in buckets whose width doubles with every power of two, split
+ * into {@value #SUB_BUCKETS} linear steps, so percentiles are reported with an error
+ * below 1/{@value #SUB_BUCKETS}th of the value.
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BITS = 3;
+
+    static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(64 * SUB_BUCKETS);
+
+    private final AtomicLong count = new AtomicLong();
+
+    private final AtomicLong total = new AtomicLong();
+
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * @param nanos the duration, in nanoseconds. Negative values count as 0.
+     */
+    public void record(long nanos) {
+        if (nanos < 0)
+            nanos = 0;
+        buckets.incrementAndGet(bucketOf(nanos));
+        count.incrementAndGet();
+        total.addAndGet(nanos);
+        for (;;) {
+            long m = max.get();
+            if (nanos <= m || max.compareAndSet(m, nanos))
+                break;
+        }
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public double getMeanMillis() {
+        long n = count.get();
+        return n == 0 ? 0 : total.get() / (double) n / 1e6;
+    }
+
+    public double getMaxMillis() {
+        return max.get() / 1e6;
+    }
+
+    public double getP50Millis() {
+        return percentile(0.5) / 1e6;
+    }
+
+    public double getP99Millis() {
+        return percentile(0.99) / 1e6;
+    }
+
+    public double getP999Millis() {
+        return percentile(0.999) / 1e6;
+    }
+
+    /**
+     * @return the upper bound of the bucket holding the given fraction of the recorded
+     *         durations, in nanoseconds, or 0 if nothing was recorded
+     */
+    long percentile(double fraction) {
+        long[] counts = new long[buckets.length()];
+        long n = 0;
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = buckets.get(i);
+            n += counts[i];
+        }
+        if (n == 0)
+            return 0;
+        long rank = (long) Math.ceil(fraction * n);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= Math.max(rank, 1))
+                return Math.min(upperBound(i), max.get());
+        }
+        return max.get();
+    }
+
+    public void reset() {
+        for (int i = 0; i < buckets.length(); i++)
+            buckets.set(i, 0);
+        count.set(0);
+        total.set(0);
+        max.set(0);
+    }
+
+    static int bucketOf(long nanos) {
+        if (nanos < SUB_BUCKETS)
+            return (int) nanos;
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos); // >= SUB_BITS
+        int sub = (int) (nanos >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS)
+            return bucket;
+        int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+        long sub = bucket % SUB_BUCKETS;
+        long width = 1L << (exponent - SUB_BITS);
+        return (1L << exponent) + (sub + 1) * width - 1;
+    }
+}
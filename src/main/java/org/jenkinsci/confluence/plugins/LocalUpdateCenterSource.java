@@ -0,0 +1,190 @@
+package org.jenkinsci.confluence.plugins;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+
+import org.jenkinsci.confluence.plugins.exception.PluginHttpException;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.ParseException;
+
+/**
+ * Reads update center data from the local disk, for wikis that cannot reach the Jenkins
+ * project's servers and get the files from a sync job instead.
+ *
+ * <p>
+ * The path is either the update center file itself, or a directory laid out like the
+ * update and stats sites: {@code update-center.json} and
+ * {@code plugin-installation-trend/<pluginId>.stats.json}. Without such a directory no
+ * statistics are available.
+ *
+ * <p>
+ * The update center is parsed while it is read, and only if its size or modification time
+ * changed since the last load. It is not memory-mapped: a mapping stays open until it is
+ * garbage collected, and on Windows keeps the sync job from replacing the file. While {@linkplain
+ * #startWatching(UpdateCenterCache) watching}, replacing the file reloads it right away.
+ */
+public class LocalUpdateCenterSource implements UpdateCenterSource {
+    /**
+     * The file or directory to read from. Unset by default, which means downloading over HTTP.
+     */
+    public static final String PATH = System.getProperty(LocalUpdateCenterSource.class.getName() + ".path");
+
+    /**
+     * How long to wait for more changes to a file before reloading it, in milliseconds.
+     */
+    static final long QUIET_PERIOD = 500;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final LocalUpdateCenterSource CONFIGURED = PATH != null ? new LocalUpdateCenterSource(
+            new File(PATH)) : null;
+
+    private final File updateCenterFile;
+
+    /**
+     * Null if there is no stats directory.
+     */
+    private final File statsDirectory;
+
+    private final PluginInfoMetrics metrics = PluginInfoMetrics.getInstance();
+
+    private WatchService watchService;
+
+    public LocalUpdateCenterSource(File path) {
+        if (path.isDirectory()) {
+            this.updateCenterFile = new File(path, "update-center.json");
+            this.statsDirectory = new File(path, "plugin-installation-trend");
+        } else {
+            this.updateCenterFile = path;
+            this.statsDirectory = null;
+        }
+    }
+
+    /**
+     * @return the source configured with {@link #PATH}, or null
+     */
+    public static LocalUpdateCenterSource getConfigured() {
+        return CONFIGURED;
+    }
+
+    public File getUpdateCenterFile() {
+        return updateCenterFile;
+    }
+
+    public UpdateCenterSnapshot load(UpdateCenterSnapshot previous) throws IOException, ParseException {
+        long start = System.nanoTime();
+        FileInputStream in = new FileInputStream(updateCenterFile);
+        try {
+            FileChannel channel = in.getChannel();
+            // identifies the content, sent back as the previous snapshot's etag
+            String version = channel.size() + "-" + updateCenterFile.lastModified();
+            if (previous != null && version.equals(previous.getEtag())) {
+                return previous.revalidated();
+            }
+            JSONObject updateCenter = UpdateCenterParser.parse(new JsonpReader(new InputStreamReader(
+                    new BufferedInputStream(in), UTF8)));
+            UpdateCenterSnapshot snapshot = new UpdateCenterSnapshot(updateCenter, System.currentTimeMillis(),
+                    version, null);
+            metrics.recordUpdateCenterParse(System.nanoTime() - start);
+            return snapshot;
+        } finally {
+            in.close();
+        }
+    }
+
+    public String load(String pluginId) throws IOException, PluginHttpException {
+        File file = statsDirectory != null ? new File(statsDirectory, pluginId + ".stats.json") : null;
+        if (file == null || !file.isFile()) {
+            throw new PluginHttpException(404);
+        }
+        byte[] content = new byte[(int) file.length()];
+        FileInputStream in = new FileInputStream(file);
+        try {
+            int n = 0;
+            while (n < content.length) {
+                int r = in.read(content, n, content.length - n);
+                if (r < 0)
+                    break;
+                n += r;
+            }
+            return new String(content, 0, n, UTF8).trim();
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Reloads the update center into the cache whenever its file is created or modified,
+     * on a daemon thread, until {@link #stopWatching()}.
+     */
+    public synchronized void startWatching(final UpdateCenterCache cache) throws IOException {
+        if (watchService != null)
+            return;
+        final Path directory = updateCenterFile.getAbsoluteFile().getParentFile().toPath();
+        final String name = updateCenterFile.getName();
+        final WatchService watchService = directory.getFileSystem().newWatchService();
+        directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        this.watchService = watchService;
+
+        Thread t = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    for (;;) {
+                        if (!concernsFile(watchService.take(), name))
+                            continue;
+                        // a sync job may write in several steps; reload once it is done
+                        WatchKey more;
+                        while ((more = watchService.poll(QUIET_PERIOD, TimeUnit.MILLISECONDS)) != null) {
+                            concernsFile(more, name);
+                        }
+                        try {
+                            cache.refresh(LocalUpdateCenterSource.this);
+                        } catch (Exception e) {
+                            // recorded by the circuit breaker, retried on the next change or refresh
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    // stopped
+                } catch (ClosedWatchServiceException e) {
+                    // stopped
+                }
+            }
+        }, "jenkins-plugin-info watch " + updateCenterFile);
+        t.setDaemon(true);
+        t.start();
+    }
+
+    public synchronized void stopWatching() throws IOException {
+        if (watchService == null)
+            return;
+        watchService.close();
+        watchService = null;
+    }
+
+    /**
+     * Consumes the events of a key and re-arms it.
+     *
+     * @return true if any of the events may concern the given file
+     */
+    private static boolean concernsFile(WatchKey key, String name) {
+        boolean concerns = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW || name.equals(String.valueOf(event.context())))
+                concerns = true;
+        }
+        key.reset();
+        return concerns;
+    }
+}
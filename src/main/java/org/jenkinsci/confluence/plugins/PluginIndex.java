@@ -0,0 +1,130 @@
+package org.jenkinsci.confluence.plugins;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.json.simple.JSONObject;
+
+/**
+ * Read-only table of the plugins in one update center snapshot.
+ *
+ * <p>
+ * Plugin ids are kept sorted in one array and looked up by binary search; the other
+ * attributes live in parallel arrays at the same position. Repeated values (versions
+ * such as "1.0" occur hundreds of times) are stored once per index.
+ */
+public final class PluginIndex {
+    public static final PluginIndex EMPTY = new Builder().build();
+
+    private final String[] ids;
+
+    private final String[] titles;
+
+    private final String[] versions;
+
+    private PluginIndex(String[] ids, String[] titles, String[] versions) {
+        this.ids = ids;
+        this.titles = titles;
+        this.versions = versions;
+    }
+
+    /**
+     * Builds the index from the {@code plugins} object of update-center.json.
+     */
+    public static PluginIndex fromJSON(JSONObject plugins) {
+        Builder builder = new Builder();
+        for (Object o : plugins.entrySet()) {
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+            if (!(e.getValue() instanceof JSONObject))
+                continue; // not a plugin entry
+            JSONObject plugin = (JSONObject) e.getValue();
+            builder.add(e.getKey().toString(), toString(plugin.get("title")), toString(plugin.get("version")));
+        }
+        return builder.build();
+    }
+
+    private static String toString(Object o) {
+        return o != null ? o.toString() : null;
+    }
+
+    public int size() {
+        return ids.length;
+    }
+
+    /**
+     * @return the position of the plugin in this index, or a negative value if it is not in it
+     */
+    public int indexOf(String id) {
+        return Arrays.binarySearch(ids, id);
+    }
+
+    public boolean contains(String id) {
+        return indexOf(id) >= 0;
+    }
+
+    public String getId(int i) {
+        return ids[i];
+    }
+
+    /**
+     * @return the human readable name, or null if the update center has none
+     */
+    public String getTitle(int i) {
+        return titles[i];
+    }
+
+    /**
+     * @return the currently distributed version, or null if the update center has none
+     */
+    public String getVersion(int i) {
+        return versions[i];
+    }
+
+    /**
+     * Collects plugins in any order and sorts them once in {@link #build()}.
+     */
+    public static final class Builder {
+        private final List<String[]> rows = new ArrayList<String[]>();
+
+        private final Map<String, String> pool = new HashMap<String, String>();
+
+        public Builder add(String id, String title, String version) {
+            rows.add(new String[] { id, dedup(title), dedup(version) });
+            return this;
+        }
+
+        private String dedup(String s) {
+            if (s == null)
+                return null;
+            String existing = pool.get(s);
+            if (existing != null)
+                return existing;
+            pool.put(s, s);
+            return s;
+        }
+
+        public PluginIndex build() {
+            Collections.sort(rows, new Comparator<String[]>() {
+                public int compare(String[] a, String[] b) {
+                    return a[0].compareTo(b[0]);
+                }
+            });
+            int n = rows.size();
+            String[] ids = new String[n];
+            String[] titles = new String[n];
+            String[] versions = new String[n];
+            for (int i = 0; i < n; i++) {
+                String[] row = rows.get(i);
+                ids[i] = row[0];
+                titles[i] = row[1];
+                versions[i] = row[2];
+            }
+            return new PluginIndex(ids, titles, versions);
+        }
+    }
+}
@@ -0,0 +1,289 @@
+package org.jenkinsci.confluence.plugins;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanRegistration;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.jenkinsci.confluence.plugins.exception.PluginHttpException;
+
+/**
+ * Process-wide counters and latency histograms of downloading, parsing and rendering,
+ * exposed over JMX.
+ *
+ * <p>
+ * Recording only touches atomic counters, so it is safe to do on every request.
+ */
+public class PluginInfoMetrics implements PluginInfoMetricsMXBean, MBeanRegistration {
+    public static final String OBJECT_NAME = "org.jenkinsci.confluence.plugins:type=PluginInfoMetrics";
+
+    private static final PluginInfoMetrics INSTANCE = new PluginInfoMetrics();
+
+    /**
+     * Whether the MBean server holds this very instance. Kept up to date by the server, so an
+     * instance replaced by a newer version of the plugin knows it no longer is.
+     */
+    private volatile boolean registered;
+
+    static {
+        INSTANCE.register();
+    }
+
+    private final LatencyHistogram updateCenterFetch = new LatencyHistogram();
+
+    private final AtomicLong updateCenterBytes = new AtomicLong();
+
+    private final LatencyHistogram updateCenterParse = new LatencyHistogram();
+
+    private final LatencyHistogram warningEvaluation = new LatencyHistogram();
+
+    private final LatencyHistogram statsFetch = new LatencyHistogram();
+
+    private final AtomicLong statsBytes = new AtomicLong();
+
+    private final LatencyHistogram render = new LatencyHistogram();
+
+    private final ConcurrentMap<String, AtomicLong> errors = new ConcurrentHashMap<String, AtomicLong>();
+
+    private final AtomicLong placeholders = new AtomicLong();
+
+    private final AtomicLong renderCacheHits = new AtomicLong();
+
+    private final AtomicLong renderCacheMisses = new AtomicLong();
+
+    private final AtomicLong updateCenterCacheHits = new AtomicLong();
+
+    private final AtomicLong updateCenterCacheMisses = new AtomicLong();
+
+    private final AtomicLong statsCacheHits = new AtomicLong();
+
+    private final AtomicLong statsCacheMisses = new AtomicLong();
+
+    PluginInfoMetrics() {
+    }
+
+    public static PluginInfoMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Registers with the platform MBean server, replacing the instance of a previously
+     * loaded version of this plugin. Monitoring is optional, so failures are ignored.
+     */
+    public void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            try {
+                server.registerMBean(this, name);
+            } catch (InstanceAlreadyExistsException e) {
+                server.unregisterMBean(name);
+                server.registerMBean(this, name);
+            }
+        } catch (JMException e) {
+            // not monitored
+        } catch (SecurityException e) {
+            // not monitored
+        }
+    }
+
+    /**
+     * Removes this instance from the platform MBean server, so that it does not keep the
+     * classes of a disabled plugin loaded. An instance registered since by another version
+     * of the plugin is left alone.
+     */
+    public void unregister() {
+        if (!registered)
+            return;
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(new ObjectName(OBJECT_NAME));
+        } catch (JMException e) {
+            // not monitored
+        } catch (SecurityException e) {
+            // not monitored
+        }
+    }
+
+    public ObjectName preRegister(MBeanServer server, ObjectName name) {
+        return name;
+    }
+
+    public void postRegister(Boolean registrationDone) {
+        if (Boolean.TRUE.equals(registrationDone))
+            registered = true;
+    }
+
+    public void preDeregister() {
+    }
+
+    public void postDeregister() {
+        registered = false;
+    }
+
+    public void recordUpdateCenterFetch(long nanos, long bytes) {
+        updateCenterFetch.record(nanos);
+        updateCenterBytes.addAndGet(bytes);
+    }
+
+    public void recordUpdateCenterParse(long nanos) {
+        updateCenterParse.record(nanos);
+    }
+
+    public void recordWarningEvaluation(long nanos) {
+        warningEvaluation.record(nanos);
+    }
+
+    public void recordStatsFetch(long nanos, long bytes) {
+        statsFetch.record(nanos);
+        statsBytes.addAndGet(bytes);
+    }
+
+    public void recordRender(long nanos) {
+        render.record(nanos);
+    }
+
+    /**
+     * Counts a failed download, by exception type and, for HTTP errors, status code.
+     */
+    public void recordError(Throwable t) {
+        String key = t.getClass().getSimpleName();
+        if (t instanceof PluginHttpException)
+            key += " " + ((PluginHttpException) t).getStatusCode();
+        AtomicLong counter = errors.get(key);
+        if (counter == null) {
+            AtomicLong created = new AtomicLong();
+            counter = errors.putIfAbsent(key, created);
+            if (counter == null)
+                counter = created;
+        }
+        counter.incrementAndGet();
+    }
+
+    public void recordPlaceholder() {
+        placeholders.incrementAndGet();
+    }
+
+    public void recordRenderCache(boolean hit) {
+        (hit ? renderCacheHits : renderCacheMisses).incrementAndGet();
+    }
+
+    public void recordUpdateCenterCache(boolean hit) {
+        (hit ? updateCenterCacheHits : updateCenterCacheMisses).incrementAndGet();
+    }
+
+    public void recordStatsCache(boolean hit) {
+        (hit ? statsCacheHits : statsCacheMisses).incrementAndGet();
+    }
+
+    public LatencyHistogram getUpdateCenterFetch() {
+        return updateCenterFetch;
+    }
+
+    public long getUpdateCenterBytes() {
+        return updateCenterBytes.get();
+    }
+
+    public LatencyHistogram getUpdateCenterParse() {
+        return updateCenterParse;
+    }
+
+    public LatencyHistogram getWarningEvaluation() {
+        return warningEvaluation;
+    }
+
+    public LatencyHistogram getStatsFetch() {
+        return statsFetch;
+    }
+
+    public long getStatsBytes() {
+        return statsBytes.get();
+    }
+
+    public LatencyHistogram getRender() {
+        return render;
+    }
+
+    public long getSnapshotAgeMillis() {
+        UpdateCenterSnapshot snapshot = UpdateCenterCache.getInstance().peek();
+        return snapshot != null ? System.currentTimeMillis() - snapshot.getTimestamp() : -1;
+    }
+
+    public Map<String, Long> getErrors() {
+        Map<String, Long> result = new TreeMap<String, Long>();
+        for (Map.Entry<String, AtomicLong> e : errors.entrySet())
+            result.put(e.getKey(), e.getValue().get());
+        return result;
+    }
+
+    public long getPlaceholders() {
+        return placeholders.get();
+    }
+
+    public long getRenderCacheHits() {
+        return renderCacheHits.get();
+    }
+
+    public long getRenderCacheMisses() {
+        return renderCacheMisses.get();
+    }
+
+    public double getRenderCacheHitRatio() {
+        return ratio(renderCacheHits, renderCacheMisses);
+    }
+
+    public long getUpdateCenterCacheHits() {
+        return updateCenterCacheHits.get();
+    }
+
+    public long getUpdateCenterCacheMisses() {
+        return updateCenterCacheMisses.get();
+    }
+
+    public double getUpdateCenterCacheHitRatio() {
+        return ratio(updateCenterCacheHits, updateCenterCacheMisses);
+    }
+
+    public long getStatsCacheHits() {
+        return statsCacheHits.get();
+    }
+
+    public long getStatsCacheMisses() {
+        return statsCacheMisses.get();
+    }
+
+    public double getStatsCacheHitRatio() {
+        return ratio(statsCacheHits, statsCacheMisses);
+    }
+
+    public void reset() {
+        updateCenterFetch.reset();
+        updateCenterBytes.set(0);
+        updateCenterParse.reset();
+        warningEvaluation.reset();
+        statsFetch.reset();
+        statsBytes.set(0);
+        render.reset();
+        errors.clear();
+        placeholders.set(0);
+        renderCacheHits.set(0);
+        renderCacheMisses.set(0);
+        updateCenterCacheHits.set(0);
+        updateCenterCacheMisses.set(0);
+        statsCacheHits.set(0);
+        statsCacheMisses.set(0);
+    }
+
+    private static double ratio(AtomicLong hits, AtomicLong misses) {
+        long h = hits.get();
+        long total = h + misses.get();
+        return total == 0 ? 0 : h / (double) total;
+    }
+}
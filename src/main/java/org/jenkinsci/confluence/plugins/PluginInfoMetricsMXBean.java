@@ -0,0 +1,86 @@
+package org.jenkinsci.confluence.plugins;
+
+import java.util.Map;
+
+/**
+ * Management interface of {@link PluginInfoMetrics}, registered as
+ * {@value PluginInfoMetrics#OBJECT_NAME}.
+ *
+ * <p>
+ * Latencies are exposed as composite attributes with {@code count}, {@code meanMillis},
+ * {@code maxMillis}, {@code p50Millis}, {@code p99Millis} and {@code p999Millis}.
+ */
+public interface PluginInfoMetricsMXBean {
+    /**
+     * Requesting update-center.json, until the response headers arrive. The body is parsed
+     * while it is downloaded, so reading it counts toward {@link #getUpdateCenterParse()}.
+     */
+    LatencyHistogram getUpdateCenterFetch();
+
+    long getUpdateCenterBytes();
+
+    /**
+     * Reading and parsing the body of update-center.json into a snapshot, including building
+     * its indexes.
+     */
+    LatencyHistogram getUpdateCenterParse();
+
+    /**
+     * Matching the security warnings against the distributed plugin versions, part of
+     * {@link #getUpdateCenterParse()}.
+     */
+    LatencyHistogram getWarningEvaluation();
+
+    /**
+     * Downloading the installation statistics of one plugin.
+     */
+    LatencyHistogram getStatsFetch();
+
+    long getStatsBytes();
+
+    /**
+     * Executing a macro, whether or not the output was cached.
+     */
+    LatencyHistogram getRender();
+
+    /**
+     * Renders that returned a placeholder because the update center was still loading.
+     */
+    long getPlaceholders();
+
+    /**
+     * @return the age of the update center snapshot being served, or -1 if none is loaded
+     */
+    long getSnapshotAgeMillis();
+
+    /**
+     * @return failed downloads by exception type, HTTP errors by status code
+     */
+    Map<String, Long> getErrors();
+
+    long getRenderCacheHits();
+
+    long getRenderCacheMisses();
+
+    double getRenderCacheHitRatio();
+
+    /**
+     * Requests served without waiting for a download, fresh or stale.
+     */
+    long getUpdateCenterCacheHits();
+
+    long getUpdateCenterCacheMisses();
+
+    double getUpdateCenterCacheHitRatio();
+
+    long getStatsCacheHits();
+
+    long getStatsCacheMisses();
+
+    double getStatsCacheHitRatio();
+
+    /**
+     * Zeroes all counters and histograms.
+     */
+    void reset();
+}
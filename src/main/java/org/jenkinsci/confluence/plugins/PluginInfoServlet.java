@@ -0,0 +1,92 @@
+package org.jenkinsci.confluence.plugins;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.regex.Pattern;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.atlassian.confluence.util.http.HttpRetrievalService;
+import com.atlassian.renderer.RenderContext;
+import com.atlassian.renderer.v2.SubRenderer;
+
+/**
+ * Serves the info box of {@link JenkinsPluginInfoMacro} as an HTML fragment, for the
+ * placeholders the macro renders while the update center is loading.
+ *
+ * <p>
+ * {@code GET /plugins/servlet/jenkins-plugin-info?pluginId=...[&adopt=true]}
+ * answers right away if the update center is loaded. Otherwise it waits at most {@link #WAIT}
+ * for the load already in progress, then answers 503 with {@code Retry-After} and the
+ * placeholder asks again; the waiting is left to the browser, not to request threads.
+ *
+ * <p>
+ * The request is not authenticated, so plugin ids other than those the update site could
+ * publish are answered with 400 rather than rendered, and pages up for adoption get the
+ * default message.
+ */
+public class PluginInfoServlet extends HttpServlet {
+    /**
+     * How long a request waits for the update center, in milliseconds. Not waiting by default,
+     * and never longer than {@link JenkinsPluginInfoMacro#RENDER_BUDGET}.
+     */
+    public static final long WAIT = Math.min(Long.getLong(PluginInfoServlet.class.getName() + ".wait", 0L),
+            JenkinsPluginInfoMacro.RENDER_BUDGET);
+
+    /**
+     * Plugin ids that carry no wiki markup.
+     */
+    private static final Pattern PLUGIN_ID = Pattern.compile("[A-Za-z0-9._-]+");
+
+    private final JenkinsPluginInfoMacro macro;
+
+    public PluginInfoServlet() {
+        this(new JenkinsPluginInfoMacro());
+    }
+
+    PluginInfoServlet(JenkinsPluginInfoMacro macro) {
+        this.macro = macro;
+    }
+
+    /**
+     * Setter method for automatic injection of the {@link HttpRetrievalService}.
+     */
+    public void setHttpRetrievalService(HttpRetrievalService httpRetrievalService) {
+        macro.setHttpRetrievalService(httpRetrievalService);
+    }
+
+    public void setSubRenderer(SubRenderer subRenderer) {
+        macro.setSubRenderer(subRenderer);
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        String pluginId = req.getParameter("pluginId");
+        if (pluginId == null || pluginId.length() == 0) {
+            resp.sendError(HttpServletResponse.SC_BAD_REQUEST, "No plugin specified.");
+            return;
+        }
+        if (!PLUGIN_ID.matcher(pluginId).matches()) {
+            resp.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid plugin id.");
+            return;
+        }
+        boolean adopt = "true".equals(req.getParameter("adopt"));
+
+        // rendered without a page, so it must not replace page renders in the cache; this also
+        // keeps requests for made-up ids from filling it
+        String rendered = macro.render(pluginId, adopt, null, WAIT, new RenderContext(), false);
+        resp.setHeader("Cache-Control", "no-cache");
+        if (rendered == null) {
+            resp.setHeader("Retry-After", "5");
+            resp.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "The update center is still loading.");
+            return;
+        }
+        resp.setContentType("text/html; charset=UTF-8");
+        PrintWriter out = resp.getWriter();
+        out.write(rendered);
+        out.flush();
+    }
+}
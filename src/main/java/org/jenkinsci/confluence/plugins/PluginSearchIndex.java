@@ -0,0 +1,219 @@
+package org.jenkinsci.confluence.plugins;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Finds plugins of one update center snapshot by the beginning of their id, title or a
+ * word of the title, and by ids that are spelled similarly.
+ *
+ * <p>
+ * Prefix lookups use a sorted array of lower-cased keys, so they cost a binary search
+ * plus the matches. Similar ids are found through the trigrams they share with the query,
+ * scored by their Dice coefficient; the posting lists of the trigrams are kept as
+ * {@code int[]} positions into the {@link PluginIndex}.
+ */
+public final class PluginSearchIndex {
+    /**
+     * Minimum similarity of a suggested id, from 0 (anything) to 1 (identical).
+     */
+    static final double MIN_SIMILARITY = 0.4;
+
+    private static final int[] NO_PLUGINS = new int[0];
+
+    private final PluginIndex plugins;
+
+    /**
+     * Lower-cased ids, titles and title words, sorted.
+     */
+    private final String[] keys;
+
+    /**
+     * The plugin each key belongs to.
+     */
+    private final int[] keyPlugins;
+
+    private final Map<String, int[]> trigrams;
+
+    /**
+     * Number of distinct trigrams of each plugin id.
+     */
+    private final int[] trigramCounts;
+
+    PluginSearchIndex(PluginIndex plugins) {
+        this.plugins = plugins;
+        int n = plugins.size();
+
+        List<Key> entries = new ArrayList<Key>(n * 3);
+        for (int i = 0; i < n; i++) {
+            String id = plugins.getId(i).toLowerCase(Locale.ENGLISH);
+            entries.add(new Key(id, i));
+            String title = plugins.getTitle(i);
+            if (title != null) {
+                title = title.toLowerCase(Locale.ENGLISH);
+                if (!title.equals(id))
+                    entries.add(new Key(title, i));
+                String[] words = title.split("[^\\p{L}\\p{N}]+");
+                for (int w = 1; w < words.length; w++) {
+                    if (words[w].length() > 0)
+                        entries.add(new Key(words[w], i));
+                }
+            }
+        }
+        Collections.sort(entries);
+        keys = new String[entries.size()];
+        keyPlugins = new int[entries.size()];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = entries.get(i).key;
+            keyPlugins[i] = entries.get(i).plugin;
+        }
+
+        Map<String, List<Integer>> postings = new HashMap<String, List<Integer>>();
+        trigramCounts = new int[n];
+        for (int i = 0; i < n; i++) {
+            String[] grams = trigramsOf(plugins.getId(i));
+            trigramCounts[i] = grams.length;
+            for (String gram : grams) {
+                List<Integer> list = postings.get(gram);
+                if (list == null) {
+                    list = new ArrayList<Integer>(4);
+                    postings.put(gram, list);
+                }
+                list.add(i);
+            }
+        }
+        trigrams = new HashMap<String, int[]>(postings.size() * 4 / 3 + 1);
+        for (Map.Entry<String, List<Integer>> e : postings.entrySet()) {
+            List<Integer> list = e.getValue();
+            int[] array = new int[list.size()];
+            for (int i = 0; i < array.length; i++)
+                array[i] = list.get(i);
+            trigrams.put(e.getKey(), array);
+        }
+    }
+
+    /**
+     * @return positions in the {@link PluginIndex} of plugins whose id, title or a title
+     *         word starts with the query, ids first, then plugins with a similar id
+     */
+    public List<Integer> search(String query, int limit) {
+        String q = query.trim().toLowerCase(Locale.ENGLISH);
+        if (q.length() == 0 || limit <= 0)
+            return Collections.emptyList();
+        List<Integer> result = new ArrayList<Integer>(limit);
+
+        int from = lowerBound(q);
+        int to = from;
+        while (to < keys.length && keys[to].startsWith(q))
+            to++;
+        // exact id first, then ids starting with the query, then the other keys
+        int exact = plugins.indexOf(query.trim());
+        if (exact >= 0)
+            result.add(exact);
+        for (int pass = 0; pass < 2 && result.size() < limit; pass++) {
+            for (int k = from; k < to && result.size() < limit; k++) {
+                int plugin = keyPlugins[k];
+                boolean idMatch = plugins.getId(plugin).toLowerCase(Locale.ENGLISH).startsWith(q);
+                if (idMatch == (pass == 0) && !result.contains(plugin))
+                    result.add(plugin);
+            }
+        }
+
+        if (result.size() < limit) {
+            for (int plugin : similar(q, limit))
+                if (result.size() < limit && !result.contains(plugin))
+                    result.add(plugin);
+        }
+        return result;
+    }
+
+    /**
+     * @return positions of up to {@code limit} plugins whose id is spelled similarly to the
+     *         given one, most similar first, not including the id itself
+     */
+    public List<Integer> suggest(String pluginId, int limit) {
+        List<Integer> similar = similar(pluginId.toLowerCase(Locale.ENGLISH), limit + 1);
+        int self = plugins.indexOf(pluginId);
+        similar.remove(Integer.valueOf(self));
+        return similar.size() > limit ? similar.subList(0, limit) : similar;
+    }
+
+    private List<Integer> similar(String q, int limit) {
+        String[] grams = trigramsOf(q);
+        if (grams.length == 0)
+            return new ArrayList<Integer>();
+        int[] shared = new int[trigramCounts.length];
+        int[] touched = new int[trigramCounts.length];
+        int touchedCount = 0;
+        for (String gram : grams) {
+            int[] posting = trigrams.get(gram);
+            for (int plugin : posting != null ? posting : NO_PLUGINS) {
+                if (shared[plugin]++ == 0)
+                    touched[touchedCount++] = plugin;
+            }
+        }
+
+        final double[] scores = new double[trigramCounts.length];
+        List<Integer> result = new ArrayList<Integer>();
+        for (int t = 0; t < touchedCount; t++) {
+            int plugin = touched[t];
+            scores[plugin] = 2.0 * shared[plugin] / (grams.length + trigramCounts[plugin]);
+            if (scores[plugin] >= MIN_SIMILARITY)
+                result.add(plugin);
+        }
+        Collections.sort(result, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                int c = Double.compare(scores[b], scores[a]);
+                return c != 0 ? c : plugins.getId(a).compareTo(plugins.getId(b));
+            }
+        });
+        return result.size() > limit ? new ArrayList<Integer>(result.subList(0, limit)) : result;
+    }
+
+    private int lowerBound(String q) {
+        int lo = 0;
+        int hi = keys.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (keys[mid].compareTo(q) < 0)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo;
+    }
+
+    private static final class Key implements Comparable<Key> {
+        final String key;
+
+        final int plugin;
+
+        Key(String key, int plugin) {
+            this.key = key;
+            this.plugin = plugin;
+        }
+
+        public int compareTo(Key o) {
+            return key.compareTo(o.key);
+        }
+    }
+
+    /**
+     * @return the distinct trigrams of the lower-cased id, padded so that its start and end
+     *         count too
+     */
+    static String[] trigramsOf(String id) {
+        String padded = "^" + id.toLowerCase(Locale.ENGLISH) + "$";
+        Set<String> grams = new LinkedHashSet<String>(padded.length() * 4 / 3 + 1);
+        for (int i = 0; i + 3 <= padded.length(); i++)
+            grams.add(padded.substring(i, i + 3));
+        return grams.toArray(new String[grams.size()]);
+    }
+}
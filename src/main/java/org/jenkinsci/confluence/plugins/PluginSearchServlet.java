@@ -0,0 +1,109 @@
+package org.jenkinsci.confluence.plugins;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.jenkinsci.confluence.plugins.exception.PluginHttpException;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.ParseException;
+
+import com.atlassian.confluence.util.http.HttpRetrievalService;
+
+/**
+ * Looks up plugins for autocompletion of the {@code pluginId} macro parameter.
+ *
+ * <p>
+ * {@code GET /plugins/servlet/jenkins-plugin-search?q=...[&limit=...]} answers with a JSON
+ * array of {@code {"id", "title", "version"}} objects from the {@link PluginSearchIndex} of
+ * the current snapshot, or 503 while the update center is still loading. Like
+ * {@link PluginInfoServlet} it waits at most {@link PluginInfoServlet#WAIT} for the load, so
+ * unauthenticated requests do not hold threads.
+ */
+public class PluginSearchServlet extends HttpServlet {
+    static final int DEFAULT_LIMIT = 10;
+
+    static final int MAX_LIMIT = 50;
+
+    /**
+     * Longer queries are answered with 400; no plugin id comes close.
+     */
+    static final int MAX_QUERY_LENGTH = 100;
+
+    private final JenkinsRetriever jenkinsRetriever;
+
+    private HttpRetrievalService httpRetrievalService;
+
+    public PluginSearchServlet() {
+        this(new JenkinsRetriever());
+    }
+
+    PluginSearchServlet(JenkinsRetriever jenkinsRetriever) {
+        this.jenkinsRetriever = jenkinsRetriever;
+    }
+
+    /**
+     * Setter method for automatic injection of the {@link HttpRetrievalService}.
+     */
+    public void setHttpRetrievalService(HttpRetrievalService httpRetrievalService) {
+        this.httpRetrievalService = httpRetrievalService;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        String query = req.getParameter("q");
+        if (query == null) {
+            resp.sendError(HttpServletResponse.SC_BAD_REQUEST, "No query specified.");
+            return;
+        }
+        if (query.length() > MAX_QUERY_LENGTH) {
+            resp.sendError(HttpServletResponse.SC_BAD_REQUEST, "Query too long.");
+            return;
+        }
+        int limit = DEFAULT_LIMIT;
+        try {
+            if (req.getParameter("limit") != null)
+                limit = Math.max(0, Math.min(MAX_LIMIT, Integer.parseInt(req.getParameter("limit"))));
+        } catch (NumberFormatException e) {
+            resp.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid limit.");
+            return;
+        }
+
+        UpdateCenterSnapshot updateCenter;
+        try {
+            updateCenter = jenkinsRetriever.getUpdateCenter(httpRetrievalService, PluginInfoServlet.WAIT);
+        } catch (IOException e) {
+            updateCenter = null;
+        } catch (PluginHttpException e) {
+            updateCenter = null;
+        } catch (ParseException e) {
+            updateCenter = null;
+        }
+        if (updateCenter == null) {
+            resp.setHeader("Retry-After", "5");
+            resp.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "The update center is not available.");
+            return;
+        }
+
+        PluginIndex plugins = updateCenter.getPlugins();
+        JSONArray result = new JSONArray();
+        for (int plugin : updateCenter.getSearchIndex().search(query, limit)) {
+            JSONObject o = new JSONObject();
+            o.put("id", plugins.getId(plugin));
+            o.put("title", plugins.getTitle(plugin));
+            o.put("version", plugins.getVersion(plugin));
+            result.add(o);
+        }
+        resp.setContentType("application/json; charset=UTF-8");
+        resp.setHeader("Cache-Control", "max-age=60");
+        PrintWriter out = resp.getWriter();
+        out.write(result.toJSONString());
+        out.flush();
+    }
+}
@@ -0,0 +1,249 @@
+package org.jenkinsci.confluence.plugins;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.atlassian.confluence.renderer.PageContext;
+import com.atlassian.renderer.RenderContext;
+
+/**
+ * Process-wide cache of macro output that has already been through the {@code SubRenderer}.
+ *
+ * <p>
+ * Entries are only valid for the update center snapshot they were rendered from, identified
+ * by {@link UpdateCenterSnapshot#getGeneration()}. As soon as a newer generation is seen,
+ * the entries depending on plugins in its {@link ChangeSet} are dropped; everything is
+ * dropped if the changes are unknown, or relative to a generation this cache has not seen.
+ * Within a generation the least recently used entries are evicted once either the number of
+ * entries or their total size in characters exceeds its limit.
+ *
+ * <p>
+ * Reads of the current generation take no lock, so that renders do not queue up behind each
+ * other: each hit only stamps its entry with a tick of a shared clock. Writes, evictions and
+ * moving to a new generation are serialized. Recency is therefore approximate, and eviction
+ * removes a batch of the entries with the oldest stamps at once, to make up for having to
+ * look for them.
+ */
+public class RenderCache {
+    public static final int MAX_ENTRIES = Integer.getInteger(RenderCache.class.getName() + ".maxEntries", 2000);
+
+    /**
+     * Upper bound of the summed length of all cached keys and output, in characters.
+     */
+    public static final long MAX_WEIGHT = Long.getLong(RenderCache.class.getName() + ".maxWeight",
+            4 * 1024 * 1024L);
+
+    private static final RenderCache INSTANCE = new RenderCache(MAX_ENTRIES, MAX_WEIGHT);
+
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+    /**
+     * Ticks on every access, to order entries by when they were last used.
+     */
+    private final AtomicLong clock = new AtomicLong();
+
+    private static final class Entry {
+        final String output;
+
+        /**
+         * The plugins the output was rendered from, or null if unknown.
+         */
+        final Collection<String> pluginIds;
+
+        volatile long lastAccess;
+
+        Entry(String output, Collection<String> pluginIds, long lastAccess) {
+            this.output = output;
+            this.pluginIds = pluginIds;
+            this.lastAccess = lastAccess;
+        }
+    }
+
+    private final int maxEntries;
+
+    private final long maxWeight;
+
+    private volatile long generation = Long.MIN_VALUE;
+
+    /**
+     * Only changed while holding the lock of this cache.
+     */
+    private long weight;
+
+    RenderCache(int maxEntries, long maxWeight) {
+        this.maxEntries = maxEntries;
+        this.maxWeight = maxWeight;
+    }
+
+    public static RenderCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Builds the key for the given inputs of {@link JenkinsPluginInfoMacro}.
+     *
+     * @param adoptMessage the {@code adopt-message} parameter, or null if the page is not
+     *            labelled for adoption
+     */
+    public static String key(RenderContext renderContext, String pluginId, boolean adopt, String adoptMessage) {
+        StringBuilder key = new StringBuilder(pluginId);
+        if (adopt) {
+            key.append('\u0000');
+            if (adoptMessage != null)
+                key.append(adoptMessage);
+        }
+        return key(renderContext, key.toString());
+    }
+
+    /**
+     * Qualifies the key of a macro's inputs with what the rendered output depends on besides
+     * them: the output type, and the space that relative links resolve against.
+     */
+    public static String key(RenderContext renderContext, String macroKey) {
+        String outputType = renderContext != null ? renderContext.getOutputType() : null;
+        String spaceKey = renderContext instanceof PageContext ? ((PageContext) renderContext).getSpaceKey() : null;
+        StringBuilder key = new StringBuilder(macroKey.length() + 32).append(macroKey).append('\u0003');
+        if (outputType != null)
+            key.append(outputType);
+        key.append('\u0003');
+        if (spaceKey != null)
+            key.append(spaceKey);
+        return key.toString();
+    }
+
+    /**
+     * @return the cached output rendered from the given snapshot, or null
+     */
+    public String get(UpdateCenterSnapshot snapshot, String key) {
+        return get(snapshot.getGeneration(), snapshot.getChanges(), key);
+    }
+
+    /**
+     * @return the cached output rendered from the given snapshot generation, or null
+     */
+    public String get(long generation, String key) {
+        return get(generation, null, key);
+    }
+
+    /**
+     * @param pluginIds the plugins the output shows, so that it is only evicted when one of
+     *            them changes
+     */
+    public synchronized void put(UpdateCenterSnapshot snapshot, String key, Collection<String> pluginIds,
+            String output) {
+        put(snapshot.getGeneration(), snapshot.getChanges(), key, pluginIds, output);
+    }
+
+    /**
+     * Caches output whose dependencies are unknown. It is dropped on any change.
+     */
+    public synchronized void put(long generation, String key, String output) {
+        put(generation, null, key, null, output);
+    }
+
+    private String get(long generation, ChangeSet changes, String key) {
+        boolean current = generation == this.generation;
+        if (!current) {
+            synchronized (this) {
+                current = advance(generation, changes);
+            }
+        }
+        Entry entry = current ? entries.get(key) : null;
+        if (entry != null)
+            entry.lastAccess = clock.incrementAndGet();
+        PluginInfoMetrics.getInstance().recordRenderCache(entry != null);
+        return entry != null ? entry.output : null;
+    }
+
+    private void put(long generation, ChangeSet changes, String key, Collection<String> pluginIds, String output) {
+        if (!advance(generation, changes))
+            return; // rendered from an outdated snapshot
+        long w = weigh(key, output);
+        if (w > maxWeight)
+            return;
+        Entry old = entries.put(key, new Entry(output, pluginIds, clock.incrementAndGet()));
+        if (old != null)
+            weight -= weigh(key, old.output);
+        weight += w;
+        if (entries.size() > maxEntries || weight > maxWeight)
+            evictLeastRecentlyUsed();
+    }
+
+    /**
+     * Removes the entries used longest ago until both limits are met with some room to spare,
+     * so that the entries do not have to be sorted again on every put.
+     */
+    private void evictLeastRecentlyUsed() {
+        int targetEntries = maxEntries - maxEntries / 16;
+        long targetWeight = maxWeight - maxWeight / 16;
+        List<Map.Entry<String, Entry>> byAge = new ArrayList<Map.Entry<String, Entry>>(entries.entrySet());
+        final long[] stamps = new long[byAge.size()];
+        Integer[] order = new Integer[stamps.length];
+        for (int i = 0; i < stamps.length; i++) {
+            // read once, as hits keep changing them
+            stamps[i] = byAge.get(i).getValue().lastAccess;
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                return stamps[a] < stamps[b] ? -1 : stamps[a] == stamps[b] ? 0 : 1;
+            }
+        });
+        for (int i = 0; i < order.length && (entries.size() > targetEntries || weight > targetWeight); i++) {
+            Map.Entry<String, Entry> eldest = byAge.get(order[i]);
+            if (entries.remove(eldest.getKey(), eldest.getValue()))
+                weight -= weigh(eldest.getKey(), eldest.getValue().output);
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        weight = 0;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Moves to a newer generation, dropping the entries affected by the changes. Only called
+     * while holding the lock of this cache.
+     *
+     * @param changes the changes leading to the given generation, or null if unknown
+     * @return false if the given generation is older than the one currently cached
+     */
+    private boolean advance(long generation, ChangeSet changes) {
+        if (generation > this.generation) {
+            if (changes != null && changes.getBaseGeneration() == this.generation) {
+                evict(changes);
+            } else {
+                clear();
+            }
+            this.generation = generation;
+        }
+        return generation == this.generation;
+    }
+
+    private void evict(ChangeSet changes) {
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Entry> e = it.next();
+            if (changes.affects(e.getValue().pluginIds)) {
+                weight -= weigh(e.getKey(), e.getValue().output);
+                it.remove();
+            }
+        }
+    }
+
+    private static long weigh(String key, String output) {
+        return key.length() + output.length();
+    }
+}
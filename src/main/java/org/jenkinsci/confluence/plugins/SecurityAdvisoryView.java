@@ -0,0 +1,160 @@
+package org.jenkinsci.confluence.plugins;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.jenkinsci.confluence.plugins.WarningIndex.PluginWarnings;
+
+/**
+ * The plugins of one update center snapshot that have security warnings, sorted into
+ * those whose distributed version is affected, those no longer distributed because of
+ * them, and those where only older versions are affected.
+ *
+ * <p>
+ * Built once per snapshot from the {@link WarningIndex}, which already decided for every
+ * warning whether it applies to the distributed version. The wiki markup of the report is
+ * built on first use and then kept for the life of the snapshot.
+ */
+public final class SecurityAdvisoryView {
+    private static final String AFFECTED_HEADER = "h4. Plugins with warnings for the current version\n"
+            + "|| Plugin || Version || Security Warnings ||\n";
+
+    private static final String SUSPENDED_HEADER = "h4. Plugins suspended from distribution\n"
+            + "|| Plugin || Security Warnings ||\n";
+
+    private static final String OLDER_HEADER = "h4. Plugins with warnings for older versions only\n"
+            + "|| Plugin || Version || Security Warnings ||\n";
+
+    private static final String NONE = "None.\n";
+
+    private final PluginIndex plugins;
+
+    private final WarningIndex warnings;
+
+    private final List<String> affected;
+
+    private final List<String> suspended;
+
+    private final List<String> olderOnly;
+
+    private volatile String markup;
+
+    SecurityAdvisoryView(PluginIndex plugins, WarningIndex warnings) {
+        this.plugins = plugins;
+        this.warnings = warnings;
+        List<String> affected = new ArrayList<String>();
+        List<String> suspended = new ArrayList<String>();
+        List<String> olderOnly = new ArrayList<String>();
+        for (String pluginId : warnings.getPluginIds()) {
+            PluginWarnings w = warnings.get(pluginId);
+            if (w.getCurrent().isEmpty())
+                olderOnly.add(pluginId);
+            else if (plugins.contains(pluginId))
+                affected.add(pluginId);
+            else
+                suspended.add(pluginId);
+        }
+        Collections.sort(affected);
+        Collections.sort(suspended);
+        Collections.sort(olderOnly);
+        this.affected = Collections.unmodifiableList(affected);
+        this.suspended = Collections.unmodifiableList(suspended);
+        this.olderOnly = Collections.unmodifiableList(olderOnly);
+    }
+
+    /**
+     * @return ids of distributed plugins whose current version has warnings
+     */
+    public List<String> getAffected() {
+        return affected;
+    }
+
+    /**
+     * @return ids of plugins with warnings that are not in the update center
+     */
+    public List<String> getSuspended() {
+        return suspended;
+    }
+
+    /**
+     * @return ids of plugins with warnings only for versions older than the distributed one
+     */
+    public List<String> getOlderOnly() {
+        return olderOnly;
+    }
+
+    /**
+     * @return the report as wiki markup
+     */
+    String getMarkup() {
+        String m = markup;
+        if (m == null) {
+            // built at most a few times if renders race, always to the same result
+            m = buildMarkup();
+            markup = m;
+        }
+        return m;
+    }
+
+    private String buildMarkup() {
+        int length = AFFECTED_HEADER.length() + SUSPENDED_HEADER.length() + OLDER_HEADER.length();
+        for (String pluginId : warnings.getPluginIds()) {
+            PluginWarnings w = warnings.get(pluginId);
+            length += 2 * pluginId.length() + 64 + AbstractUpdateCenterMacro.linksLength(w.getCurrent())
+                    + AbstractUpdateCenterMacro.linksLength(w.getOlder());
+        }
+        WikiWriter w = new WikiWriter(length);
+
+        w.append(AFFECTED_HEADER);
+        for (String pluginId : affected) {
+            int plugin = plugins.indexOf(pluginId);
+            String title = plugins.getTitle(plugin);
+            String version = plugins.getVersion(plugin);
+            w.append("| ").href(title != null ? title : pluginId, "https://plugins.jenkins.io/" + pluginId);
+            w.append(" | ", version != null ? version : "n/a", " | ");
+            links(w, warnings.get(pluginId).getCurrent());
+            w.append(" |\n");
+        }
+        if (affected.isEmpty())
+            w.append(NONE);
+
+        w.append('\n').append(SUSPENDED_HEADER);
+        for (String pluginId : suspended) {
+            w.append("| ").escape(pluginId).append(" | ");
+            links(w, warnings.get(pluginId).getCurrent());
+            w.append(" |\n");
+        }
+        if (suspended.isEmpty())
+            w.append(NONE);
+
+        w.append('\n').append(OLDER_HEADER);
+        for (String pluginId : olderOnly) {
+            int plugin = plugins.indexOf(pluginId);
+            String version = plugin >= 0 ? plugins.getVersion(plugin) : null;
+            w.append("| ");
+            if (plugin >= 0) {
+                String title = plugins.getTitle(plugin);
+                w.href(title != null ? title : pluginId, "https://plugins.jenkins.io/" + pluginId);
+            } else {
+                w.escape(pluginId);
+            }
+            w.append(" | ", version != null ? version : "n/a", " | ");
+            links(w, warnings.get(pluginId).getOlder());
+            w.append(" |\n");
+        }
+        if (olderOnly.isEmpty())
+            w.append(NONE);
+        return w.toString();
+    }
+
+    private static void links(WikiWriter w, List<SecurityWarning> warnings) {
+        boolean first = true;
+        for (SecurityWarning warning : warnings) {
+            if (!first)
+                w.br();
+            w.href(warning.getMessage(), warning.getUrl());
+            first = false;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package org.jenkinsci.confluence.plugins;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+/**
+ * One entry of the {@code warnings} array of update-center.json, concerning a plugin.
+ */
+public final class SecurityWarning {
+    private final String id;
+
+    private final String pluginId;
+
+    private final String message;
+
+    private final String url;
+
+    /**
+     * True if the warning does not list affected versions, i.e. applies to all of them.
+     */
+    private final boolean allVersions;
+
+    /**
+     * Matches the affected versions.
+     */
+    private final VersionMatcher versions;
+
+    public SecurityWarning(String id, String pluginId, String message, String url, boolean allVersions,
+            VersionMatcher versions) {
+        this.id = id;
+        this.pluginId = pluginId;
+        this.message = message;
+        this.url = url;
+        this.allVersions = allVersions;
+        this.versions = versions;
+    }
+
+    /**
+     * @return the warning, or null if it is not about a plugin
+     */
+    static SecurityWarning fromJSON(JSONObject warning) {
+        if (!"plugin".equals(warning.get("type"))) {
+            return null;
+        }
+        Object name = warning.get("name");
+        if (name == null) {
+            return null;
+        }
+        List<String> patterns = new ArrayList<String>();
+        JSONArray warningVersions = (JSONArray) warning.get("versions");
+        if (warningVersions != null) {
+            for (Object v : warningVersions) {
+                try {
+                    JSONObject versionEntry = (JSONObject) v;
+                    patterns.add(versionEntry.get("pattern").toString());
+                } catch (RuntimeException e) {
+                    // ignore -- not a usable version entry
+                }
+            }
+        }
+        boolean allVersions = warningVersions == null || warningVersions.isEmpty();
+        return new SecurityWarning(toString(warning.get("id")), name.toString(),
+                toString(warning.get("message")), toString(warning.get("url")), allVersions,
+                VersionMatcher.compile(patterns));
+    }
+
+    private static String toString(Object o) {
+        return o != null ? o.toString() : null;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getPluginId() {
+        return pluginId;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public boolean isRelevantForAnyVersion() {
+        return allVersions;
+    }
+
+    /**
+     * @return true if {@code pluginVersion} is listed as affected. Always false for
+     *         warnings relevant for any version, since they do not list versions.
+     */
+    public boolean isRelevantForSpecificVersion(String pluginVersion) {
+        return versions.matches(pluginVersion);
+    }
+
+    public VersionMatcher getVersions() {
+        return versions;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (!(o instanceof SecurityWarning))
+            return false;
+        SecurityWarning that = (SecurityWarning) o;
+        return eq(id, that.id) && pluginId.equals(that.pluginId) && eq(message, that.message)
+                && eq(url, that.url) && allVersions == that.allVersions && versions.getPatterns().equals(that.versions.getPatterns());
+    }
+
+    @Override
+    public int hashCode() {
+        return pluginId.hashCode() * 31 + (id != null ? id.hashCode() : 0);
+    }
+
+    private static boolean eq(Object a, Object b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    @Override
+    public String toString() {
+        return pluginId + ": " + (id != null ? id : message);
+    }
+}
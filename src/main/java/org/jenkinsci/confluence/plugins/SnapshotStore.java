@@ -0,0 +1,321 @@
+package org.jenkinsci.confluence.plugins;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import org.jenkinsci.confluence.plugins.WarningIndex.PluginWarnings;
+
+/**
+ * Keeps the last loaded {@link UpdateCenterSnapshot} on disk, so that after a restart the
+ * macros have data as soon as the plugin is enabled instead of waiting for the download.
+ *
+ * <p>
+ * Only the processed indexes are stored, not update-center.json. The file starts with a
+ * header (magic, {@linkplain #FORMAT_VERSION format version}, length and CRC-32 of the
+ * rest), followed by a table of all distinct strings and the plugins, their dependencies
+ * and the warnings as references into it. It is read with one plain read and decoded in
+ * place, and replaced atomically when written; it is not memory-mapped, as a mapping stays
+ * open until garbage collected and keeps the file from being replaced on Windows. Files
+ * that are from another format version, truncated or damaged are ignored.
+ */
+public final class SnapshotStore {
+    /**
+     * Where to store the snapshot; by default in the Confluence home directory.
+     */
+    public static final String FILE = System.getProperty(SnapshotStore.class.getName() + ".file");
+
+    static final int MAGIC = 0x4a504953; // "JPIS"
+
+    /**
+     * Increased whenever the layout changes; files of other versions are not read.
+     */
+    static final int FORMAT_VERSION = 2;
+
+    private static final int HEADER_LENGTH = 4 + 4 + 4 + 8;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final File file;
+
+    /**
+     * The generation last written or read, to skip writing the same data again.
+     */
+    private long savedGeneration = -1;
+
+    public SnapshotStore(File file) {
+        this.file = file;
+    }
+
+    /**
+     * @return the store configured with {@link #FILE}, or one in the given home directory
+     */
+    public static SnapshotStore inHome(File home) {
+        if (FILE != null)
+            return new SnapshotStore(new File(FILE));
+        return new SnapshotStore(new File(home, "jenkins-plugin-info" + File.separator + "update-center.snapshot"));
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return the stored snapshot, with the time and validators it was originally loaded
+     *         with, or null if there is no usable file
+     */
+    public synchronized UpdateCenterSnapshot load() {
+        if (!file.isFile())
+            return null;
+        try {
+            FileInputStream in = new FileInputStream(file);
+            try {
+                FileChannel channel = in.getChannel();
+                long size = channel.size();
+                if (size > Integer.MAX_VALUE)
+                    return null;
+                ByteBuffer buffer = ByteBuffer.allocate((int) size);
+                while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                    // until the whole file is in
+                }
+                buffer.flip();
+                UpdateCenterSnapshot snapshot = read(buffer);
+                if (snapshot != null)
+                    savedGeneration = snapshot.getGeneration();
+                return snapshot;
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Writes the snapshot unless it is the one last written or read.
+     *
+     * @return true if the file was written
+     */
+    public synchronized boolean save(UpdateCenterSnapshot snapshot) throws IOException {
+        if (snapshot == null || snapshot.getGeneration() == savedGeneration)
+            return false;
+        File directory = file.getAbsoluteFile().getParentFile();
+        if (!directory.isDirectory() && !directory.mkdirs())
+            throw new IOException("Cannot create " + directory);
+        File temp = new File(directory, file.getName() + ".tmp");
+        FileOutputStream out = new FileOutputStream(temp);
+        try {
+            out.write(write(snapshot));
+            out.getFD().sync();
+        } finally {
+            out.close();
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        savedGeneration = snapshot.getGeneration();
+        return true;
+    }
+
+    static byte[] write(UpdateCenterSnapshot snapshot) throws IOException {
+        Map<String, Integer> strings = new LinkedHashMap<String, Integer>();
+        ByteArrayOutputStream body = new ByteArrayOutputStream(64 * 1024);
+        DataOutputStream out = new DataOutputStream(body);
+
+        out.writeLong(snapshot.getTimestamp());
+        out.writeInt(ref(strings, snapshot.getEtag()));
+        out.writeInt(ref(strings, snapshot.getLastModified()));
+
+        PluginIndex plugins = snapshot.getPlugins();
+        out.writeInt(plugins.size());
+        for (int i = 0; i < plugins.size(); i++) {
+            out.writeInt(ref(strings, plugins.getId(i)));
+            out.writeInt(ref(strings, plugins.getTitle(i)));
+            out.writeInt(ref(strings, plugins.getVersion(i)));
+        }
+
+        // plugin nodes are numbered like the index, so only the targets need their ids
+        DependencyGraph dependencies = snapshot.getDependencies();
+        for (int i = 0; i < plugins.size(); i++) {
+            int n = dependencies.getDependencyCount(i);
+            out.writeInt(n);
+            for (int j = 0; j < n; j++) {
+                out.writeInt(ref(strings, dependencies.getId(dependencies.getDependency(i, j))));
+                out.writeBoolean(dependencies.isOptional(i, j));
+                out.writeInt(ref(strings, dependencies.getRequiredVersion(i, j)));
+            }
+        }
+
+        WarningIndex warnings = snapshot.getWarnings();
+        out.writeInt(warnings.getPluginIds().size());
+        for (String pluginId : warnings.getPluginIds()) {
+            PluginWarnings w = warnings.get(pluginId);
+            out.writeInt(ref(strings, pluginId));
+            writeWarnings(out, strings, w.getCurrent());
+            writeWarnings(out, strings, w.getOlder());
+        }
+        out.writeInt(warnings.getDiagnostics().size());
+        for (String diagnostic : warnings.getDiagnostics())
+            out.writeInt(ref(strings, diagnostic));
+        out.flush();
+
+        // the string table goes first, so that reading can resolve references right away
+        ByteArrayOutputStream payload = new ByteArrayOutputStream(body.size() + 32 * strings.size());
+        DataOutputStream p = new DataOutputStream(payload);
+        p.writeInt(strings.size());
+        for (String s : strings.keySet()) {
+            byte[] bytes = s.getBytes(UTF8);
+            p.writeInt(bytes.length);
+            p.write(bytes);
+        }
+        body.writeTo(p);
+        p.flush();
+
+        CRC32 crc = new CRC32();
+        crc.update(payload.toByteArray());
+        ByteArrayOutputStream file = new ByteArrayOutputStream(HEADER_LENGTH + payload.size());
+        DataOutputStream f = new DataOutputStream(file);
+        f.writeInt(MAGIC);
+        f.writeInt(FORMAT_VERSION);
+        f.writeInt(payload.size());
+        f.writeLong(crc.getValue());
+        payload.writeTo(f);
+        f.flush();
+        return file.toByteArray();
+    }
+
+    private static void writeWarnings(DataOutputStream out, Map<String, Integer> strings,
+            List<SecurityWarning> warnings) throws IOException {
+        out.writeInt(warnings.size());
+        for (SecurityWarning warning : warnings) {
+            out.writeInt(ref(strings, warning.getId()));
+            out.writeInt(ref(strings, warning.getMessage()));
+            out.writeInt(ref(strings, warning.getUrl()));
+            out.writeBoolean(warning.isRelevantForAnyVersion());
+            List<String> patterns = warning.getVersions().getPatterns();
+            out.writeInt(patterns.size());
+            for (String pattern : patterns)
+                out.writeInt(ref(strings, pattern));
+        }
+    }
+
+    /**
+     * @return the position of the string in the table, adding it if needed, or -1 for null
+     */
+    private static int ref(Map<String, Integer> strings, String s) {
+        if (s == null)
+            return -1;
+        Integer i = strings.get(s);
+        if (i == null) {
+            i = strings.size();
+            strings.put(s, i);
+        }
+        return i;
+    }
+
+    /**
+     * @param in a buffer backed by an array, which is checked and decoded without copying
+     * @return the snapshot, or null if the data is not in the current format or damaged
+     */
+    static UpdateCenterSnapshot read(ByteBuffer in) {
+        try {
+            if (in.remaining() < HEADER_LENGTH || in.getInt() != MAGIC || in.getInt() != FORMAT_VERSION)
+                return null;
+            int length = in.getInt();
+            long checksum = in.getLong();
+            if (length != in.remaining())
+                return null;
+            CRC32 crc = new CRC32();
+            crc.update(in.array(), in.arrayOffset() + in.position(), length);
+            if (crc.getValue() != checksum)
+                return null;
+            return readPayload(in.slice());
+        } catch (BufferUnderflowException e) {
+            return null;
+        } catch (IndexOutOfBoundsException e) {
+            return null;
+        }
+    }
+
+    private static UpdateCenterSnapshot readPayload(ByteBuffer in) {
+        String[] strings = new String[in.getInt()];
+        for (int i = 0; i < strings.length; i++) {
+            int length = in.getInt();
+            strings[i] = new String(in.array(), in.arrayOffset() + in.position(), length, UTF8);
+            in.position(in.position() + length);
+        }
+
+        long timestamp = in.getLong();
+        String etag = string(strings, in.getInt());
+        String lastModified = string(strings, in.getInt());
+
+        PluginIndex.Builder builder = new PluginIndex.Builder();
+        int pluginCount = in.getInt();
+        for (int i = 0; i < pluginCount; i++) {
+            builder.add(string(strings, in.getInt()), string(strings, in.getInt()), string(strings, in.getInt()));
+        }
+        PluginIndex plugins = builder.build();
+
+        DependencyGraph.Builder dependencies = new DependencyGraph.Builder(plugins);
+        for (int i = 0; i < pluginCount; i++) {
+            int n = in.getInt();
+            for (int j = 0; j < n; j++) {
+                String dependencyId = string(strings, in.getInt());
+                boolean optional = in.get() != 0;
+                dependencies.add(plugins.getId(i), dependencyId, optional, string(strings, in.getInt()));
+            }
+        }
+
+        Map<String, PluginWarnings> byPlugin = new HashMap<String, PluginWarnings>();
+        int warned = in.getInt();
+        for (int i = 0; i < warned; i++) {
+            String pluginId = string(strings, in.getInt());
+            List<SecurityWarning> current = readWarnings(in, strings, pluginId);
+            List<SecurityWarning> older = readWarnings(in, strings, pluginId);
+            byPlugin.put(pluginId, new PluginWarnings(current, older));
+        }
+        String[] diagnostics = new String[in.getInt()];
+        for (int i = 0; i < diagnostics.length; i++)
+            diagnostics[i] = string(strings, in.getInt());
+
+        return new UpdateCenterSnapshot(plugins, new WarningIndex(byPlugin, Arrays.asList(diagnostics)),
+                dependencies.build(), timestamp, etag, lastModified);
+    }
+
+    private static List<SecurityWarning> readWarnings(ByteBuffer in, String[] strings, String pluginId) {
+        int n = in.getInt();
+        List<SecurityWarning> warnings = new ArrayList<SecurityWarning>(n);
+        for (int i = 0; i < n; i++) {
+            String id = string(strings, in.getInt());
+            String message = string(strings, in.getInt());
+            String url = string(strings, in.getInt());
+            boolean allVersions = in.get() != 0;
+            List<String> patterns = new ArrayList<String>();
+            int patternCount = in.getInt();
+            for (int j = 0; j < patternCount; j++)
+                patterns.add(string(strings, in.getInt()));
+            warnings.add(new SecurityWarning(id, pluginId, message, url, allVersions,
+                    VersionMatcher.compile(patterns)));
+        }
+        return warnings;
+    }
+
+    private static String string(String[] strings, int ref) {
+        return ref < 0 ? null : strings[ref];
+    }
+}
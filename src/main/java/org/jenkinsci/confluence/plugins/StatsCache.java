@@ -0,0 +1,314 @@
+package org.jenkinsci.confluence.plugins;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+
+import org.jenkinsci.confluence.plugins.exception.PluginHttpException;
+import org.json.simple.parser.ParseException;
+
+/**
+ * Process-wide cache of plugin installation statistics from stats.jenkins.io.
+ *
+ * <p>
+ * Parsed statistics are kept for {@link #TTL}. Plugins the stats site does not know
+ * (404) are remembered for {@link #NEGATIVE_TTL} so that they do not cause a request on
+ * every view. Expired entries that are not worth refreshing are dropped by
+ * {@link #refreshHot(Loader)}, and before remembering another unknown plugin once there are
+ * {@link #MAX_ENTRIES}, so that requests for made-up ids cannot grow the cache without
+ * bound. Concurrent requests for the same plugin share one download, and
+ * {@link #prefetch(Collection, Loader)} loads many plugins at once on a small, bounded
+ * pool of worker threads.
+ */
+public class StatsCache {
+    public static final long TTL = Long.getLong(StatsCache.class.getName() + ".ttl", 6 * 60 * 60 * 1000L);
+
+    public static final long NEGATIVE_TTL = Long.getLong(StatsCache.class.getName() + ".negativeTtl",
+            60 * 60 * 1000L);
+
+    public static final int THREADS = Integer.getInteger(StatsCache.class.getName() + ".threads", 4);
+
+    /**
+     * How many plugins to remember before unknown ones are no longer added until expired
+     * entries are dropped.
+     */
+    public static final int MAX_ENTRIES = Integer.getInteger(StatsCache.class.getName() + ".maxEntries", 10000);
+
+    private static final StatsCache INSTANCE = new StatsCache(TTL, NEGATIVE_TTL, null);
+
+    /**
+     * Downloads the raw statistics of one plugin.
+     */
+    public interface Loader {
+        String load(String pluginId) throws IOException, PluginHttpException;
+    }
+
+    private static final class Entry {
+        /**
+         * The installation trend, or null if the plugin is unknown to the stats site.
+         */
+        final TimeSeries installations;
+
+        final long timestamp;
+
+        /**
+         * When the entry was last read, to tell which plugins are worth refreshing ahead of
+         * time.
+         */
+        volatile long lastAccess;
+
+        Entry(TimeSeries installations) {
+            this.installations = installations;
+            this.timestamp = System.currentTimeMillis();
+            this.lastAccess = timestamp;
+        }
+
+        boolean isFresh(long ttl, long negativeTtl) {
+            long age = System.currentTimeMillis() - timestamp;
+            return age <= (installations != null ? ttl : negativeTtl);
+        }
+    }
+
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+    private final ConcurrentMap<String, FutureTask<Entry>> inFlight = new ConcurrentHashMap<String, FutureTask<Entry>>();
+
+    private final long ttl;
+
+    private final long negativeTtl;
+
+    /**
+     * Runs prefetches and hot refreshes, or null to use {@link #ownExecutor}.
+     */
+    private final Executor executor;
+
+    /**
+     * Created on first use and shut down by {@link #shutdown()}, so that no thread outlives
+     * the plugin.
+     */
+    private ExecutorService ownExecutor;
+
+    /**
+     * @param executor runs prefetches and hot refreshes, or null for a pool of
+     *            {@link #THREADS} threads of its own
+     */
+    StatsCache(long ttl, long negativeTtl, Executor executor) {
+        this.ttl = ttl;
+        this.negativeTtl = negativeTtl;
+        this.executor = executor;
+    }
+
+    public static StatsCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * @return the installation trend, or null if the stats site has no data for this plugin
+     */
+    public TimeSeries get(String pluginId, Loader loader) throws IOException, PluginHttpException, ParseException {
+        Entry entry = entries.get(pluginId);
+        if (entry != null && entry.isFresh(ttl, negativeTtl)) {
+            PluginInfoMetrics.getInstance().recordStatsCache(true);
+            entry.lastAccess = System.currentTimeMillis();
+            return entry.installations;
+        }
+        PluginInfoMetrics.getInstance().recordStatsCache(false);
+        FutureTask<Entry> task = taskFor(pluginId, loader);
+        task.run(); // no-op if another thread is already running it
+        return await(task).installations;
+    }
+
+    /**
+     * Starts loading every plugin that is not cached yet, in the background.
+     */
+    public void prefetch(Collection<String> pluginIds, Loader loader) {
+        for (String pluginId : pluginIds) {
+            Entry entry = entries.get(pluginId);
+            if (entry == null || !entry.isFresh(ttl, negativeTtl)) {
+                executor().execute(taskFor(pluginId, loader));
+            }
+        }
+    }
+
+    /**
+     * Reloads, in the background, the statistics that were read within the last {@link #TTL}
+     * and are past half their lifetime, so that readers of popular plugins never have to
+     * wait for stats.jenkins.io.
+     *
+     * @return the number of reloads started
+     */
+    public int refreshHot(Loader loader) {
+        purgeExpired();
+        long now = System.currentTimeMillis();
+        int started = 0;
+        for (Map.Entry<String, Entry> e : entries.entrySet()) {
+            Entry entry = e.getValue();
+            if (entry.installations != null && now - entry.lastAccess <= ttl && now - entry.timestamp > ttl / 2) {
+                executor().execute(taskFor(e.getKey(), loader));
+                started++;
+            }
+        }
+        return started;
+    }
+
+    /**
+     * Drops the entries that would be loaded again on their next read anyway: unknown
+     * plugins past {@link #NEGATIVE_TTL}, and statistics past {@link #TTL} that nobody read
+     * within it.
+     */
+    void purgeExpired() {
+        long now = System.currentTimeMillis();
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Entry entry = it.next().getValue();
+            if (!entry.isFresh(ttl, negativeTtl) && (entry.installations == null || now - entry.lastAccess > ttl))
+                it.remove();
+        }
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    /**
+     * Loads all given plugins concurrently and waits for them.
+     *
+     * @return the installation trend of each plugin, in the given order. Plugins without
+     *         data or whose stats could not be loaded map to null.
+     */
+    public Map<String, TimeSeries> getAll(Collection<String> pluginIds, Loader loader) throws InterruptedIOException {
+        prefetch(pluginIds, loader);
+        Map<String, TimeSeries> result = new LinkedHashMap<String, TimeSeries>();
+        for (String pluginId : pluginIds) {
+            TimeSeries installations = null;
+            try {
+                installations = get(pluginId, loader);
+            } catch (InterruptedIOException e) {
+                throw e;
+            } catch (Exception e) {
+                // ignore -- reported as having no data
+            }
+            result.put(pluginId, installations);
+        }
+        return result;
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    private FutureTask<Entry> taskFor(String pluginId, Loader loader) {
+        FutureTask<Entry> task = inFlight.get(pluginId);
+        if (task != null) {
+            return task;
+        }
+        task = new LoadTask(pluginId, loader);
+        FutureTask<Entry> existing = inFlight.putIfAbsent(pluginId, task);
+        return existing != null ? existing : task;
+    }
+
+    /**
+     * Loads one plugin, caching the outcome unless it is an error other than 404.
+     */
+    private final class LoadTask extends FutureTask<Entry> {
+        private final String pluginId;
+
+        LoadTask(final String pluginId, final Loader loader) {
+            super(new Callable<Entry>() {
+                public Entry call() throws Exception {
+                    Entry entry;
+                    try {
+                        entry = new Entry(TimeSeries.parse(loader.load(pluginId)));
+                    } catch (PluginHttpException e) {
+                        PluginInfoMetrics.getInstance().recordError(e);
+                        if (e.getStatusCode() != 404) {
+                            throw e;
+                        }
+                        entry = new Entry(null);
+                    } catch (Exception e) {
+                        PluginInfoMetrics.getInstance().recordError(e);
+                        throw e;
+                    }
+                    if (entry.installations == null && entries.size() >= MAX_ENTRIES) {
+                        purgeExpired();
+                        if (entries.size() >= MAX_ENTRIES)
+                            return entry; // not remembered, asked for again on the next read
+                    }
+                    entries.put(pluginId, entry);
+                    return entry;
+                }
+            });
+            this.pluginId = pluginId;
+        }
+
+        @Override
+        protected void done() {
+            inFlight.remove(pluginId, this);
+        }
+    }
+
+    private static Entry await(FutureTask<Entry> task) throws IOException, PluginHttpException, ParseException {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for plugin statistics");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            if (cause instanceof PluginHttpException)
+                throw (PluginHttpException) cause;
+            if (cause instanceof ParseException)
+                throw (ParseException) cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+            throw new IOException(String.valueOf(cause));
+        }
+    }
+
+    private synchronized Executor executor() {
+        if (executor != null)
+            return executor;
+        if (ownExecutor == null)
+            ownExecutor = createExecutor(THREADS);
+        return ownExecutor;
+    }
+
+    /**
+     * Stops the threads this cache created for loading, if any. New ones are created if the
+     * cache is used again.
+     */
+    public synchronized void shutdown() {
+        if (ownExecutor != null) {
+            ownExecutor.shutdownNow();
+            ownExecutor = null;
+        }
+    }
+
+    private static ExecutorService createExecutor(int threads) {
+        return Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private int n;
+
+            public synchronized Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "jenkins-plugin-info stats prefetch #" + (++n));
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+}
@@ -0,0 +1,367 @@
+package org.jenkinsci.confluence.plugins;
+
+import java.io.IOException;
+
+import org.json.simple.parser.ContentHandler;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+/**
+ * Installation counts over time, as published by stats.jenkins.io.
+ *
+ * <p>
+ * Timestamps and counts are kept in two parallel primitive arrays sorted by time, so a
+ * series of a few hundred months costs a few kilobytes and lookups by time are binary
+ * searches. {@link #range(long, long)} returns a view sharing the arrays. Summary figures
+ * are computed once when a series is created.
+ */
+public final class TimeSeries {
+    public static final TimeSeries EMPTY = new TimeSeries(new long[0], new int[0], 0, 0);
+
+    private final long[] timestamps;
+
+    private final int[] counts;
+
+    /**
+     * The part of the arrays this series covers, {@code [from, to)}.
+     */
+    private final int from, to;
+
+    private final int min, max;
+
+    private final long peakTimestamp;
+
+    private TimeSeries(long[] timestamps, int[] counts, int from, int to) {
+        this.timestamps = timestamps;
+        this.counts = counts;
+        this.from = from;
+        this.to = to;
+
+        int min = 0, max = 0;
+        long peakTimestamp = 0;
+        for (int i = from; i < to; i++) {
+            int c = counts[i];
+            if (i == from || c < min)
+                min = c;
+            if (i == from || c > max) {
+                max = c;
+                peakTimestamp = timestamps[i];
+            }
+        }
+        this.min = min;
+        this.max = max;
+        this.peakTimestamp = peakTimestamp;
+    }
+
+    /**
+     * Creates a series from unsorted data points. The arrays are not copied.
+     */
+    public static TimeSeries of(long[] timestamps, int[] counts) {
+        if (timestamps.length != counts.length)
+            throw new IllegalArgumentException("Lengths differ: " + timestamps.length + " != " + counts.length);
+        sort(timestamps, counts);
+        return new TimeSeries(timestamps, counts, 0, timestamps.length);
+    }
+
+    /**
+     * Parses a stats.jenkins.io document such as {@code {"installations":{"1243807200000":1740}}}
+     * without building intermediate maps.
+     */
+    public static TimeSeries parse(String json) throws ParseException {
+        Collector collector = new Collector();
+        new JSONParser().parse(json, collector);
+        return of(trim(collector.timestamps, collector.size), trim(collector.counts, collector.size));
+    }
+
+    public int size() {
+        return to - from;
+    }
+
+    public boolean isEmpty() {
+        return to == from;
+    }
+
+    public long getTimestamp(int i) {
+        return timestamps[from + check(i)];
+    }
+
+    public int getCount(int i) {
+        return counts[from + check(i)];
+    }
+
+    /**
+     * @return the position of the first data point at or after {@code timestamp},
+     *         {@link #size()} if there is none
+     */
+    public int indexAtOrAfter(long timestamp) {
+        return lowerBound(timestamp) - from;
+    }
+
+    /**
+     * @return the count in effect at {@code timestamp}, i.e. that of the latest data point
+     *         not after it, or 0 if the series starts later
+     */
+    public int countAt(long timestamp) {
+        int i = upperBound(timestamp) - 1;
+        return i >= from ? counts[i] : 0;
+    }
+
+    /**
+     * @return the data points with {@code start <= timestamp < end}
+     */
+    public TimeSeries range(long start, long end) {
+        int a = lowerBound(start);
+        int b = Math.max(a, lowerBound(end));
+        return new TimeSeries(timestamps, counts, a, b);
+    }
+
+    /**
+     * @return the most recent count, or 0 if the series is empty
+     */
+    public int getLatest() {
+        return isEmpty() ? 0 : counts[to - 1];
+    }
+
+    public int getMin() {
+        return min;
+    }
+
+    public int getMax() {
+        return max;
+    }
+
+    /**
+     * @return when {@link #getMax()} was first reached, or 0 if the series is empty
+     */
+    public long getPeakTimestamp() {
+        return peakTimestamp;
+    }
+
+    /**
+     * @return the change from the first to the most recent count
+     */
+    public int getGrowth() {
+        return isEmpty() ? 0 : counts[to - 1] - counts[from];
+    }
+
+    /**
+     * @return {@link #getGrowth()} relative to the first count, or 0 if that is not positive
+     */
+    public double getGrowthRate() {
+        if (isEmpty() || counts[from] <= 0)
+            return 0;
+        return (double) getGrowth() / counts[from];
+    }
+
+    /**
+     * Reduces the series to at most {@code points} data points for charting, using the
+     * Largest-Triangle-Three-Buckets algorithm. The first and last points are always kept.
+     */
+    public TimeSeries downsample(int points) {
+        int n = size();
+        if (points >= n)
+            return this;
+        if (points <= 2) {
+            if (points <= 0)
+                return EMPTY;
+            if (points == 1)
+                return new TimeSeries(new long[] { timestamps[to - 1] }, new int[] { counts[to - 1] }, 0, 1);
+            return new TimeSeries(new long[] { timestamps[from], timestamps[to - 1] },
+                    new int[] { counts[from], counts[to - 1] }, 0, 2);
+        }
+
+        long[] t = new long[points];
+        int[] c = new int[points];
+        int k = 0;
+        double every = (double) (n - 2) / (points - 2);
+        int a = 0;
+        t[k] = getTimestamp(0);
+        c[k++] = getCount(0);
+
+        for (int i = 0; i < points - 2; i++) {
+            // average of the next bucket, the third corner of the triangle
+            int avgStart = (int) Math.floor((i + 1) * every) + 1;
+            int avgEnd = Math.min((int) Math.floor((i + 2) * every) + 1, n);
+            double avgX = 0, avgY = 0;
+            for (int j = avgStart; j < avgEnd; j++) {
+                avgX += getTimestamp(j);
+                avgY += getCount(j);
+            }
+            int avgLength = avgEnd - avgStart;
+            avgX /= avgLength;
+            avgY /= avgLength;
+
+            // the point of this bucket forming the largest triangle with the previous pick
+            int rangeStart = (int) Math.floor(i * every) + 1;
+            int rangeEnd = (int) Math.floor((i + 1) * every) + 1;
+            double ax = getTimestamp(a), ay = getCount(a);
+            double maxArea = -1;
+            int next = rangeStart;
+            for (int j = rangeStart; j < rangeEnd; j++) {
+                double area = Math.abs((ax - avgX) * (getCount(j) - ay) - (ax - getTimestamp(j)) * (avgY - ay));
+                if (area > maxArea) {
+                    maxArea = area;
+                    next = j;
+                }
+            }
+            t[k] = getTimestamp(next);
+            c[k++] = getCount(next);
+            a = next;
+        }
+
+        t[k] = getTimestamp(n - 1);
+        c[k++] = getCount(n - 1);
+        return new TimeSeries(t, c, 0, k);
+    }
+
+    private int check(int i) {
+        if (i < 0 || i >= size())
+            throw new IndexOutOfBoundsException(i + " not in [0," + size() + ")");
+        return i;
+    }
+
+    /**
+     * @return the first array position in {@code [from, to)} with a timestamp {@code >= key}
+     */
+    private int lowerBound(long key) {
+        int lo = from, hi = to;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (timestamps[mid] < key)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo;
+    }
+
+    /**
+     * @return the first array position in {@code [from, to)} with a timestamp {@code > key}
+     */
+    private int upperBound(long key) {
+        int lo = from, hi = to;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (timestamps[mid] <= key)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo;
+    }
+
+    /**
+     * Sorts both arrays by timestamp. The data usually arrives sorted already, so this is
+     * an insertion sort.
+     */
+    private static void sort(long[] timestamps, int[] counts) {
+        for (int i = 1; i < timestamps.length; i++) {
+            long t = timestamps[i];
+            int c = counts[i];
+            int j = i - 1;
+            while (j >= 0 && timestamps[j] > t) {
+                timestamps[j + 1] = timestamps[j];
+                counts[j + 1] = counts[j];
+                j--;
+            }
+            timestamps[j + 1] = t;
+            counts[j + 1] = c;
+        }
+    }
+
+    private static long[] trim(long[] a, int size) {
+        if (a.length == size)
+            return a;
+        long[] r = new long[size];
+        System.arraycopy(a, 0, r, 0, size);
+        return r;
+    }
+
+    private static int[] trim(int[] a, int size) {
+        if (a.length == size)
+            return a;
+        int[] r = new int[size];
+        System.arraycopy(a, 0, r, 0, size);
+        return r;
+    }
+
+    /**
+     * Picks the entries of the top-level {@code installations} object straight into arrays.
+     */
+    private static final class Collector implements ContentHandler {
+        long[] timestamps = new long[64];
+
+        int[] counts = new int[64];
+
+        int size;
+
+        private int depth;
+
+        private boolean inInstallations;
+
+        private String key;
+
+        public void startJSON() {
+        }
+
+        public void endJSON() {
+        }
+
+        public boolean startObject() {
+            depth++;
+            return true;
+        }
+
+        public boolean endObject() {
+            depth--;
+            return true;
+        }
+
+        public boolean startObjectEntry(String key) {
+            if (depth == 1)
+                inInstallations = "installations".equals(key);
+            this.key = key;
+            return true;
+        }
+
+        public boolean endObjectEntry() {
+            // installations may not hold an object, so its end is not always seen in endObject
+            if (depth == 1)
+                inInstallations = false;
+            return true;
+        }
+
+        public boolean startArray() {
+            depth++;
+            return true;
+        }
+
+        public boolean endArray() {
+            depth--;
+            return true;
+        }
+
+        public boolean primitive(Object value) throws ParseException, IOException {
+            if (!inInstallations || depth != 2 || !(value instanceof Number))
+                return true;
+            long timestamp;
+            try {
+                timestamp = Long.parseLong(key);
+            } catch (NumberFormatException e) {
+                return true; // not a data point
+            }
+            if (size == timestamps.length) {
+                long[] t = new long[size * 2];
+                System.arraycopy(timestamps, 0, t, 0, size);
+                timestamps = t;
+                int[] c = new int[size * 2];
+                System.arraycopy(counts, 0, c, 0, size);
+                counts = c;
+            }
+            timestamps[size] = timestamp;
+            counts[size] = ((Number) value).intValue();
+            size++;
+            return true;
+        }
+    }
+}
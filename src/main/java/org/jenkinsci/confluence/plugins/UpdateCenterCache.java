@@ -0,0 +1,383 @@
+package org.jenkinsci.confluence.plugins;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.jenkinsci.confluence.plugins.exception.PluginHttpException;
+import org.json.simple.parser.ParseException;
+
+/**
+ * Process-wide holder of the current {@link UpdateCenterSnapshot}.
+ *
+ * <p>
+ * Readers never block on each other: the snapshot is published through an
+ * {@link AtomicReference} and swapped as a whole. Only the very first request
+ * loads synchronously; once a snapshot is older than the refresh interval, the
+ * stale one keeps being served while a background task fetches the next.
+ *
+ * <p>
+ * At most one load is in flight at any time. Callers that need data while a load
+ * is running wait for that load and all receive its result, or its failure.
+ *
+ * <p>
+ * While a {@link BackgroundRefresher} is running, request threads never load: the first
+ * load runs on the refresher's threads, and expired snapshots are left for it to replace.
+ *
+ * <p>
+ * A refreshed snapshot carries the {@link ChangeSet} against the one it replaces, so that
+ * caches derived from it only drop what changed.
+ *
+ * <p>
+ * A failed refresh never replaces the snapshot being served. Repeated failures open a
+ * {@link CircuitBreaker}: until it closes again no load is attempted, and callers that
+ * have nothing to fall back to get the last failure immediately.
+ */
+public class UpdateCenterCache {
+    /**
+     * How long a snapshot is served before a refresh is triggered, in milliseconds.
+     */
+    public static final long REFRESH_INTERVAL = Long.getLong(
+            UpdateCenterCache.class.getName() + ".refreshInterval", 30 * 60 * 1000L);
+
+    private static final UpdateCenterCache INSTANCE = new UpdateCenterCache(REFRESH_INTERVAL, null);
+
+    /**
+     * Produces a fresh snapshot, typically by downloading update-center.json.
+     */
+    public interface Loader {
+        /**
+         * @param previous the snapshot currently served, or null on the first load. May be
+         *            returned (revalidated) if the update site reports it is still current.
+         */
+        UpdateCenterSnapshot load(UpdateCenterSnapshot previous) throws IOException, PluginHttpException,
+                ParseException;
+    }
+
+    private final AtomicReference<UpdateCenterSnapshot> current = new AtomicReference<UpdateCenterSnapshot>();
+
+    /**
+     * The load currently running, if any.
+     */
+    private final AtomicReference<LoadTask> inFlight = new AtomicReference<LoadTask>();
+
+    private final long refreshInterval;
+
+    /**
+     * Runs refreshes and timed first loads, or null to use {@link #ownExecutor}.
+     */
+    private final Executor executor;
+
+    /**
+     * Created on first use and shut down by {@link #shutdown()}, so that no thread outlives
+     * the plugin.
+     */
+    private ExecutorService ownExecutor;
+
+    private final CircuitBreaker circuitBreaker;
+
+    /**
+     * Decides when a snapshot has expired.
+     */
+    private final Clock clock;
+
+    /**
+     * Set while a {@link BackgroundRefresher} keeps the snapshot current. Callers then never
+     * load on their own thread: the first load runs here, and expired snapshots are left to
+     * the refresher.
+     */
+    private volatile Executor backgroundExecutor;
+
+    /**
+     * @param executor runs refreshes and timed first loads, or null for a thread of its own
+     */
+    UpdateCenterCache(long refreshInterval, Executor executor) {
+        this(refreshInterval, executor, new CircuitBreaker());
+    }
+
+    UpdateCenterCache(long refreshInterval, Executor executor, CircuitBreaker circuitBreaker) {
+        this(refreshInterval, executor, circuitBreaker, Clock.SYSTEM);
+    }
+
+    UpdateCenterCache(long refreshInterval, Executor executor, CircuitBreaker circuitBreaker, Clock clock) {
+        this.refreshInterval = refreshInterval;
+        this.executor = executor;
+        this.circuitBreaker = circuitBreaker;
+        this.clock = clock;
+    }
+
+    public static UpdateCenterCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns the current snapshot, loading it on the calling thread if there is none yet.
+     *
+     * @throws IOException, PluginHttpException, ParseException only if no snapshot has been
+     *             loaded yet and loading one fails, or failed recently
+     */
+    public UpdateCenterSnapshot get(Loader loader) throws IOException, PluginHttpException, ParseException {
+        UpdateCenterSnapshot snapshot = current.get();
+        Executor background = backgroundExecutor;
+        if (snapshot == null) {
+            PluginInfoMetrics.getInstance().recordUpdateCenterCache(false);
+            if (!circuitBreaker.allowRequest()) {
+                rethrow(circuitBreaker.getLastFailure());
+            }
+            return await(background != null ? loadOn(background, loader) : loadNow(loader, null));
+        }
+        PluginInfoMetrics.getInstance().recordUpdateCenterCache(true);
+        if (background == null && snapshot.isOlderThan(refreshInterval, clock.currentTimeMillis())
+                && circuitBreaker.allowRequest()) {
+            scheduleRefresh(loader, snapshot);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Returns the current snapshot, or waits at most {@code timeoutMillis} for the first one.
+     * The load runs in the background and keeps going after the wait gives up, so a later
+     * call can pick up its result.
+     *
+     * @return the snapshot, or null if none could be loaded in time
+     * @throws IOException, PluginHttpException, ParseException if the load failed within the
+     *             timeout, or failed recently
+     */
+    public UpdateCenterSnapshot get(Loader loader, long timeoutMillis) throws IOException, PluginHttpException,
+            ParseException {
+        if (current.get() != null) {
+            return get(loader);
+        }
+        PluginInfoMetrics.getInstance().recordUpdateCenterCache(false);
+        if (!circuitBreaker.allowRequest()) {
+            rethrow(circuitBreaker.getLastFailure());
+        }
+        Executor background = backgroundExecutor;
+        return await(loadOn(background != null ? background : executor(), loader), timeoutMillis);
+    }
+
+    /**
+     * Loads a new snapshot on the calling thread, or waits for the load in flight, unless
+     * the circuit breaker is open.
+     *
+     * @return the current snapshot afterwards, possibly null
+     */
+    public UpdateCenterSnapshot refresh(Loader loader) throws IOException, PluginHttpException, ParseException {
+        if (circuitBreaker.allowRequest()) {
+            await(loadNow(loader, current.get()));
+        }
+        return current.get();
+    }
+
+    /**
+     * Hands refreshing over to a background task: from now on, loads requested by
+     * {@link #get(Loader)} run on the given executor, and expired snapshots keep being served
+     * until {@link #refresh(Loader)} is called.
+     */
+    public void startBackgroundRefresh(Executor executor) {
+        backgroundExecutor = executor;
+    }
+
+    /**
+     * Goes back to refreshing on demand.
+     */
+    public void stopBackgroundRefresh() {
+        backgroundExecutor = null;
+    }
+
+    private synchronized Executor executor() {
+        if (executor != null)
+            return executor;
+        if (ownExecutor == null)
+            ownExecutor = createRefreshExecutor();
+        return ownExecutor;
+    }
+
+    /**
+     * Stops the thread this cache created for loading, if any. Another one is created if the
+     * cache is used again.
+     */
+    public synchronized void shutdown() {
+        if (ownExecutor != null) {
+            ownExecutor.shutdownNow();
+            ownExecutor = null;
+        }
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    /**
+     * @return true if there is no snapshot yet or the current one has expired
+     */
+    public boolean needsRefresh() {
+        UpdateCenterSnapshot snapshot = current.get();
+        return snapshot == null || snapshot.isOlderThan(refreshInterval, clock.currentTimeMillis());
+    }
+
+    /**
+     * @return the current snapshot without triggering any load, or null
+     */
+    public UpdateCenterSnapshot peek() {
+        return current.get();
+    }
+
+    /**
+     * Serves a snapshot restored from disk until the next load, unless one was loaded already.
+     *
+     * @return true if the snapshot was installed
+     */
+    public boolean restore(UpdateCenterSnapshot snapshot) {
+        return current.compareAndSet(null, snapshot);
+    }
+
+    /**
+     * Drops the current snapshot so that the next {@link #get(Loader)} loads again.
+     */
+    public void invalidate() {
+        current.set(null);
+    }
+
+    /**
+     * Joins the load in flight, or runs a new one on the calling thread.
+     */
+    private LoadTask loadNow(Loader loader, UpdateCenterSnapshot previous) {
+        for (;;) {
+            LoadTask task = inFlight.get();
+            if (task != null) {
+                return task;
+            }
+            task = new LoadTask(loader, previous);
+            if (inFlight.compareAndSet(null, task)) {
+                task.run();
+                return task;
+            }
+        }
+    }
+
+    /**
+     * Joins the load in flight, or starts a new one on the given executor.
+     */
+    private LoadTask loadOn(Executor executor, Loader loader) {
+        for (;;) {
+            LoadTask task = inFlight.get();
+            if (task != null) {
+                return task;
+            }
+            task = new LoadTask(loader, null);
+            if (inFlight.compareAndSet(null, task)) {
+                try {
+                    executor.execute(task);
+                } catch (RuntimeException e) {
+                    task.run(); // shutting down
+                }
+                return task;
+            }
+        }
+    }
+
+    private void scheduleRefresh(Loader loader, UpdateCenterSnapshot previous) {
+        LoadTask task = new LoadTask(loader, previous);
+        if (!inFlight.compareAndSet(null, task)) {
+            return; // somebody else is already on it
+        }
+        try {
+            executor().execute(task);
+        } catch (RuntimeException e) {
+            inFlight.compareAndSet(task, null);
+        }
+    }
+
+    private static UpdateCenterSnapshot await(LoadTask task) throws IOException, PluginHttpException,
+            ParseException {
+        return await(task, Long.MAX_VALUE);
+    }
+
+    /**
+     * @return the result of the load, or null if it did not complete in time
+     */
+    private static UpdateCenterSnapshot await(LoadTask task, long timeoutMillis) throws IOException,
+            PluginHttpException, ParseException {
+        try {
+            return task.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the update center");
+        } catch (CancellationException e) {
+            throw new InterruptedIOException("Loading the update center was cancelled");
+        } catch (ExecutionException e) {
+            rethrow(e.getCause());
+            return null; // unreachable
+        }
+    }
+
+    private static void rethrow(Throwable cause) throws IOException, PluginHttpException, ParseException {
+        if (cause instanceof IOException)
+            throw (IOException) cause;
+        if (cause instanceof PluginHttpException)
+            throw (PluginHttpException) cause;
+        if (cause instanceof ParseException)
+            throw (ParseException) cause;
+        if (cause instanceof RuntimeException)
+            throw (RuntimeException) cause;
+        if (cause instanceof Error)
+            throw (Error) cause;
+        throw new IOException(String.valueOf(cause));
+    }
+
+    /**
+     * One load, publishing its result before anyone waiting on it is released. A failed
+     * background refresh is only recorded with the circuit breaker; the old snapshot keeps
+     * being served.
+     */
+    private final class LoadTask extends FutureTask<UpdateCenterSnapshot> {
+        LoadTask(final Loader loader, final UpdateCenterSnapshot previous) {
+            super(new Callable<UpdateCenterSnapshot>() {
+                public UpdateCenterSnapshot call() throws Exception {
+                    UpdateCenterSnapshot snapshot;
+                    try {
+                        snapshot = loader.load(previous);
+                    } catch (Exception e) {
+                        PluginInfoMetrics.getInstance().recordError(e);
+                        circuitBreaker.recordFailure(e);
+                        throw e;
+                    }
+                    circuitBreaker.recordSuccess();
+                    if (previous != null && snapshot.getGeneration() != previous.getGeneration()) {
+                        snapshot = snapshot.diffedAgainst(previous);
+                    }
+                    current.set(snapshot);
+                    return snapshot;
+                }
+            });
+        }
+
+        @Override
+        protected void done() {
+            inFlight.compareAndSet(this, null);
+        }
+    }
+
+    private static ExecutorService createRefreshExecutor() {
+        return Executors.newSingleThreadExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "jenkins-plugin-info update center refresh");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+}
@@ -0,0 +1,242 @@
+package org.jenkinsci.confluence.plugins;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.ContentHandler;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+/**
+ * Streams through update-center.json once and only builds the parts the macros read.
+ *
+ * <p>
+ * The result has the same shape as the full document, but plugins only carry their
+ * title, version and dependencies, and everything else ({@code core}, developers,
+ * wiki URLs, ...) is skipped by the tokenizer without ever being materialized.
+ *
+ * @see JSONParser#parse(Reader, ContentHandler)
+ */
+public class UpdateCenterParser implements ContentHandler {
+
+    /**
+     * Which branches of the document to keep.
+     */
+    static final class Selection {
+        /**
+         * Keeps a value and everything nested below it.
+         */
+        static final Selection ALL = new Selection();
+
+        private final Map<String, Selection> fields = new HashMap<String, Selection>();
+
+        /**
+         * Applies to keys not listed in {@link #fields} and to array elements.
+         */
+        private Selection any;
+
+        Selection field(String name) {
+            Selection s = new Selection();
+            fields.put(name, s);
+            return s;
+        }
+
+        Selection keep(String... names) {
+            for (String name : names)
+                fields.put(name, ALL);
+            return this;
+        }
+
+        Selection any() {
+            any = new Selection();
+            return any;
+        }
+
+        /**
+         * @return how to treat the entry {@code key} of an object, or null to skip it
+         */
+        Selection child(String key) {
+            if (this == ALL)
+                return ALL;
+            Selection s = fields.get(key);
+            return s != null ? s : any;
+        }
+
+        /**
+         * @return how to treat the elements of an array, or null to skip them
+         */
+        Selection element() {
+            return this == ALL ? ALL : any;
+        }
+    }
+
+    static final Selection UPDATE_CENTER = new Selection();
+    static {
+        Selection plugin = UPDATE_CENTER.field("plugins").any();
+        plugin.keep("title", "version");
+        plugin.field("dependencies").any().keep("name", "optional", "version");
+        Selection warning = UPDATE_CENTER.field("warnings").any();
+        warning.keep("id", "type", "name", "message", "url");
+        warning.field("versions").any().keep("pattern");
+    }
+
+    private static final class Frame {
+        final Object container;
+        final Selection selection;
+        String key;
+        Selection entry;
+
+        Frame(Object container, Selection selection) {
+            this.container = container;
+            this.selection = selection;
+        }
+    }
+
+    private final Selection root;
+
+    private final List<Frame> stack = new ArrayList<Frame>();
+
+    /**
+     * Nesting depth inside a value that is being skipped, 0 when not skipping.
+     */
+    private int skipDepth;
+
+    private Object result;
+
+    UpdateCenterParser(Selection root) {
+        this.root = root;
+    }
+
+    public UpdateCenterParser() {
+        this(UPDATE_CENTER);
+    }
+
+    /**
+     * Parses the update center from {@code in}, keeping only what the macros need.
+     */
+    public static JSONObject parse(Reader in) throws IOException, ParseException {
+        UpdateCenterParser handler = new UpdateCenterParser();
+        new JSONParser().parse(in, handler);
+        return handler.getUpdateCenter();
+    }
+
+    public static JSONObject parse(String s) throws ParseException {
+        UpdateCenterParser handler = new UpdateCenterParser();
+        new JSONParser().parse(s, handler);
+        return handler.getUpdateCenter();
+    }
+
+    /**
+     * @return the pruned document once parsing has finished
+     */
+    public JSONObject getUpdateCenter() throws ParseException {
+        if (result instanceof JSONObject)
+            return (JSONObject) result;
+        throw new ParseException(ParseException.ERROR_UNEXPECTED_TOKEN, result);
+    }
+
+    public void startJSON() throws ParseException, IOException {
+        stack.clear();
+        skipDepth = 0;
+        result = null;
+    }
+
+    public void endJSON() throws ParseException, IOException {
+    }
+
+    public boolean startObject() throws ParseException, IOException {
+        return startContainer(new JSONObject());
+    }
+
+    public boolean endObject() throws ParseException, IOException {
+        return endContainer();
+    }
+
+    public boolean startArray() throws ParseException, IOException {
+        return startContainer(new JSONArray());
+    }
+
+    public boolean endArray() throws ParseException, IOException {
+        return endContainer();
+    }
+
+    public boolean startObjectEntry(String key) throws ParseException, IOException {
+        if (skipDepth == 0) {
+            Frame top = top();
+            top.key = key;
+            top.entry = top.selection.child(key);
+        }
+        return true;
+    }
+
+    public boolean endObjectEntry() throws ParseException, IOException {
+        return true;
+    }
+
+    public boolean primitive(Object value) throws ParseException, IOException {
+        if (skipDepth == 0 && selectionForValue() != null) {
+            attach(value);
+        }
+        return true;
+    }
+
+    private boolean startContainer(Object container) {
+        if (skipDepth > 0) {
+            skipDepth++;
+            return true;
+        }
+        Selection selection = selectionForValue();
+        if (selection == null) {
+            skipDepth = 1;
+            return true;
+        }
+        attach(container);
+        stack.add(new Frame(container, selection));
+        return true;
+    }
+
+    private boolean endContainer() {
+        if (skipDepth > 0) {
+            skipDepth--;
+        } else {
+            stack.remove(stack.size() - 1);
+        }
+        return true;
+    }
+
+    private Frame top() {
+        return stack.get(stack.size() - 1);
+    }
+
+    /**
+     * @return how to treat the value that starts now, or null if it is to be skipped
+     */
+    private Selection selectionForValue() {
+        if (stack.isEmpty())
+            return root;
+        Frame top = top();
+        if (top.container instanceof JSONArray)
+            return top.selection.element();
+        return top.entry;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void attach(Object value) {
+        if (stack.isEmpty()) {
+            result = value;
+            return;
+        }
+        Frame top = top();
+        if (top.container instanceof JSONArray) {
+            ((JSONArray) top.container).add(value);
+        } else {
+            ((JSONObject) top.container).put(top.key, value);
+        }
+    }
+}
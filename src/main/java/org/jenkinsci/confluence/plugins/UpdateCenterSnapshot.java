@@ -0,0 +1,176 @@
+package org.jenkinsci.confluence.plugins;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+/**
+ * One parsed copy of update-center.json, shared by all renders until it is replaced
+ * by a newer one. Never modified after construction.
+ */
+public class UpdateCenterSnapshot {
+    private static final AtomicLong GENERATIONS = new AtomicLong();
+
+    /**
+     * Increases with every snapshot that carries new data. Revalidated copies keep the
+     * generation of the snapshot they were made from.
+     */
+    private final long generation;
+
+    private final PluginIndex plugins;
+
+    private final WarningIndex warnings;
+
+    private final SecurityAdvisoryView advisories;
+
+    private final PluginSearchIndex searchIndex;
+
+    private final DependencyGraph dependencies;
+
+    /**
+     * When this snapshot was loaded, in milliseconds since the epoch.
+     */
+    private final long timestamp;
+
+    /**
+     * Validators of the response this snapshot was parsed from, sent back on the next
+     * request so that the update site can answer with 304 Not Modified. Either may be null.
+     */
+    private final String etag;
+
+    private final String lastModified;
+
+    /**
+     * What changed since the snapshot this one replaced, or null if unknown.
+     */
+    private final ChangeSet changes;
+
+    public UpdateCenterSnapshot(JSONObject updateCenter) {
+        this(updateCenter, System.currentTimeMillis());
+    }
+
+    public UpdateCenterSnapshot(JSONObject updateCenter, long timestamp) {
+        this(updateCenter, timestamp, null, null);
+    }
+
+    public UpdateCenterSnapshot(JSONObject updateCenter, long timestamp, String etag, String lastModified) {
+        this.generation = GENERATIONS.incrementAndGet();
+        JSONObject plugins = (JSONObject) updateCenter.get("plugins");
+        this.plugins = plugins != null ? PluginIndex.fromJSON(plugins) : PluginIndex.EMPTY;
+        long start = System.nanoTime();
+        this.warnings = WarningIndex.fromJSON((JSONArray) updateCenter.get("warnings"), this.plugins);
+        PluginInfoMetrics.getInstance().recordWarningEvaluation(System.nanoTime() - start);
+        // the other indexes count toward the parse time only
+        this.advisories = new SecurityAdvisoryView(this.plugins, this.warnings);
+        this.searchIndex = new PluginSearchIndex(this.plugins);
+        this.dependencies = plugins != null ? DependencyGraph.fromJSON(plugins, this.plugins) : DependencyGraph.EMPTY;
+        this.timestamp = timestamp;
+        this.etag = etag;
+        this.lastModified = lastModified;
+        this.changes = null;
+    }
+
+    /**
+     * Restores a snapshot from indexes built earlier, e.g. by {@link SnapshotStore}.
+     */
+    UpdateCenterSnapshot(PluginIndex plugins, WarningIndex warnings, DependencyGraph dependencies, long timestamp,
+            String etag, String lastModified) {
+        this.generation = GENERATIONS.incrementAndGet();
+        this.plugins = plugins;
+        this.warnings = warnings;
+        this.advisories = new SecurityAdvisoryView(plugins, warnings);
+        this.searchIndex = new PluginSearchIndex(plugins);
+        this.dependencies = dependencies;
+        this.timestamp = timestamp;
+        this.etag = etag;
+        this.lastModified = lastModified;
+        this.changes = null;
+    }
+
+    private UpdateCenterSnapshot(UpdateCenterSnapshot base, long timestamp, ChangeSet changes) {
+        this.generation = base.generation;
+        this.plugins = base.plugins;
+        this.warnings = base.warnings;
+        this.advisories = base.advisories;
+        this.searchIndex = base.searchIndex;
+        this.dependencies = base.dependencies;
+        this.timestamp = timestamp;
+        this.etag = base.etag;
+        this.lastModified = base.lastModified;
+        this.changes = changes;
+    }
+
+    /**
+     * Returns a copy sharing all the data of this one, for when the update site
+     * confirmed that nothing changed since this snapshot was loaded.
+     */
+    public UpdateCenterSnapshot revalidated() {
+        return new UpdateCenterSnapshot(this, System.currentTimeMillis(), changes);
+    }
+
+    /**
+     * Returns a copy sharing all the data of this one that also knows what changed since
+     * {@code previous}, so that caches can keep what is not affected.
+     */
+    public UpdateCenterSnapshot diffedAgainst(UpdateCenterSnapshot previous) {
+        return new UpdateCenterSnapshot(this, timestamp, ChangeSet.between(previous, this));
+    }
+
+    public PluginIndex getPlugins() {
+        return plugins;
+    }
+
+    public WarningIndex getWarnings() {
+        return warnings;
+    }
+
+    /**
+     * @return the plugins with security warnings, sorted by how they are affected
+     */
+    public SecurityAdvisoryView getAdvisories() {
+        return advisories;
+    }
+
+    public PluginSearchIndex getSearchIndex() {
+        return searchIndex;
+    }
+
+    public DependencyGraph getDependencies() {
+        return dependencies;
+    }
+
+    public long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * @return the changes since the snapshot this one replaced, or null if unknown
+     */
+    public ChangeSet getChanges() {
+        return changes;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public String getEtag() {
+        return etag;
+    }
+
+    public String getLastModified() {
+        return lastModified;
+    }
+
+    public boolean isOlderThan(long ageMillis) {
+        return isOlderThan(ageMillis, System.currentTimeMillis());
+    }
+
+    /**
+     * @param now the current time in milliseconds since the epoch
+     */
+    boolean isOlderThan(long ageMillis, long now) {
+        return now - timestamp > ageMillis;
+    }
+}
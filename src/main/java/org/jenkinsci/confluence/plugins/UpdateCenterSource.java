@@ -0,0 +1,14 @@
+package org.jenkinsci.confluence.plugins;
+
+/**
+ * Where update center data and installation statistics come from: the Jenkins project's
+ * servers or a mirror over HTTP ({@link HttpUpdateCenterSource}), or files synced to the
+ * local disk ({@link LocalUpdateCenterSource}).
+ *
+ * <p>
+ * Loading the update center may return the previous snapshot {@linkplain
+ * UpdateCenterSnapshot#revalidated() revalidated} if the source reports that it did not
+ * change. Missing statistics are reported as a {@code PluginHttpException} with status 404.
+ */
+public interface UpdateCenterSource extends UpdateCenterCache.Loader, StatsCache.Loader {
+}
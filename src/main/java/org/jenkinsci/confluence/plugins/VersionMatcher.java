@@ -0,0 +1,143 @@
+package org.jenkinsci.confluence.plugins;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * The {@code versions[].pattern} regular expressions of a security warning, compiled once.
+ *
+ * <p>
+ * Patterns are folded into a single alternation so that a version is checked with one
+ * match; patterns that would change meaning when combined (back references, named
+ * groups, quoting, comments) are kept separate, as are all of them if the combined
+ * expression does not compile. Invalid patterns never match and are reported through
+ * {@link #getDiagnostics()} instead of failing again on every check.
+ */
+public final class VersionMatcher {
+    public static final VersionMatcher NONE = compile(Collections.<String> emptyList());
+
+    private final List<String> patterns;
+
+    private final Pattern[] compiled;
+
+    private final List<String> diagnostics;
+
+    private VersionMatcher(List<String> patterns, Pattern[] compiled, List<String> diagnostics) {
+        this.patterns = patterns;
+        this.compiled = compiled;
+        this.diagnostics = diagnostics;
+    }
+
+    public static VersionMatcher compile(List<String> patterns) {
+        List<String> diagnostics = new ArrayList<String>();
+        List<Pattern> foldable = new ArrayList<Pattern>();
+        List<Pattern> compiled = new ArrayList<Pattern>();
+        for (String pattern : patterns) {
+            Pattern p;
+            try {
+                p = Pattern.compile(pattern);
+            } catch (PatternSyntaxException e) {
+                diagnostics.add("invalid version pattern '" + pattern + "': " + e.getDescription());
+                continue;
+            }
+            if (isFoldable(pattern)) {
+                foldable.add(p);
+            } else {
+                compiled.add(p);
+            }
+        }
+        if (foldable.size() == 1) {
+            compiled.add(foldable.get(0));
+        } else if (foldable.size() > 1) {
+            StringBuilder alternation = new StringBuilder();
+            for (Pattern p : foldable) {
+                if (alternation.length() > 0)
+                    alternation.append('|');
+                alternation.append("(?:").append(p.pattern()).append(')');
+            }
+            try {
+                compiled.add(Pattern.compile(alternation.toString()));
+            } catch (PatternSyntaxException e) {
+                // each one compiled on its own, so they still work when checked one by one
+                compiled.addAll(foldable);
+            }
+        }
+        return new VersionMatcher(Collections.unmodifiableList(new ArrayList<String>(patterns)),
+                compiled.toArray(new Pattern[compiled.size()]), Collections.unmodifiableList(diagnostics));
+    }
+
+    /**
+     * Group numbers and names are global to a pattern, so expressions referring to them
+     * cannot be placed next to each other. An unterminated {@code \\Q} would quote the
+     * alternatives after it, and a comment in {@code (?x)} mode would swallow the closing
+     * parenthesis, so those are not combined either.
+     */
+    private static boolean isFoldable(String pattern) {
+        for (int i = 0; i < pattern.length() - 1; i++) {
+            char c = pattern.charAt(i);
+            if (c == '\\') {
+                char next = pattern.charAt(i + 1);
+                if (Character.isDigit(next) || next == 'k' || next == 'Q')
+                    return false;
+                i++; // skip the escaped character
+            } else if (c == '(' && pattern.startsWith("(?<", i) && !pattern.startsWith("(?<=", i)
+                    && !pattern.startsWith("(?<!", i)) {
+                return false;
+            } else if (c == '(' && pattern.charAt(i + 1) == '?' && setsComments(pattern, i + 2)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return whether the inline flags starting at {@code start}, as in {@code (?ix)} or
+     *         {@code (?x:...)}, turn on comments
+     */
+    private static boolean setsComments(String pattern, int start) {
+        for (int i = start; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            if (c == 'x')
+                return true;
+            if (c == '-')
+                return false; // only turned off, or the flags end
+            if (!Character.isLetter(c))
+                return false;
+        }
+        return false;
+    }
+
+    /**
+     * @return true if any of the valid patterns matches the entire version string
+     */
+    public boolean matches(String version) {
+        if (version == null)
+            return false;
+        for (Pattern p : compiled) {
+            if (p.matcher(version).matches())
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return the patterns as published, including invalid ones
+     */
+    public List<String> getPatterns() {
+        return patterns;
+    }
+
+    public boolean isEmpty() {
+        return patterns.isEmpty();
+    }
+
+    /**
+     * @return one message per pattern that could not be compiled
+     */
+    public List<String> getDiagnostics() {
+        return diagnostics;
+    }
+}
@@ -0,0 +1,162 @@
+package org.jenkinsci.confluence.plugins;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+/**
+ * Security warnings of one update center snapshot, grouped by plugin id.
+ *
+ * <p>
+ * Whether a warning affects the distributed version of its plugin is decided once when
+ * the index is built, so that rendering a plugin is a single map lookup.
+ */
+public final class WarningIndex {
+    public static final WarningIndex EMPTY = new WarningIndex(Collections.<String, PluginWarnings> emptyMap(),
+            Collections.<String> emptyList());
+
+    /**
+     * Version that matches any pattern which matches anything, e.g. {@code .*}.
+     * Warnings with such patterns always apply to the current version.
+     */
+    private static final String ANY_VERSION = "ifThisMatchesAnythingDoes";
+
+    /**
+     * The warnings concerning a single plugin, in the order the update center lists them.
+     */
+    public static final class PluginWarnings {
+        public static final PluginWarnings NONE = new PluginWarnings(Collections.<SecurityWarning> emptyList(),
+                Collections.<SecurityWarning> emptyList());
+
+        private final List<SecurityWarning> current;
+
+        private final List<SecurityWarning> older;
+
+        PluginWarnings(List<SecurityWarning> current, List<SecurityWarning> older) {
+            this.current = Collections.unmodifiableList(current);
+            this.older = Collections.unmodifiableList(older);
+        }
+
+        /**
+         * @return warnings for all versions, or for the version currently distributed
+         */
+        public List<SecurityWarning> getCurrent() {
+            return current;
+        }
+
+        /**
+         * @return warnings that only concern versions older than the distributed one
+         */
+        public List<SecurityWarning> getOlder() {
+            return older;
+        }
+
+        public boolean isEmpty() {
+            return current.isEmpty() && older.isEmpty();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o)
+                return true;
+            if (!(o instanceof PluginWarnings))
+                return false;
+            PluginWarnings that = (PluginWarnings) o;
+            return current.equals(that.current) && older.equals(that.older);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * current.hashCode() + older.hashCode();
+        }
+    }
+
+    private final Map<String, PluginWarnings> byPlugin;
+
+    private final List<String> diagnostics;
+
+    WarningIndex(Map<String, PluginWarnings> byPlugin, List<String> diagnostics) {
+        this.byPlugin = byPlugin;
+        this.diagnostics = Collections.unmodifiableList(diagnostics);
+    }
+
+    /**
+     * @param warnings the {@code warnings} array of update-center.json, may be null
+     * @param plugins the plugins of the same snapshot, to determine their distributed versions
+     */
+    public static WarningIndex fromJSON(JSONArray warnings, PluginIndex plugins) {
+        if (warnings == null || warnings.isEmpty()) {
+            return EMPTY;
+        }
+        Map<String, Set<SecurityWarning>> grouped = new LinkedHashMap<String, Set<SecurityWarning>>();
+        List<String> diagnostics = new ArrayList<String>();
+        for (Object w : warnings) {
+            try {
+                SecurityWarning warning = SecurityWarning.fromJSON((JSONObject) w);
+                if (warning == null) {
+                    continue;
+                }
+                for (String diagnostic : warning.getVersions().getDiagnostics()) {
+                    diagnostics.add(warning + ": " + diagnostic);
+                }
+                Set<SecurityWarning> forPlugin = grouped.get(warning.getPluginId());
+                if (forPlugin == null) {
+                    forPlugin = new LinkedHashSet<SecurityWarning>();
+                    grouped.put(warning.getPluginId(), forPlugin);
+                }
+                forPlugin.add(warning);
+            } catch (RuntimeException ex) {
+                // ignore -- something wrong on the update site, better to not break the wiki page
+            }
+        }
+
+        Map<String, PluginWarnings> byPlugin = new HashMap<String, PluginWarnings>();
+        for (Map.Entry<String, Set<SecurityWarning>> e : grouped.entrySet()) {
+            int plugin = plugins.indexOf(e.getKey());
+            String version = plugin >= 0 ? plugins.getVersion(plugin) : null;
+
+            List<SecurityWarning> current = new ArrayList<SecurityWarning>();
+            List<SecurityWarning> older = new ArrayList<SecurityWarning>();
+            for (SecurityWarning warning : e.getValue()) {
+                if (warning.isRelevantForAnyVersion() || warning.isRelevantForSpecificVersion(ANY_VERSION)
+                        || warning.isRelevantForSpecificVersion(version)) {
+                    current.add(warning);
+                } else {
+                    older.add(warning);
+                }
+            }
+            byPlugin.put(e.getKey(), new PluginWarnings(current, older));
+        }
+        return new WarningIndex(byPlugin, diagnostics);
+    }
+
+    /**
+     * @return the warnings for the plugin, never null
+     */
+    public PluginWarnings get(String pluginId) {
+        PluginWarnings w = byPlugin.get(pluginId);
+        return w != null ? w : PluginWarnings.NONE;
+    }
+
+    /**
+     * @return problems found in the warnings while building this index, e.g. invalid version patterns
+     */
+    public List<String> getDiagnostics() {
+        return diagnostics;
+    }
+
+    /**
+     * @return ids of all plugins with at least one warning
+     */
+    public Set<String> getPluginIds() {
+        return Collections.unmodifiableSet(byPlugin.keySet());
+    }
+}
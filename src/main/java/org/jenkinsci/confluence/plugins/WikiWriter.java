@@ -1,5 +1,8 @@
 package org.jenkinsci.confluence.plugins;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * @author Kohsuke Kawaguchi
  */
@@ -7,7 +10,95 @@ public class WikiWriter {
     /**
      * Building string into this.
      */
-    public final StringBuilder buf = new StringBuilder();
+    public final StringBuilder buf;
+
+    public WikiWriter() {
+        this(16);
+    }
+
+    /**
+     * @param capacity expected length of the markup, so that the buffer does not have to grow
+     */
+    public WikiWriter(int capacity) {
+        buf = new StringBuilder(capacity);
+    }
+
+    /**
+     * Markup with placeholders, split into its literal parts once so that printing it is a
+     * plain sequence of appends. {@code %s} is replaced by the argument as is, {@code %e} by
+     * the argument {@linkplain WikiWriter#escape(String) escaped}, and {@code %%} by {@code %}.
+     */
+    static final class Template {
+        private final String[] literals;
+
+        private final boolean[] escaped;
+
+        private final int length;
+
+        Template(String markup) {
+            StringBuilder literal = new StringBuilder();
+            List<String> literals = new ArrayList<String>();
+            List<Boolean> escaped = new ArrayList<Boolean>();
+            for (int i = 0; i < markup.length(); i++) {
+                char c = markup.charAt(i);
+                if (c != '%' || i + 1 == markup.length()) {
+                    literal.append(c);
+                    continue;
+                }
+                char conversion = markup.charAt(++i);
+                if (conversion == '%') {
+                    literal.append('%');
+                } else if (conversion == 's' || conversion == 'e') {
+                    literals.add(literal.toString());
+                    escaped.add(conversion == 'e');
+                    literal.setLength(0);
+                } else {
+                    throw new IllegalArgumentException("Unsupported conversion %" + conversion + " in " + markup);
+                }
+            }
+            literals.add(literal.toString());
+
+            this.literals = literals.toArray(new String[literals.size()]);
+            this.escaped = new boolean[escaped.size()];
+            int length = 0;
+            for (int i = 0; i < this.escaped.length; i++)
+                this.escaped[i] = escaped.get(i);
+            for (String s : this.literals)
+                length += s.length();
+            this.length = length;
+        }
+
+        /**
+         * @return the length of the markup without its arguments
+         */
+        int length() {
+            return length;
+        }
+
+        int arity() {
+            return escaped.length;
+        }
+    }
+
+    WikiWriter append(String s) {
+        buf.append(s);
+        return this;
+    }
+
+    WikiWriter append(String s1, String s2) {
+        buf.append(s1).append(s2);
+        return this;
+    }
+
+    WikiWriter append(String s1, String s2, String s3) {
+        buf.append(s1).append(s2).append(s3);
+        return this;
+    }
+
+    WikiWriter append(char c) {
+        buf.append(c);
+        return this;
+    }
 
     WikiWriter append(Object o) {
         buf.append(o);
@@ -20,27 +111,105 @@ public class WikiWriter {
         return this;
     }
 
+    /**
+     * Appends text so that it cannot close the link or table cell it is written into.
+     */
+    WikiWriter escape(String text) {
+        if (text == null) {
+            buf.append((String) null);
+            return this;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '[' || c == ']' || c == '|')
+                buf.append('\\');
+            buf.append(c);
+        }
+        return this;
+    }
+
     WikiWriter href(String text, String url) {
-        return append('[',text,'|',url,']');
+        buf.append('[');
+        escape(text);
+        buf.append('|').append(url).append(']');
+        return this;
     }
 
     WikiWriter h4(String title) {
-        return append("h4. ",title,"\n");
+        return append("h4. ", title, "\n");
     }
 
     WikiWriter image(String href) {
-        return append("!",href,"!");
+        return append('!').append(href).append('!');
+    }
+
+    WikiWriter print(Template template) {
+        return print(template, new String[0]);
+    }
+
+    WikiWriter print(Template template, String arg) {
+        checkArity(template, 1);
+        buf.append(template.literals[0]);
+        arg(template, 0, arg);
+        buf.append(template.literals[1]);
+        return this;
+    }
+
+    WikiWriter print(Template template, String arg1, String arg2) {
+        checkArity(template, 2);
+        buf.append(template.literals[0]);
+        arg(template, 0, arg1);
+        buf.append(template.literals[1]);
+        arg(template, 1, arg2);
+        buf.append(template.literals[2]);
+        return this;
+    }
+
+    WikiWriter print(Template template, String... args) {
+        checkArity(template, args.length);
+        buf.append(template.literals[0]);
+        for (int i = 0; i < args.length; i++) {
+            arg(template, i, args[i]);
+            buf.append(template.literals[i + 1]);
+        }
+        return this;
     }
 
+    /**
+     * Appends {@code fmt} formatted with {@link String#format(String, Object...)}.
+     */
     WikiWriter print(String fmt, Object... args) {
-        buf.append(String.format(fmt,args));
+        buf.append(String.format(fmt, args));
         return this;
     }
 
+    /**
+     * Prints an ad-hoc {@link Template}, which only knows {@code %s}, {@code %e} and
+     * {@code %%}. Formats used repeatedly should be kept as a {@link Template}.
+     */
+    WikiWriter printTemplate(String template, Object... args) {
+        String[] strings = new String[args.length];
+        for (int i = 0; i < args.length; i++)
+            strings[i] = String.valueOf(args[i]);
+        return print(new Template(template), strings);
+    }
+
     WikiWriter br() {
         return append(" \\\\ ");
     }
 
+    private void arg(Template template, int i, String arg) {
+        if (template.escaped[i])
+            escape(arg);
+        else
+            buf.append(arg);
+    }
+
+    private static void checkArity(Template template, int args) {
+        if (template.arity() != args)
+            throw new IllegalArgumentException("Expected " + template.arity() + " arguments but got " + args);
+    }
+
     public String toString() {
         return buf.toString();
     }
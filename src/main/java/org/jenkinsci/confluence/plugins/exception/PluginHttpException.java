@@ -4,6 +4,10 @@ public class PluginHttpException extends Exception {
 
 	private static final long serialVersionUID = -6730092381542990629L;
 
+	public static final int SC_OK = 200;
+
+	public static final int SC_NOT_MODIFIED = 304;
+
 	private int statusCode;
 
 	public PluginHttpException(int statusCode) {
@@ -14,4 +18,21 @@ public class PluginHttpException extends Exception {
 		return statusCode;
 	}
 
+	/**
+	 * Fails unless the status code is 200 OK, or 304 Not Modified when the caller
+	 * sent validators and can fall back to what it already has.
+	 *
+	 * @return true if the response was 304 Not Modified
+	 */
+	public static boolean checkStatus(int statusCode, boolean conditional)
+			throws PluginHttpException {
+		if (statusCode == SC_OK) {
+			return false;
+		}
+		if (conditional && statusCode == SC_NOT_MODIFIED) {
+			return true;
+		}
+		throw new PluginHttpException(statusCode);
+	}
+
 }
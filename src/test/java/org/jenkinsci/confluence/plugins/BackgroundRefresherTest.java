@@ -0,0 +1,152 @@
+package org.jenkinsci.confluence.plugins;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.atlassian.confluence.util.http.HttpRequest;
+import com.atlassian.confluence.util.http.HttpResponse;
+import com.atlassian.confluence.util.http.HttpRetrievalService;
+
+public class BackgroundRefresherTest {
+
+	private static final Executor SAME_THREAD = new Executor() {
+		public void execute(Runnable command) {
+			command.run();
+		}
+	};
+
+	/**
+	 * Serves a small update center, remembering the thread that asked for it.
+	 */
+	private static HttpRetrievalService updateSite(final Thread[] fetchedOn) throws Exception {
+		HttpRetrievalService http = Mockito.mock(HttpRetrievalService.class);
+		HttpRequest request = new HttpRequest();
+		Mockito.when(http.getDefaultRequestFor(Mockito.anyString())).thenReturn(request);
+		final HttpResponse response = Mockito.mock(HttpResponse.class);
+		Mockito.when(response.getStatusCode()).thenReturn(200);
+		Mockito.when(response.getResponse()).thenAnswer(new Answer<Object>() {
+			public Object answer(InvocationOnMock invocation) {
+				fetchedOn[0] = Thread.currentThread();
+				return new ByteArrayInputStream("updateCenter.post({\"plugins\":{\"foo\":{\"version\":\"1\"}}});"
+						.getBytes());
+			}
+		});
+		Mockito.when(http.get(request)).thenReturn(response);
+		return http;
+	}
+
+	@Test
+	public void requestThreadsNeverFetch() throws Exception {
+		Thread[] fetchedOn = new Thread[1];
+		HttpRetrievalService http = updateSite(fetchedOn);
+		JenkinsRetriever retriever = new JenkinsRetriever(new UpdateCenterCache(60000, SAME_THREAD),
+				new StatsCache(1000, 1000, SAME_THREAD));
+		BackgroundRefresher refresher = new BackgroundRefresher(retriever);
+		refresher.setHttpRetrievalService(http);
+		refresher.afterPropertiesSet();
+		try {
+			Assert.assertTrue(refresher.isRunning());
+			UpdateCenterSnapshot snapshot = retriever.getUpdateCenter(http);
+			Assert.assertTrue(snapshot.getPlugins().contains("foo"));
+			Assert.assertNotNull(fetchedOn[0]);
+			Assert.assertNotSame(Thread.currentThread(), fetchedOn[0]);
+		} finally {
+			refresher.destroy();
+		}
+		Assert.assertFalse(refresher.isRunning());
+
+		// back to loading on demand
+		retriever.getUpdateCenterCache().invalidate();
+		retriever.getUpdateCenter(http);
+		Assert.assertSame(Thread.currentThread(), fetchedOn[0]);
+	}
+
+	@Test
+	public void restoresStoredSnapshotBeforeFirstRefresh() throws Exception {
+		File file = File.createTempFile("update-center", ".snapshot");
+		try {
+			UpdateCenterSnapshot stored = ChangeSetTest.snapshot("{'plugins':{'bar':{'version':'2'}}}");
+			new SnapshotStore(file).save(stored);
+
+			// no update site yet, so only the stored snapshot can be served
+			JenkinsRetriever retriever = new JenkinsRetriever(new UpdateCenterCache(60000, SAME_THREAD),
+					new StatsCache(1000, 1000, SAME_THREAD));
+			BackgroundRefresher refresher = new BackgroundRefresher(retriever);
+			refresher.setSnapshotStore(new SnapshotStore(file));
+			refresher.afterPropertiesSet();
+			try {
+				UpdateCenterSnapshot snapshot = retriever.getUpdateCenterCache().peek();
+				Assert.assertNotNull(snapshot);
+				Assert.assertTrue(snapshot.getPlugins().contains("bar"));
+				Assert.assertEquals(stored.getTimestamp(), snapshot.getTimestamp());
+			} finally {
+				refresher.destroy();
+			}
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void savesSnapshotOnStop() throws Exception {
+		File file = File.createTempFile("update-center", ".snapshot");
+		file.delete();
+		try {
+			Thread[] fetchedOn = new Thread[1];
+			HttpRetrievalService http = updateSite(fetchedOn);
+			JenkinsRetriever retriever = new JenkinsRetriever(new UpdateCenterCache(60000, SAME_THREAD),
+					new StatsCache(1000, 1000, SAME_THREAD));
+			BackgroundRefresher refresher = new BackgroundRefresher(retriever);
+			refresher.setHttpRetrievalService(http);
+			refresher.setSnapshotStore(new SnapshotStore(file));
+			refresher.afterPropertiesSet();
+			retriever.getUpdateCenter(http);
+			refresher.destroy();
+
+			UpdateCenterSnapshot saved = new SnapshotStore(file).load();
+			Assert.assertNotNull(saved);
+			Assert.assertTrue(saved.getPlugins().contains("foo"));
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void threadFactory() {
+		ThreadFactory factory = BackgroundRefresher.threadFactory("test");
+		Thread t = factory.newThread(new Runnable() {
+			public void run() {
+			}
+		});
+		Assert.assertTrue(t.getName().startsWith("test "));
+	}
+
+	@Test
+	public void stopReleasesMetricsMBean() throws Exception {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName name = new ObjectName(PluginInfoMetrics.OBJECT_NAME);
+		BackgroundRefresher refresher = new BackgroundRefresher(new JenkinsRetriever(new UpdateCenterCache(60000,
+				SAME_THREAD), new StatsCache(1000, 1000, SAME_THREAD)));
+		refresher.start();
+		Assert.assertTrue(server.isRegistered(name));
+		refresher.stop();
+		Assert.assertFalse(server.isRegistered(name));
+		refresher.start();
+		Assert.assertTrue(server.isRegistered(name));
+		refresher.stop();
+		PluginInfoMetrics.getInstance().register();
+	}
+}
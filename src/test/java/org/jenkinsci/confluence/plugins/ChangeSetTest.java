@@ -0,0 +1,59 @@
+package org.jenkinsci.confluence.plugins;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import junit.framework.Assert;
+
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.junit.Test;
+
+public class ChangeSetTest {
+
+	static UpdateCenterSnapshot snapshot(String json) throws Exception {
+		return new UpdateCenterSnapshot((JSONObject) new JSONParser().parse(json.replace('\'', '"')));
+	}
+
+	private static final String WARNING = "{'id':'SECURITY-1','type':'plugin','name':'foo','message':'XSS','url':'u',"
+			+ "'versions':[{'pattern':'1[.]0'}]}";
+
+	@Test
+	public void pluginsAddedRemovedAndUpdated() throws Exception {
+		UpdateCenterSnapshot before = snapshot("{'plugins':{"
+				+ "'a':{'title':'A','version':'1'},"
+				+ "'b':{'title':'B','version':'1'},"
+				+ "'c':{'title':'C','version':'1'},"
+				+ "'d':{'title':'D','version':'1'}}}");
+		UpdateCenterSnapshot after = snapshot("{'plugins':{"
+				+ "'b':{'title':'B','version':'2'},"
+				+ "'c':{'title':'C','version':'1'},"
+				+ "'d':{'title':'Dee','version':'1'},"
+				+ "'e':{'title':'E','version':'1'}}}");
+		ChangeSet changes = ChangeSet.between(before, after);
+		Assert.assertEquals(before.getGeneration(), changes.getBaseGeneration());
+		Assert.assertEquals("[e]", changes.getAdded().toString());
+		Assert.assertEquals("[a]", changes.getRemoved().toString());
+		Assert.assertEquals("[b, d]", changes.getUpdated().toString());
+		Assert.assertTrue(changes.getWarningsChanged().isEmpty());
+		Assert.assertEquals(4, changes.getAffectedPluginIds().size());
+		Assert.assertFalse(changes.affects(Collections.singleton("c")));
+		Assert.assertTrue(changes.affects(Arrays.asList("c", "d")));
+		Assert.assertTrue(changes.affects(null));
+	}
+
+	@Test
+	public void warnings() throws Exception {
+		String plugins = "'plugins':{'foo':{'title':'Foo','version':'1.0'},'bar':{'title':'Bar','version':'1.0'}}";
+		UpdateCenterSnapshot none = snapshot("{" + plugins + "}");
+		UpdateCenterSnapshot one = snapshot("{" + plugins + ",'warnings':[" + WARNING + "]}");
+		UpdateCenterSnapshot same = snapshot("{" + plugins + ",'warnings':[" + WARNING + "]}");
+		UpdateCenterSnapshot reworded = snapshot("{" + plugins + ",'warnings':["
+				+ WARNING.replace("XSS", "Stored XSS") + "]}");
+
+		Assert.assertEquals("[foo]", ChangeSet.between(none, one).getAffectedPluginIds().toString());
+		Assert.assertEquals("[foo]", ChangeSet.between(one, none).getWarningsChanged().toString());
+		Assert.assertTrue(ChangeSet.between(one, same).isEmpty());
+		Assert.assertEquals("[foo]", ChangeSet.between(one, reworded).getWarningsChanged().toString());
+	}
+}
@@ -0,0 +1,113 @@
+package org.jenkinsci.confluence.plugins;
+
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class DependencyGraphTest {
+
+	private static DependencyGraph graph;
+
+	@BeforeClass
+	public static void loadFixture() throws Exception {
+		graph = new UpdateCenterSnapshot(UpdateCenterParser.parse(new InputStreamReader(
+				DependencyGraphTest.class.getResourceAsStream("/update-center.json"), "UTF-8")))
+				.getDependencies();
+	}
+
+	private static List<String> dependencies(DependencyGraph graph, String id) {
+		int node = graph.nodeOf(id);
+		List<String> ids = new ArrayList<String>();
+		for (int i = 0; i < graph.getDependencyCount(node); i++)
+			ids.add(graph.getId(graph.getDependency(node, i)));
+		return ids;
+	}
+
+	private static List<String> dependents(DependencyGraph graph, String id) {
+		int node = graph.nodeOf(id);
+		List<String> ids = new ArrayList<String>();
+		for (int i = 0; i < graph.getDependentCount(node); i++)
+			ids.add(graph.getId(graph.getDependent(node, i)));
+		return ids;
+	}
+
+	private static List<String> closure(DependencyGraph graph, String id) {
+		List<String> ids = new ArrayList<String>();
+		for (int node : graph.getClosure(graph.nodeOf(id)))
+			ids.add(graph.getId(node));
+		return ids;
+	}
+
+	@Test
+	public void fixture() {
+		// cpptest lists maven-plugin twice
+		Assert.assertEquals(511, graph.getEdgeCount());
+		// only copyarchiver is depended on without being distributed
+		Assert.assertEquals(791, graph.size());
+		Assert.assertEquals(Arrays.asList("javadoc", "mailer", "token-macro"), dependencies(graph, "maven-plugin"));
+		int maven = graph.nodeOf("maven-plugin");
+		Assert.assertFalse(graph.isOptional(maven, 1));
+		Assert.assertEquals("1.5", graph.getRequiredVersion(maven, 1));
+		Assert.assertTrue(graph.isOptional(maven, 2));
+		Assert.assertTrue(dependencies(graph, "mailer").isEmpty());
+	}
+
+	@Test
+	public void dependents() {
+		Assert.assertEquals(Arrays.asList("join"), dependents(graph, "copyarchiver"));
+		Assert.assertFalse(graph.isDistributed(graph.nodeOf("copyarchiver")));
+		List<String> analysisCore = dependents(graph, "analysis-core");
+		Assert.assertEquals(23, analysisCore.size());
+		Assert.assertEquals("analysis-collector", analysisCore.get(0));
+		Assert.assertTrue(analysisCore.contains("warnings"));
+		Assert.assertTrue(dependents(graph, "php").isEmpty());
+		Assert.assertTrue(graph.nodeOf("no-such-plugin") < 0);
+	}
+
+	@Test
+	public void closureFollowsRequiredDependencies() {
+		Assert.assertEquals(Arrays.asList("javadoc", "mailer"), closure(graph, "maven-plugin"));
+		Assert.assertEquals(Arrays.asList("analysis-core", "ant"), closure(graph, "analysis-collector"));
+		Assert.assertEquals(Arrays.asList("analysis-core", "ant", "checkstyle", "cloverphp", "dry", "htmlpublisher",
+				"javadoc", "jdepend", "mailer", "maven-plugin", "plot", "pmd", "violations", "xunit"),
+				closure(graph, "php"));
+		Assert.assertEquals(0, graph.getClosure(graph.nodeOf("mailer")).length);
+	}
+
+	@Test
+	public void closureIsMemoized() {
+		int php = graph.nodeOf("php");
+		Assert.assertSame(graph.getClosure(php), graph.getClosure(php));
+	}
+
+	@Test
+	public void cyclesRepeatsAndSelfDependencies() {
+		PluginIndex plugins = new PluginIndex.Builder().add("a", null, "1").add("b", null, "1").add("c", null, "1")
+				.build();
+		DependencyGraph cyclic = new DependencyGraph.Builder(plugins).add("a", "b", false, "1")
+				.add("b", "c", false, "1").add("c", "a", false, "1").add("a", "b", true, "2")
+				.add("a", "a", false, "1").add("unknown", "a", false, "1").build();
+		Assert.assertEquals(3, cyclic.getEdgeCount());
+		Assert.assertEquals(Arrays.asList("b"), dependencies(cyclic, "a"));
+		Assert.assertFalse(cyclic.isOptional(0, 0));
+		Assert.assertEquals(Arrays.asList("c"), dependents(cyclic, "a"));
+		Assert.assertEquals(Arrays.asList("b", "c"), closure(cyclic, "a"));
+		Assert.assertEquals(Arrays.asList("a", "b"), closure(cyclic, "c"));
+	}
+
+	@Test
+	public void dependencyChangesAreUpdates() throws Exception {
+		UpdateCenterSnapshot before = ChangeSetTest.snapshot("{'plugins':{'a':{'version':'1','dependencies':"
+				+ "[{'name':'b','optional':false,'version':'1'}]},'b':{'version':'1'}}}");
+		UpdateCenterSnapshot after = ChangeSetTest.snapshot("{'plugins':{'a':{'version':'1','dependencies':"
+				+ "[{'name':'b','optional':true,'version':'1'}]},'b':{'version':'1'}}}");
+		Assert.assertTrue(ChangeSet.between(before, before).isEmpty());
+		Assert.assertTrue(ChangeSet.between(before, after).getUpdated().contains("a"));
+	}
+}
@@ -0,0 +1,150 @@
+package org.jenkinsci.confluence.plugins;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.Assert;
+
+import org.jenkinsci.confluence.plugins.exception.PluginHttpException;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
+
+import com.atlassian.confluence.util.http.HttpRetrievalService;
+import com.atlassian.renderer.RenderContext;
+import com.atlassian.renderer.v2.SubRenderer;
+
+@RunWith(MockitoJUnitRunner.class)
+public class JenkinsPluginDependenciesMacroTest {
+
+	private static final String UPDATE_CENTER = "{'plugins':{"
+			+ "'app':{'title':'App','version':'2.0','dependencies':["
+			+ "{'name':'lib','optional':false,'version':'1.2'},"
+			+ "{'name':'extra','optional':true,'version':'0.5'},"
+			+ "{'name':'gone','optional':false,'version':'1.0'}]},"
+			+ "'lib':{'title':'Lib','version':'1.4','dependencies':[{'name':'base','optional':false,'version':'1.0'}]},"
+			+ "'base':{'title':'Base','version':'1.1'},"
+			+ "'extra':{'title':'Extra','version':'0.9','dependencies':[{'name':'app','optional':true,'version':'2.0'}]}},"
+			+ "'warnings':["
+			+ "{'type':'plugin','name':'base','message':'XSS','url':'https://jenkins.io/1','versions':[{'pattern':'1[.][01]'}]},"
+			+ "{'type':'plugin','name':'extra','message':'CSRF','url':'https://jenkins.io/2','versions':[{'pattern':'0[.].*'}]}]}";
+
+	@Mock
+	private HttpRetrievalService httpRetrievalService = Mockito
+			.mock(HttpRetrievalService.class);
+
+	@Mock
+	private JenkinsRetriever jenkinsRetriever = Mockito
+			.mock(JenkinsRetriever.class);
+
+	@Mock
+	private SubRenderer subRenderer = Mockito.mock(SubRenderer.class);
+
+	@InjectMocks
+	private JenkinsPluginDependenciesMacro macro = new JenkinsPluginDependenciesMacro();
+
+	@Before
+	public void buildUp() throws Exception {
+		Mockito.when(
+				jenkinsRetriever.getUpdateCenter(Mockito
+						.any(HttpRetrievalService.class), Mockito.anyLong())).thenReturn(ChangeSetTest.snapshot(UPDATE_CENTER));
+		Mockito.when(
+				subRenderer.render(Mockito.anyString(),
+						Mockito.any(RenderContext.class))).thenAnswer(
+				new Answer<String>() {
+					public String answer(InvocationOnMock invocation)
+							throws Throwable {
+						return (String) invocation.getArguments()[0];
+					}
+				});
+	}
+
+	private String render(String pluginId) throws Exception {
+		Map<String, String> parameters = new HashMap<String, String>();
+		parameters.put("pluginId", pluginId);
+		return macro.execute(parameters, null, new RenderContext());
+	}
+
+	@Test
+	public void dependenciesDependentsAndInheritedWarnings() throws Exception {
+		String expectedOutput = "h4. Dependencies\n"
+				+ "|| Plugin || Required Version || Current Version ||\n"
+				+ "| [Extra|https://plugins.jenkins.io/extra] (optional) | 0.5 | 0.9 |\n"
+				+ "| [Lib|https://plugins.jenkins.io/lib] | 1.2 | 1.4 |\n"
+				+ "| gone | 1.0 | n/a |\n"
+				+ "\n"
+				+ "h4. Dependents\n"
+				+ "[Extra|https://plugins.jenkins.io/extra] (optional)\n"
+				+ "\n"
+				+ "h4. All Required Plugins\n"
+				+ "{warning}Some of the plugins required by this plugin may not be safe to use. Please review the following warnings before use:\n\n"
+				+ "* [Base|https://plugins.jenkins.io/base]: [XSS|https://jenkins.io/1]\n"
+				+ "\n{warning}\n\n"
+				+ "[Base|https://plugins.jenkins.io/base], [Lib|https://plugins.jenkins.io/lib], gone\n";
+		Assert.assertEquals(expectedOutput, render("app"));
+	}
+
+	@Test
+	public void noDependencies() throws Exception {
+		String expectedOutput = "h4. Dependencies\n"
+				+ "None.\n"
+				+ "\n"
+				+ "h4. Dependents\n"
+				+ "[Lib|https://plugins.jenkins.io/lib]\n"
+				+ "\n"
+				+ "h4. All Required Plugins\n"
+				+ "None.\n";
+		Assert.assertEquals(expectedOutput, render("base"));
+	}
+
+	@Test
+	public void notDistributed() throws Exception {
+		String output = render("gone");
+		Assert.assertTrue(output, output.contains("h4. Dependents\n[App|https://plugins.jenkins.io/app]\n"));
+	}
+
+	@Test
+	public void unknownPlugin() throws Exception {
+		Assert.assertEquals("No information on the dependencies of the plugin 'nope' is available.\n",
+				render("nope"));
+	}
+
+	@Test
+	public void noPluginSpecified() throws Exception {
+		Assert.assertEquals("No plugin specified.",
+				macro.execute(new HashMap<String, String>(), null, new RenderContext()));
+	}
+
+	@Test
+	public void rendersOncePerSnapshot() throws Exception {
+		String first = render("app");
+		Assert.assertSame(first, render("app"));
+		Mockito.verify(subRenderer, Mockito.times(1)).render(
+				Mockito.anyString(), Mockito.any(RenderContext.class));
+	}
+
+	@Test
+	public void loading() throws Exception {
+		Mockito.when(
+				jenkinsRetriever.getUpdateCenter(Mockito
+						.any(HttpRetrievalService.class), Mockito.eq(JenkinsPluginInfoMacro.RENDER_BUDGET)))
+				.thenReturn(null);
+		Assert.assertEquals(AbstractUpdateCenterMacro.LOADING, render("app"));
+		Mockito.verify(subRenderer, Mockito.never()).render(
+				Mockito.anyString(), Mockito.any(RenderContext.class));
+	}
+
+	@Test
+	public void failure() throws Exception {
+		Mockito.when(
+				jenkinsRetriever.getUpdateCenter(Mockito
+						.any(HttpRetrievalService.class), Mockito.anyLong())).thenThrow(new PluginHttpException(503));
+		Assert.assertTrue(render("app").contains("error 503 loading update-center.json"));
+	}
+}
@@ -56,9 +56,9 @@ public class JenkinsPluginInfoMacroTest {
 		JSONParser parser = new JSONParser();
 		JSONObject updateCenter = (JSONObject) parser.parse(jsonString);
 		Mockito.when(
-				jenkinsRetriever.retrieveUpdateCenterDetails(Mockito
-						.any(HttpRetrievalService.class))).thenReturn(
-				updateCenter);
+				jenkinsRetriever.getUpdateCenter(Mockito
+						.any(HttpRetrievalService.class), Mockito.anyLong())).thenReturn(
+				new UpdateCenterSnapshot(updateCenter));
 		// ensure the string to be rendered is returned as-is to the test
 		Mockito.when(
 				subRenderer.render(Mockito.anyString(),
@@ -153,8 +153,8 @@ public class JenkinsPluginInfoMacroTest {
 	public void pluginHttpExceptionThrown() throws MacroException, IOException,
 			PluginHttpException, ParseException {
 		Mockito.when(
-				jenkinsRetriever.retrieveUpdateCenterDetails(Mockito
-						.any(HttpRetrievalService.class))).thenThrow(
+				jenkinsRetriever.getUpdateCenter(Mockito
+						.any(HttpRetrievalService.class), Mockito.anyLong())).thenThrow(
 				new PluginHttpException(300));
 		macro.setHttpRetrievalService(httpRetrievalService);
 		macro.setSubRenderer(subRenderer);
@@ -170,8 +170,8 @@ public class JenkinsPluginInfoMacroTest {
 	public void parseExceptionThrown() throws MacroException, IOException,
 			PluginHttpException, ParseException {
 		Mockito.when(
-				jenkinsRetriever.retrieveUpdateCenterDetails(Mockito
-						.any(HttpRetrievalService.class))).thenThrow(
+				jenkinsRetriever.getUpdateCenter(Mockito
+						.any(HttpRetrievalService.class), Mockito.anyLong())).thenThrow(
 				new ParseException(22341, "ParseException message"));
 		macro.setHttpRetrievalService(httpRetrievalService);
 		macro.setSubRenderer(subRenderer);
@@ -187,8 +187,8 @@ public class JenkinsPluginInfoMacroTest {
 	public void ioExceptionThrown() throws MacroException, IOException,
 			PluginHttpException, ParseException {
 		Mockito.when(
-				jenkinsRetriever.retrieveUpdateCenterDetails(Mockito
-						.any(HttpRetrievalService.class))).thenThrow(
+				jenkinsRetriever.getUpdateCenter(Mockito
+						.any(HttpRetrievalService.class), Mockito.anyLong())).thenThrow(
 				new IOException("IOException message"));
 		macro.setHttpRetrievalService(httpRetrievalService);
 		macro.setSubRenderer(subRenderer);
@@ -249,6 +249,73 @@ public class JenkinsPluginInfoMacroTest {
 		Assert.assertEquals(expectedOutput, output);
 	}
 
+	@Test
+	public void warnings() throws MacroException, IOException,
+			PluginHttpException, ParseException {
+		String json = "{\"plugins\":{\"foo\":{\"title\":\"Foo\",\"version\":\"1.5\"}},\"warnings\":["
+				+ "{\"type\":\"plugin\",\"name\":\"foo\",\"message\":\"Old XSS\",\"url\":\"https://jenkins.io/1\",\"versions\":[{\"pattern\":\"1[.][0-4]\"}]},"
+				+ "{\"type\":\"plugin\",\"name\":\"foo\",\"message\":\"Current CSRF\",\"url\":\"https://jenkins.io/2\",\"versions\":[{\"pattern\":\"1[.][0-5]\"}]}]}";
+		Mockito.when(
+				jenkinsRetriever.getUpdateCenter(Mockito
+						.any(HttpRetrievalService.class), Mockito.anyLong())).thenReturn(
+				new UpdateCenterSnapshot((JSONObject) new JSONParser().parse(json)));
+		Map<String, String> inputMap = new HashMap<String, String>();
+		inputMap.put("pluginId", "foo");
+		String output = macro.execute(inputMap, null, new RenderContext());
+		String expectedOutput = "|| Plugin Information ||\n"
+				+ "| View Foo [on the plugin site|https://plugins.jenkins.io/foo] for more information. |\n"
+				+ "{warning}The current version of this plugin may not be safe to use. Please review the following warnings before use:\n\n"
+				+ "* [Current CSRF|https://jenkins.io/2]\n\n{warning}\n\n"
+				+ "{info}Older versions of this plugin may not be safe to use. Please review the following warnings before using an older version:\n\n"
+				+ "* [Old XSS|https://jenkins.io/1]\n\n{info}\n\n";
+		Assert.assertEquals(expectedOutput, output);
+	}
+
+	@Test
+	public void renderedOutputIsCached() throws MacroException {
+		Map<String, String> inputMap = new HashMap<String, String>();
+		inputMap.put("pluginId", "subversion");
+		String first = macro.execute(inputMap, null, new RenderContext());
+		String second = macro.execute(inputMap, null, new RenderContext());
+		Assert.assertEquals(first, second);
+		Mockito.verify(subRenderer, Mockito.times(1)).render(
+				Mockito.anyString(), Mockito.any(RenderContext.class));
+	}
+
+	@Test
+	public void didYouMean() throws MacroException {
+		Map<String, String> inputMap = new HashMap<String, String>();
+		inputMap.put("pluginId", "subversoin");
+		String output = macro.execute(inputMap, null, new RenderContext());
+		Assert.assertTrue(output, output.contains(
+				"| No information for the plugin 'subversoin' is available. It may have been removed from distribution. |\n"
+				+ "| Did you mean [subversion|https://plugins.jenkins.io/subversion]"));
+		Assert.assertTrue(output, output.endsWith("? |\n"));
+	}
+
+	@Test
+	public void placeholderWhileLoading() throws Exception {
+		Mockito.when(
+				jenkinsRetriever.getUpdateCenter(Mockito
+						.any(HttpRetrievalService.class), Mockito.anyLong())).thenReturn(null);
+		Map<String, String> inputMap = new HashMap<String, String>();
+		inputMap.put("pluginId", "<foo>&bar");
+		String output = macro.execute(inputMap, null, new RenderContext());
+		Assert.assertTrue(output, output.startsWith("<div class=\"jenkins-plugin-info-pending\""));
+		Assert.assertTrue(output, output.contains("Loading information on the plugin &lt;foo&gt;&amp;bar"));
+		Assert.assertTrue(output, output.contains("/plugins/servlet/jenkins-plugin-info?pluginId=%3Cfoo%3E%26bar'"));
+		Mockito.verify(subRenderer, Mockito.never()).render(
+				Mockito.anyString(), Mockito.any(RenderContext.class));
+	}
+
+	@Test
+	public void placeholdersAreDistinct() {
+		String first = JenkinsPluginInfoMacro.placeholder("foo", true);
+		String second = JenkinsPluginInfoMacro.placeholder("foo", true);
+		Assert.assertFalse(first.equals(second));
+		Assert.assertTrue(first, first.contains("pluginId=foo&adopt=true'"));
+	}
+
 	@Test
 	public void noPluginSpecified() throws MacroException {
 		JenkinsPluginInfoMacro macro = new JenkinsPluginInfoMacro();
@@ -0,0 +1,143 @@
+package org.jenkinsci.confluence.plugins;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.Assert;
+
+import org.jenkinsci.confluence.plugins.exception.PluginHttpException;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
+
+import com.atlassian.confluence.util.http.HttpRetrievalService;
+import com.atlassian.renderer.RenderContext;
+import com.atlassian.renderer.v2.SubRenderer;
+import com.atlassian.renderer.v2.macro.MacroException;
+
+@RunWith(MockitoJUnitRunner.class)
+public class JenkinsPluginTableMacroTest {
+
+	private static final String UPDATE_CENTER = "{\"plugins\":{"
+			+ "\"foo\":{\"title\":\"Foo\",\"version\":\"1.5\"},"
+			+ "\"bar\":{\"title\":\"Bar\",\"version\":\"2.0\"}},"
+			+ "\"warnings\":["
+			+ "{\"type\":\"plugin\",\"name\":\"foo\",\"message\":\"Old XSS\",\"url\":\"https://jenkins.io/1\",\"versions\":[{\"pattern\":\"1[.][0-4]\"}]},"
+			+ "{\"type\":\"plugin\",\"name\":\"foo\",\"message\":\"CSRF\",\"url\":\"https://jenkins.io/2\",\"versions\":[{\"pattern\":\"1[.][0-5]\"}]},"
+			+ "{\"type\":\"plugin\",\"name\":\"gone\",\"message\":\"RCE\",\"url\":\"https://jenkins.io/3\",\"versions\":[]}]}";
+
+	@Mock
+	private HttpRetrievalService httpRetrievalService = Mockito
+			.mock(HttpRetrievalService.class);
+
+	@Mock
+	private JenkinsRetriever jenkinsRetriever = Mockito
+			.mock(JenkinsRetriever.class);
+
+	@Mock
+	private SubRenderer subRenderer = Mockito.mock(SubRenderer.class);
+
+	@InjectMocks
+	private JenkinsPluginTableMacro macro = new JenkinsPluginTableMacro();
+
+	@Before
+	public void buildUp() throws IOException, PluginHttpException,
+			ParseException {
+		Mockito.when(
+				jenkinsRetriever.getUpdateCenter(Mockito
+						.any(HttpRetrievalService.class), Mockito.anyLong())).thenReturn(
+				new UpdateCenterSnapshot((JSONObject) new JSONParser()
+						.parse(UPDATE_CENTER)));
+		Mockito.when(
+				subRenderer.render(Mockito.anyString(),
+						Mockito.any(RenderContext.class))).thenAnswer(
+				new Answer<String>() {
+					public String answer(InvocationOnMock invocation)
+							throws Throwable {
+						return (String) invocation.getArguments()[0];
+					}
+				});
+	}
+
+	@Test
+	public void table() throws MacroException {
+		Map<String, String> inputMap = new HashMap<String, String>();
+		inputMap.put("pluginIds", "bar, foo gone,missing,foo");
+		String output = macro.execute(inputMap, null, new RenderContext());
+		String expectedOutput = "|| Plugin || Version || Security Warnings ||\n"
+				+ "| [Bar|https://plugins.jenkins.io/bar] | 2.0 | (/) None |\n"
+				+ "| [Foo|https://plugins.jenkins.io/foo] | 1.5 | (!) [CSRF|https://jenkins.io/2] \\\\ (i) Older versions: [Old XSS|https://jenkins.io/1] |\n"
+				+ "| gone | n/a | Distribution suspended due to unresolved security vulnerabilities. (!) [RCE|https://jenkins.io/3] |\n"
+				+ "| missing | n/a | No information available. It may have been removed from distribution. |\n";
+		Assert.assertEquals(expectedOutput, output);
+	}
+
+	@Test
+	public void manyPluginsRenderOnce() throws Exception {
+		StringBuilder ids = new StringBuilder();
+		for (int i = 0; i < 100; i++) {
+			ids.append(i % 2 == 0 ? "foo" : "bar").append(i).append(' ');
+		}
+		Map<String, String> inputMap = new HashMap<String, String>();
+		inputMap.put("0", ids.toString());
+		String output = macro.execute(inputMap, null, new RenderContext());
+		Assert.assertEquals(101, output.split("\n").length);
+		Mockito.verify(jenkinsRetriever, Mockito.times(1)).getUpdateCenter(
+				Mockito.any(HttpRetrievalService.class), Mockito.anyLong());
+		Mockito.verify(subRenderer, Mockito.times(1)).render(
+				Mockito.anyString(), Mockito.any(RenderContext.class));
+	}
+
+	@Test
+	public void noPluginsSpecified() throws MacroException {
+		Map<String, String> inputMap = new HashMap<String, String>();
+		inputMap.put("pluginIds", " , ");
+		Assert.assertEquals("No plugins specified.",
+				macro.execute(inputMap, null, new RenderContext()));
+	}
+
+	@Test
+	public void missingPluginIdIsEscaped() throws MacroException {
+		Map<String, String> inputMap = new HashMap<String, String>();
+		inputMap.put("pluginIds", "x|[evil|http://example.com]");
+		Assert.assertEquals("|| Plugin || Version || Security Warnings ||\n"
+				+ "| x\\|\\[evil\\|http://example.com\\] | n/a | No information available. It may have been removed from distribution. |\n",
+				macro.execute(inputMap, null, new RenderContext()));
+	}
+
+	@Test
+	public void loading() throws Exception {
+		Mockito.when(
+				jenkinsRetriever.getUpdateCenter(Mockito
+						.any(HttpRetrievalService.class), Mockito.eq(JenkinsPluginInfoMacro.RENDER_BUDGET)))
+				.thenReturn(null);
+		Map<String, String> inputMap = new HashMap<String, String>();
+		inputMap.put("pluginIds", "foo");
+		Assert.assertEquals(AbstractUpdateCenterMacro.LOADING, macro.execute(inputMap, null, new RenderContext()));
+		Mockito.verify(subRenderer, Mockito.never()).render(
+				Mockito.anyString(), Mockito.any(RenderContext.class));
+	}
+
+	@Test
+	public void updateCenterFailure() throws Exception {
+		Mockito.when(
+				jenkinsRetriever.getUpdateCenter(Mockito
+						.any(HttpRetrievalService.class), Mockito.anyLong())).thenThrow(
+				new PluginHttpException(503));
+		Map<String, String> inputMap = new HashMap<String, String>();
+		inputMap.put("pluginIds", "foo");
+		Assert.assertEquals(
+				"h4. Plugin Information\n{warning:title=Cannot Load Update Center}\nerror 503 loading update-center.json\n{warning}\n",
+				macro.execute(inputMap, null, new RenderContext()));
+	}
+}
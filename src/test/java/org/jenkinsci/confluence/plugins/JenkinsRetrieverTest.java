@@ -1,5 +1,6 @@
 package org.jenkinsci.confluence.plugins;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 
@@ -15,14 +16,17 @@ import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PowerMockIgnore;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 
+import com.atlassian.confluence.util.http.HttpRequest;
 import com.atlassian.confluence.util.http.HttpResponse;
 import com.atlassian.confluence.util.http.HttpRetrievalService;
 
 @RunWith(PowerMockRunner.class)
 @PrepareForTest(IOUtils.class)
+@PowerMockIgnore("javax.management.*")
 public class JenkinsRetrieverTest {
 
 	@Mock
@@ -37,13 +41,12 @@ public class JenkinsRetrieverTest {
 		String returnJson = "{" + "\"employees\": [" + "{"
 				+ "\"firstName\": \"Peter\"," + "\"lastName\": \"Jones\"" + "}"
 				+ "]}";
-		PowerMockito.mockStatic(IOUtils.class);
 		HttpResponse response = Mockito.mock(HttpResponse.class);
 		Mockito.when(response.getStatusCode()).thenReturn(200);
 		Mockito.when(httpRetrievalService.get(Mockito.anyString())).thenReturn(
 				response);
-		Mockito.when(IOUtils.toString(Mockito.any(InputStream.class)))
-				.thenReturn(returnJson);
+		Mockito.when(response.getResponse()).thenReturn(
+				new ByteArrayInputStream(returnJson.getBytes()));
 		JSONObject returned = jenkinsRetriever
 				.retrieveUpdateCenterDetails(httpRetrievalService);
 		Assert.assertEquals(1, returned.size());
@@ -56,13 +59,12 @@ public class JenkinsRetrieverTest {
 		String returnJson = "updateCenter.post(" + "{" + "\"employees\": ["
 				+ "{" + "\"firstName\": \"Peter\"," + "\"lastName\": \"Jones\""
 				+ "}" + "]}" + ");";
-		PowerMockito.mockStatic(IOUtils.class);
 		HttpResponse response = Mockito.mock(HttpResponse.class);
 		Mockito.when(response.getStatusCode()).thenReturn(200);
 		Mockito.when(httpRetrievalService.get(Mockito.anyString())).thenReturn(
 				response);
-		Mockito.when(IOUtils.toString(Mockito.any(InputStream.class)))
-				.thenReturn(returnJson);
+		Mockito.when(response.getResponse()).thenReturn(
+				new ByteArrayInputStream(returnJson.getBytes()));
 		JSONObject returned = jenkinsRetriever
 				.retrieveUpdateCenterDetails(httpRetrievalService);
 		Assert.assertEquals(1, returned.size());
@@ -89,6 +91,88 @@ public class JenkinsRetrieverTest {
 		jenkinsRetriever.retrieveUpdateCenterDetails(httpRetrievalService);
 	}
 
+	@Test
+	public void testRetrieveUpdateCenterSnapshotRemembersValidators()
+			throws IOException, PluginHttpException, ParseException {
+		HttpRequest request = Mockito.mock(HttpRequest.class);
+		Mockito.when(httpRetrievalService.getDefaultRequestFor(Mockito.anyString()))
+				.thenReturn(request);
+		HttpResponse response = Mockito.mock(HttpResponse.class);
+		Mockito.when(response.getStatusCode()).thenReturn(200);
+		Mockito.when(response.getResponse()).thenReturn(
+				new ByteArrayInputStream("updateCenter.post({\"plugins\":{}});"
+						.getBytes("UTF-8")));
+		Mockito.when(response.getHeaders("ETag")).thenReturn(
+				new String[] { "\"abc\"" });
+		Mockito.when(response.getHeaders("Last-Modified")).thenReturn(
+				new String[] { "Tue, 13 Aug 2013 10:00:00 GMT" });
+		Mockito.when(httpRetrievalService.get(request)).thenReturn(response);
+
+		UpdateCenterSnapshot snapshot = jenkinsRetriever
+				.retrieveUpdateCenterSnapshot(httpRetrievalService, null);
+		Assert.assertEquals("\"abc\"", snapshot.getEtag());
+		Assert.assertEquals("Tue, 13 Aug 2013 10:00:00 GMT",
+				snapshot.getLastModified());
+		Mockito.verify(request, Mockito.never()).setHeader(
+				Mockito.anyString(), Mockito.anyString());
+		Mockito.verify(response).finish();
+	}
+
+	@Test
+	public void testRetrieveUpdateCenterSnapshotDecodesUtf8()
+			throws IOException, PluginHttpException, ParseException {
+		HttpRequest request = Mockito.mock(HttpRequest.class);
+		Mockito.when(httpRetrievalService.getDefaultRequestFor(Mockito.anyString()))
+				.thenReturn(request);
+		HttpResponse response = Mockito.mock(HttpResponse.class);
+		Mockito.when(response.getStatusCode()).thenReturn(200);
+		Mockito.when(response.getResponse()).thenReturn(
+				new ByteArrayInputStream("updateCenter.post({\"plugins\":{\"foo\":{\"title\":\"Fa\u00e7ade \u2013 \u65e5\u672c\"}}});"
+						.getBytes("UTF-8")));
+		Mockito.when(httpRetrievalService.get(request)).thenReturn(response);
+
+		PluginIndex plugins = jenkinsRetriever.retrieveUpdateCenterSnapshot(
+				httpRetrievalService, null).getPlugins();
+		Assert.assertEquals("Fa\u00e7ade \u2013 \u65e5\u672c",
+				plugins.getTitle(plugins.indexOf("foo")));
+	}
+
+	@Test
+	public void testRetrieveUpdateCenterSnapshotNotModified()
+			throws IOException, PluginHttpException, ParseException {
+		UpdateCenterSnapshot previous = new UpdateCenterSnapshot(
+				new JSONObject(), 0, "\"abc\"", "Tue, 13 Aug 2013 10:00:00 GMT");
+		HttpRequest request = Mockito.mock(HttpRequest.class);
+		Mockito.when(httpRetrievalService.getDefaultRequestFor(Mockito.anyString()))
+				.thenReturn(request);
+		HttpResponse response = Mockito.mock(HttpResponse.class);
+		Mockito.when(response.getStatusCode()).thenReturn(304);
+		Mockito.when(httpRetrievalService.get(request)).thenReturn(response);
+
+		UpdateCenterSnapshot snapshot = jenkinsRetriever
+				.retrieveUpdateCenterSnapshot(httpRetrievalService, previous);
+		Mockito.verify(request).setHeader("If-None-Match", "\"abc\"");
+		Mockito.verify(request).setHeader("If-Modified-Since",
+				"Tue, 13 Aug 2013 10:00:00 GMT");
+		Mockito.verify(response, Mockito.never()).getResponse();
+		Mockito.verify(response).finish();
+		Assert.assertSame(previous.getPlugins(), snapshot.getPlugins());
+		Assert.assertFalse(snapshot.isOlderThan(60000));
+	}
+
+	@Test(expected = PluginHttpException.class)
+	public void testRetrieveUpdateCenterSnapshotUnexpectedNotModified()
+			throws IOException, PluginHttpException, ParseException {
+		HttpRequest request = Mockito.mock(HttpRequest.class);
+		Mockito.when(httpRetrievalService.getDefaultRequestFor(Mockito.anyString()))
+				.thenReturn(request);
+		HttpResponse response = Mockito.mock(HttpResponse.class);
+		Mockito.when(response.getStatusCode()).thenReturn(304);
+		Mockito.when(httpRetrievalService.get(request)).thenReturn(response);
+		// nothing to fall back to, so a 304 is an error
+		jenkinsRetriever.retrieveUpdateCenterSnapshot(httpRetrievalService, null);
+	}
+
 	@Test
 	public void testRetrieveStatsResponseSuccess() throws IOException,
 			PluginHttpException {
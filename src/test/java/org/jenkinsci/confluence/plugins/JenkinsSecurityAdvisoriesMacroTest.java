@@ -0,0 +1,149 @@
+package org.jenkinsci.confluence.plugins;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import junit.framework.Assert;
+
+import org.jenkinsci.confluence.plugins.exception.PluginHttpException;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
+
+import com.atlassian.confluence.util.http.HttpRetrievalService;
+import com.atlassian.renderer.RenderContext;
+import com.atlassian.renderer.v2.SubRenderer;
+
+@RunWith(MockitoJUnitRunner.class)
+public class JenkinsSecurityAdvisoriesMacroTest {
+
+	private static final String UPDATE_CENTER = "{\"plugins\":{"
+			+ "\"foo\":{\"title\":\"Foo\",\"version\":\"1.5\"},"
+			+ "\"bar\":{\"title\":\"Bar\",\"version\":\"2.0\"},"
+			+ "\"baz\":{\"title\":\"Baz\",\"version\":\"3.0\"}},"
+			+ "\"warnings\":["
+			+ "{\"type\":\"plugin\",\"name\":\"foo\",\"message\":\"Old XSS\",\"url\":\"https://jenkins.io/1\",\"versions\":[{\"pattern\":\"1[.][0-4]\"}]},"
+			+ "{\"type\":\"plugin\",\"name\":\"foo\",\"message\":\"CSRF\",\"url\":\"https://jenkins.io/2\",\"versions\":[{\"pattern\":\"1[.][0-5]\"}]},"
+			+ "{\"type\":\"plugin\",\"name\":\"bar\",\"message\":\"XXE\",\"url\":\"https://jenkins.io/4\",\"versions\":[{\"pattern\":\"1[.].*\"}]},"
+			+ "{\"type\":\"plugin\",\"name\":\"gone\",\"message\":\"RCE\",\"url\":\"https://jenkins.io/3\",\"versions\":[]}]}";
+
+	@Mock
+	private HttpRetrievalService httpRetrievalService = Mockito
+			.mock(HttpRetrievalService.class);
+
+	@Mock
+	private JenkinsRetriever jenkinsRetriever = Mockito
+			.mock(JenkinsRetriever.class);
+
+	@Mock
+	private SubRenderer subRenderer = Mockito.mock(SubRenderer.class);
+
+	@InjectMocks
+	private JenkinsSecurityAdvisoriesMacro macro = new JenkinsSecurityAdvisoriesMacro();
+
+	private UpdateCenterSnapshot snapshot;
+
+	@Before
+	public void buildUp() throws IOException, PluginHttpException,
+			ParseException {
+		snapshot = new UpdateCenterSnapshot((JSONObject) new JSONParser()
+				.parse(UPDATE_CENTER));
+		Mockito.when(
+				jenkinsRetriever.getUpdateCenter(Mockito
+						.any(HttpRetrievalService.class), Mockito.anyLong())).thenReturn(snapshot);
+		Mockito.when(
+				subRenderer.render(Mockito.anyString(),
+						Mockito.any(RenderContext.class))).thenAnswer(
+				new Answer<String>() {
+					public String answer(InvocationOnMock invocation)
+							throws Throwable {
+						return (String) invocation.getArguments()[0];
+					}
+				});
+	}
+
+	@Test
+	public void view() {
+		SecurityAdvisoryView view = snapshot.getAdvisories();
+		Assert.assertEquals(Arrays.asList("foo"), view.getAffected());
+		Assert.assertEquals(Arrays.asList("gone"), view.getSuspended());
+		Assert.assertEquals(Arrays.asList("bar"), view.getOlderOnly());
+		Assert.assertSame(view, snapshot.revalidated().getAdvisories());
+	}
+
+	@Test
+	public void report() throws Exception {
+		String output = macro.execute(new HashMap<String, String>(), null,
+				new RenderContext());
+		String expectedOutput = "h4. Plugins with warnings for the current version\n"
+				+ "|| Plugin || Version || Security Warnings ||\n"
+				+ "| [Foo|https://plugins.jenkins.io/foo] | 1.5 | [CSRF|https://jenkins.io/2] |\n"
+				+ "\n"
+				+ "h4. Plugins suspended from distribution\n"
+				+ "|| Plugin || Security Warnings ||\n"
+				+ "| gone | [RCE|https://jenkins.io/3] |\n"
+				+ "\n"
+				+ "h4. Plugins with warnings for older versions only\n"
+				+ "|| Plugin || Version || Security Warnings ||\n"
+				+ "| [Bar|https://plugins.jenkins.io/bar] | 2.0 | [XXE|https://jenkins.io/4] |\n";
+		Assert.assertEquals(expectedOutput, output);
+	}
+
+	@Test
+	public void pluginIdsAreEscaped() throws Exception {
+		Mockito.when(
+				jenkinsRetriever.getUpdateCenter(Mockito
+						.any(HttpRetrievalService.class), Mockito.anyLong())).thenReturn(
+				new UpdateCenterSnapshot((JSONObject) new JSONParser().parse("{\"warnings\":["
+						+ "{\"type\":\"plugin\",\"name\":\"a|[b]\",\"message\":\"RCE\",\"url\":\"https://jenkins.io/3\",\"versions\":[]},"
+						+ "{\"type\":\"plugin\",\"name\":\"c|d\",\"message\":\"XSS\",\"url\":\"https://jenkins.io/5\",\"versions\":[{\"pattern\":\"0[.]1\"}]}]}")));
+		String output = macro.execute(new HashMap<String, String>(), null,
+				new RenderContext());
+		Assert.assertTrue(output, output.contains("| a\\|\\[b\\] | [RCE|https://jenkins.io/3] |\n"));
+		Assert.assertTrue(output, output.contains("| c\\|d | "));
+	}
+
+	@Test
+	public void emptySections() throws Exception {
+		Mockito.when(
+				jenkinsRetriever.getUpdateCenter(Mockito
+						.any(HttpRetrievalService.class), Mockito.anyLong())).thenReturn(
+				new UpdateCenterSnapshot(new JSONObject()));
+		String output = macro.execute(new HashMap<String, String>(), null,
+				new RenderContext());
+		Assert.assertEquals(3, output.split("None\\.\n").length);
+	}
+
+	@Test
+	public void loading() throws Exception {
+		Mockito.when(
+				jenkinsRetriever.getUpdateCenter(Mockito
+						.any(HttpRetrievalService.class), Mockito.eq(JenkinsPluginInfoMacro.RENDER_BUDGET)))
+				.thenReturn(null);
+		Assert.assertEquals(AbstractUpdateCenterMacro.LOADING, macro.execute(new HashMap<String, String>(), null,
+				new RenderContext()));
+		Mockito.verify(subRenderer, Mockito.never()).render(
+				Mockito.anyString(), Mockito.any(RenderContext.class));
+	}
+
+	@Test
+	public void rendersOncePerSnapshot() throws Exception {
+		String first = macro.execute(new HashMap<String, String>(), null,
+				new RenderContext());
+		String second = macro.execute(new HashMap<String, String>(), null,
+				new RenderContext());
+		Assert.assertSame(first, second);
+		Mockito.verify(subRenderer, Mockito.times(1)).render(
+				Mockito.anyString(), Mockito.any(RenderContext.class));
+	}
+}
@@ -0,0 +1,72 @@
+package org.jenkinsci.confluence.plugins;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+public class JsonpReaderTest {
+
+	@Test
+	public void stripsEnvelope() throws IOException {
+		Assert.assertEquals("{\"a\":1}", strip("updateCenter.post({\"a\":1});"));
+		Assert.assertEquals("\n{\"a\":1}\n", strip("  updateCenter.post(\n{\"a\":1}\n);\n"));
+	}
+
+	@Test
+	public void plainJsonPassesThrough() throws IOException {
+		Assert.assertEquals("{\"a\":\"x); y;\"}", strip("{\"a\":\"x); y;\"}"));
+		Assert.assertEquals("{}", strip("\n\t{}  \n"));
+		Assert.assertEquals("", strip(""));
+		Assert.assertEquals("", strip("   "));
+		Assert.assertEquals("upd", strip("upd"));
+	}
+
+	@Test
+	public void onlyTheLastSuffixIsDropped() throws IOException {
+		Assert.assertEquals("{\"a\":\");\"});", strip("updateCenter.post({\"a\":\");\"}););"));
+	}
+
+	@Test
+	public void sameResultForAnyChunking() throws IOException {
+		String body = "updateCenter.post(\n{\"m\":\"a ) ; b\",\"n\":[1, 2 ,3]}  \n);  \n";
+		String expected = strip(body);
+		for (int chunk = 1; chunk < 8; chunk++) {
+			Assert.assertEquals("chunk " + chunk, expected, strip(new TrickleReader(body, chunk), chunk));
+		}
+	}
+
+	private static String strip(String body) throws IOException {
+		return strip(new StringReader(body), 4096);
+	}
+
+	private static String strip(Reader in, int chunk) throws IOException {
+		Reader r = new JsonpReader(in);
+		StringBuilder out = new StringBuilder();
+		char[] buf = new char[chunk];
+		int n;
+		while ((n = r.read(buf, 0, chunk)) != -1)
+			out.append(buf, 0, n);
+		return out.toString();
+	}
+
+	/**
+	 * Returns at most a few characters per call, like a slow network.
+	 */
+	private static final class TrickleReader extends StringReader {
+		private final int max;
+
+		TrickleReader(String s, int max) {
+			super(s);
+			this.max = max;
+		}
+
+		@Override
+		public int read(char[] cbuf, int off, int len) throws IOException {
+			return super.read(cbuf, off, Math.min(len, max));
+		}
+	}
+}
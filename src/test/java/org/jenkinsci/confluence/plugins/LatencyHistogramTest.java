@@ -0,0 +1,42 @@
+package org.jenkinsci.confluence.plugins;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+	@Test
+	public void bucketsCoverTheirValues() {
+		for (long v : new long[] { 0, 1, 7, 8, 9, 15, 16, 17, 1000, 123456789, Long.MAX_VALUE / 3 }) {
+			int bucket = LatencyHistogram.bucketOf(v);
+			Assert.assertTrue(v + " <= upper bound", v <= LatencyHistogram.upperBound(bucket));
+			if (bucket > 0)
+				Assert.assertTrue(v + " > previous bound", v > LatencyHistogram.upperBound(bucket - 1));
+		}
+	}
+
+	@Test
+	public void percentiles() {
+		LatencyHistogram h = new LatencyHistogram();
+		Assert.assertEquals(0.0, h.getP99Millis());
+		for (int i = 1; i <= 1000; i++)
+			h.record(i * 1000000L); // 1..1000 ms
+		Assert.assertEquals(1000, h.getCount());
+		Assert.assertEquals(500.5, h.getMeanMillis(), 0.001);
+		Assert.assertEquals(1000.0, h.getMaxMillis(), 0.001);
+		assertWithinBucket(500, h.getP50Millis());
+		assertWithinBucket(990, h.getP99Millis());
+		assertWithinBucket(999, h.getP999Millis());
+
+		h.reset();
+		Assert.assertEquals(0, h.getCount());
+		Assert.assertEquals(0.0, h.getMaxMillis());
+	}
+
+	private static void assertWithinBucket(double expected, double actual) {
+		Assert.assertTrue(actual + " >= " + expected, actual >= expected);
+		Assert.assertTrue(actual + " close to " + expected,
+				actual <= expected * (1 + 1.0 / LatencyHistogram.SUB_BUCKETS));
+	}
+}
@@ -0,0 +1,136 @@
+package org.jenkinsci.confluence.plugins;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.Executor;
+
+import junit.framework.Assert;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.jenkinsci.confluence.plugins.exception.PluginHttpException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class LocalUpdateCenterSourceTest {
+
+	private static final Executor SAME_THREAD = new Executor() {
+		public void execute(Runnable command) {
+			command.run();
+		}
+	};
+
+	private File directory;
+
+	@Before
+	public void createDirectory() throws IOException {
+		directory = File.createTempFile("update-center", "");
+		directory.delete();
+		directory.mkdir();
+		copyFixture(new File(directory, "update-center.json"));
+	}
+
+	@After
+	public void deleteDirectory() throws IOException {
+		FileUtils.deleteDirectory(directory);
+	}
+
+	private static void copyFixture(File to) throws IOException {
+		InputStream in = LocalUpdateCenterSourceTest.class
+				.getResourceAsStream("/update-center.json");
+		OutputStream out = new FileOutputStream(to);
+		try {
+			IOUtils.copy(in, out);
+		} finally {
+			in.close();
+			out.close();
+		}
+	}
+
+	private void replaceUpdateCenter(String json) throws IOException {
+		File temp = new File(directory, "update-center.json.tmp");
+		FileUtils.writeStringToFile(temp, json, "UTF-8");
+		File target = new File(directory, "update-center.json");
+		target.delete();
+		Assert.assertTrue(temp.renameTo(target));
+	}
+
+	@Test
+	public void loadsFile() throws Exception {
+		LocalUpdateCenterSource source = new LocalUpdateCenterSource(new File(
+				directory, "update-center.json"));
+		UpdateCenterSnapshot snapshot = source.load((UpdateCenterSnapshot) null);
+		Assert.assertEquals(790, snapshot.getPlugins().size());
+		int ant = snapshot.getPlugins().indexOf("ant");
+		Assert.assertEquals("1.2", snapshot.getPlugins().getVersion(ant));
+	}
+
+	@Test
+	public void unchangedFileIsRevalidated() throws Exception {
+		LocalUpdateCenterSource source = new LocalUpdateCenterSource(directory);
+		UpdateCenterSnapshot first = source.load((UpdateCenterSnapshot) null);
+		UpdateCenterSnapshot second = source.load(first);
+		Assert.assertEquals(first.getGeneration(), second.getGeneration());
+	}
+
+	@Test
+	public void replacedFileIsReloaded() throws Exception {
+		LocalUpdateCenterSource source = new LocalUpdateCenterSource(directory);
+		UpdateCenterSnapshot first = source.load((UpdateCenterSnapshot) null);
+		replaceUpdateCenter("updateCenter.post({\"plugins\":{}});");
+		UpdateCenterSnapshot second = source.load(first);
+		Assert.assertTrue(first.getGeneration() != second.getGeneration());
+		Assert.assertEquals(0, second.getPlugins().size());
+	}
+
+	@Test
+	public void watchingRefreshesCacheWhenFileIsReplaced() throws Exception {
+		LocalUpdateCenterSource source = new LocalUpdateCenterSource(directory);
+		UpdateCenterCache cache = new UpdateCenterCache(60000, SAME_THREAD);
+		Assert.assertEquals(790, cache.get(source).getPlugins().size());
+		source.startWatching(cache);
+		try {
+			replaceUpdateCenter("{\"plugins\":{}}");
+			long deadline = System.currentTimeMillis() + 30000;
+			while (cache.peek().getPlugins().size() != 0
+					&& System.currentTimeMillis() < deadline) {
+				Thread.sleep(50);
+			}
+			Assert.assertEquals(0, cache.peek().getPlugins().size());
+		} finally {
+			source.stopWatching();
+		}
+	}
+
+	@Test
+	public void readsStatsFromDirectory() throws Exception {
+		File stats = new File(directory, "plugin-installation-trend");
+		stats.mkdir();
+		FileUtils.writeStringToFile(new File(stats, "ant.stats.json"),
+				"{\"installations\":{}}\n", "UTF-8");
+		LocalUpdateCenterSource source = new LocalUpdateCenterSource(directory);
+		Assert.assertEquals("{\"installations\":{}}", source.load("ant"));
+		try {
+			source.load("subversion");
+			Assert.fail();
+		} catch (PluginHttpException e) {
+			Assert.assertEquals(404, e.getStatusCode());
+		}
+	}
+
+	@Test
+	public void noStatsWithoutDirectory() throws Exception {
+		LocalUpdateCenterSource source = new LocalUpdateCenterSource(new File(
+				directory, "update-center.json"));
+		try {
+			source.load("ant");
+			Assert.fail();
+		} catch (PluginHttpException e) {
+			Assert.assertEquals(404, e.getStatusCode());
+		}
+	}
+}
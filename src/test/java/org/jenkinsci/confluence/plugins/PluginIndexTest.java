@@ -0,0 +1,49 @@
+package org.jenkinsci.confluence.plugins;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+
+import junit.framework.Assert;
+
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+import org.junit.Test;
+
+public class PluginIndexTest {
+
+	@Test
+	public void matchesUpdateCenter() throws IOException, ParseException {
+		JSONObject plugins = (JSONObject) ((JSONObject) new JSONParser()
+				.parse(new InputStreamReader(PluginIndexTest.class
+						.getResourceAsStream("/update-center.json"), "UTF-8")))
+				.get("plugins");
+		PluginIndex index = PluginIndex.fromJSON(plugins);
+		Assert.assertEquals(plugins.size(), index.size());
+		for (int i = 0; i < index.size(); i++) {
+			JSONObject plugin = (JSONObject) plugins.get(index.getId(i));
+			Assert.assertEquals(plugin.get("title"), index.getTitle(i));
+			Assert.assertEquals(plugin.get("version"), index.getVersion(i));
+			Assert.assertEquals(i, index.indexOf(index.getId(i)));
+			if (i > 0) {
+				Assert.assertTrue(index.getId(i - 1).compareTo(index.getId(i)) < 0);
+			}
+		}
+		int subversion = index.indexOf("subversion");
+		Assert.assertEquals("Subversion Plugin", index.getTitle(subversion));
+		Assert.assertFalse(index.contains("does-not-exist"));
+	}
+
+	@Test
+	public void sharesRepeatedValues() {
+		PluginIndex index = new PluginIndex.Builder()
+				.add("b", "B", new String("1.0"))
+				.add("a", null, new String("1.0"))
+				.build();
+		Assert.assertEquals("a", index.getId(0));
+		Assert.assertNull(index.getTitle(0));
+		Assert.assertSame(index.getVersion(0), index.getVersion(1));
+		Assert.assertTrue(index.indexOf("c") < 0);
+		Assert.assertEquals(0, PluginIndex.EMPTY.size());
+	}
+}
@@ -0,0 +1,80 @@
+package org.jenkinsci.confluence.plugins;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+
+import junit.framework.Assert;
+
+import org.jenkinsci.confluence.plugins.exception.PluginHttpException;
+import org.junit.Test;
+
+public class PluginInfoMetricsTest {
+
+	@Test
+	public void errorsByTypeAndStatus() {
+		PluginInfoMetrics metrics = new PluginInfoMetrics();
+		metrics.recordError(new PluginHttpException(404));
+		metrics.recordError(new PluginHttpException(404));
+		metrics.recordError(new PluginHttpException(503));
+		metrics.recordError(new IOException());
+		Assert.assertEquals("{IOException=1, PluginHttpException 404=2, PluginHttpException 503=1}",
+				metrics.getErrors().toString());
+	}
+
+	@Test
+	public void hitRatio() {
+		PluginInfoMetrics metrics = new PluginInfoMetrics();
+		Assert.assertEquals(0.0, metrics.getRenderCacheHitRatio());
+		metrics.recordRenderCache(true);
+		metrics.recordRenderCache(true);
+		metrics.recordRenderCache(true);
+		metrics.recordRenderCache(false);
+		Assert.assertEquals(0.75, metrics.getRenderCacheHitRatio());
+		metrics.reset();
+		Assert.assertEquals(0, metrics.getRenderCacheHits());
+	}
+
+	@Test
+	public void unregisterLeavesReplacementAlone() throws Exception {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName name = new ObjectName(PluginInfoMetrics.OBJECT_NAME);
+		PluginInfoMetrics old = PluginInfoMetrics.getInstance();
+		PluginInfoMetrics replacement = new PluginInfoMetrics();
+		old.register();
+		replacement.register();
+		try {
+			old.unregister();
+			Assert.assertTrue(server.isRegistered(name));
+			replacement.unregister();
+			Assert.assertFalse(server.isRegistered(name));
+		} finally {
+			old.register();
+		}
+	}
+
+	@Test
+	public void exposedOverJmx() throws Exception {
+		PluginInfoMetrics metrics = new PluginInfoMetrics();
+		metrics.recordRender(2000000L);
+		metrics.recordError(new PluginHttpException(500));
+
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName name = new ObjectName(PluginInfoMetrics.OBJECT_NAME + ",test=true");
+		server.registerMBean(metrics, name);
+		try {
+			CompositeData render = (CompositeData) server.getAttribute(name, "Render");
+			Assert.assertEquals(1L, render.get("count"));
+			Assert.assertEquals(2.0, (Double) render.get("maxMillis"), 0.001);
+			TabularData errors = (TabularData) server.getAttribute(name, "Errors");
+			Assert.assertNotNull(errors.get(new Object[] { "PluginHttpException 500" }));
+			Assert.assertNotNull(server.getAttribute(name, "SnapshotAgeMillis"));
+		} finally {
+			server.unregisterMBean(name);
+		}
+	}
+}
@@ -0,0 +1,116 @@
+package org.jenkinsci.confluence.plugins;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import junit.framework.Assert;
+
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.atlassian.confluence.util.http.HttpRetrievalService;
+import com.atlassian.renderer.RenderContext;
+import com.atlassian.renderer.v2.SubRenderer;
+
+public class PluginInfoServletTest {
+
+	private JenkinsRetriever jenkinsRetriever;
+
+	private PluginInfoServlet servlet;
+
+	private HttpServletResponse response;
+
+	private StringWriter body;
+
+	@Before
+	public void buildUp() throws Exception {
+		jenkinsRetriever = Mockito.mock(JenkinsRetriever.class);
+		SubRenderer subRenderer = Mockito.mock(SubRenderer.class);
+		Mockito.when(
+				subRenderer.render(Mockito.anyString(),
+						Mockito.any(RenderContext.class))).thenAnswer(
+				new Answer<String>() {
+					public String answer(InvocationOnMock invocation) {
+						return (String) invocation.getArguments()[0];
+					}
+				});
+		JenkinsPluginInfoMacro macro = new JenkinsPluginInfoMacro();
+		macro.setJenkinsRetriever(jenkinsRetriever);
+		servlet = new PluginInfoServlet(macro);
+		servlet.setSubRenderer(subRenderer);
+
+		response = Mockito.mock(HttpServletResponse.class);
+		body = new StringWriter();
+		Mockito.when(response.getWriter()).thenReturn(new PrintWriter(body));
+	}
+
+	private static HttpServletRequest request(String pluginId) {
+		HttpServletRequest request = Mockito.mock(HttpServletRequest.class);
+		Mockito.when(request.getParameter("pluginId")).thenReturn(pluginId);
+		return request;
+	}
+
+	@Test
+	public void servesInfoBox() throws Exception {
+		UpdateCenterSnapshot snapshot = new UpdateCenterSnapshot((JSONObject) new JSONParser()
+				.parse("{\"plugins\":{\"foo\":{\"title\":\"Foo\",\"version\":\"1.0\"}}}"));
+		Mockito.when(
+				jenkinsRetriever.getUpdateCenter(Mockito.any(HttpRetrievalService.class),
+						Mockito.eq(PluginInfoServlet.WAIT))).thenReturn(snapshot);
+		servlet.doGet(request("foo"), response);
+		// rendered without a page, so not shared with page renders
+		Assert.assertNull(RenderCache.getInstance().get(snapshot, RenderCache.key(new RenderContext(), "foo", false, null)));
+		Mockito.verify(response).setContentType("text/html; charset=UTF-8");
+		Assert.assertEquals("|| Plugin Information ||\n"
+				+ "| View Foo [on the plugin site|https://plugins.jenkins.io/foo] for more information. |\n",
+				body.toString());
+	}
+
+	@Test
+	public void ignoresAdoptMessage() throws Exception {
+		Mockito.when(
+				jenkinsRetriever.getUpdateCenter(Mockito.any(HttpRetrievalService.class),
+						Mockito.anyLong())).thenReturn(
+				new UpdateCenterSnapshot((JSONObject) new JSONParser()
+						.parse("{\"plugins\":{\"foo\":{\"title\":\"Foo\",\"version\":\"1.0\"}}}")));
+		HttpServletRequest request = request("foo");
+		Mockito.when(request.getParameter("adopt")).thenReturn("true");
+		Mockito.when(request.getParameter("adopt-message")).thenReturn("{html}<script>{html}");
+		servlet.doGet(request, response);
+		Assert.assertFalse(body.toString(), body.toString().contains("script"));
+		Assert.assertTrue(body.toString(), body.toString().contains("Want to help improve this plugin?"));
+	}
+
+	@Test
+	public void stillLoading() throws Exception {
+		Mockito.when(
+				jenkinsRetriever.getUpdateCenter(Mockito.any(HttpRetrievalService.class),
+						Mockito.anyLong())).thenReturn(null);
+		servlet.doGet(request("foo"), response);
+		Mockito.verify(response).setHeader("Retry-After", "5");
+		Mockito.verify(response).sendError(Mockito.eq(503), Mockito.anyString());
+		Assert.assertEquals("", body.toString());
+	}
+
+	@Test
+	public void noPluginSpecified() throws Exception {
+		servlet.doGet(request(null), response);
+		Mockito.verify(response).sendError(Mockito.eq(400), Mockito.anyString());
+	}
+
+	@Test
+	public void rejectsMarkupInPluginId() throws Exception {
+		servlet.doGet(request("x[evil|http://example.com]"), response);
+		Mockito.verify(response).sendError(Mockito.eq(400), Mockito.anyString());
+		Mockito.verifyZeroInteractions(jenkinsRetriever);
+		Assert.assertEquals("", body.toString());
+	}
+}
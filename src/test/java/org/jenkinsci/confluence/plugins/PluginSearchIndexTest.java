@@ -0,0 +1,77 @@
+package org.jenkinsci.confluence.plugins;
+
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class PluginSearchIndexTest {
+
+	private static UpdateCenterSnapshot snapshot;
+
+	@BeforeClass
+	public static void loadFixture() throws Exception {
+		snapshot = new UpdateCenterSnapshot(UpdateCenterParser.parse(new InputStreamReader(
+				PluginSearchIndexTest.class.getResourceAsStream("/update-center.json"), "UTF-8")));
+	}
+
+	private static List<String> ids(List<Integer> plugins) {
+		List<String> ids = new ArrayList<String>();
+		for (int plugin : plugins)
+			ids.add(snapshot.getPlugins().getId(plugin));
+		return ids;
+	}
+
+	@Test
+	public void prefixOfIdComesFirst() {
+		List<String> ids = ids(snapshot.getSearchIndex().search("subv", 5));
+		Assert.assertEquals("subversion", ids.get(0));
+		// titled "Subversion Merge ..."
+		Assert.assertTrue(ids.toString(), ids.contains("svnmerge"));
+	}
+
+	@Test
+	public void exactIdFirst() {
+		Assert.assertEquals("ant", ids(snapshot.getSearchIndex().search("ant", 10)).get(0));
+	}
+
+	@Test
+	public void titleWords() {
+		PluginSearchIndex index = new PluginSearchIndex(new PluginIndex.Builder()
+				.add("foo", "The Foo Reporter", "1").add("bar", "Bar", "1").build());
+		Assert.assertEquals(Arrays.asList(1), index.search("REPO", 10));
+		Assert.assertEquals(Arrays.asList(1), index.search("the f", 10));
+		Assert.assertTrue(index.search("", 10).isEmpty());
+		Assert.assertTrue(index.search("zzz", 10).isEmpty());
+	}
+
+	@Test
+	public void limit() {
+		Assert.assertEquals(3, snapshot.getSearchIndex().search("a", 3).size());
+	}
+
+	@Test
+	public void suggestsSimilarIds() {
+		Assert.assertEquals("subversion", ids(snapshot.getSearchIndex().suggest("subversoin", 3)).get(0));
+		Assert.assertEquals("subversion", ids(snapshot.getSearchIndex().suggest("Subversion-plugin", 3)).get(0));
+		Assert.assertFalse(ids(snapshot.getSearchIndex().suggest("subversion", 3)).contains("subversion"));
+		Assert.assertTrue(snapshot.getSearchIndex().suggest("qqqqqqqq", 3).isEmpty());
+	}
+
+	@Test
+	public void fuzzyMatchesFillUpSearch() {
+		Assert.assertTrue(ids(snapshot.getSearchIndex().search("subversoin", 5)).contains("subversion"));
+	}
+
+	@Test
+	public void trigrams() {
+		Assert.assertEquals(Arrays.asList("^ab", "abc", "bc$"), Arrays.asList(PluginSearchIndex.trigramsOf("ABC")));
+		Assert.assertEquals(Arrays.asList("^a$"), Arrays.asList(PluginSearchIndex.trigramsOf("a")));
+		Assert.assertEquals(Arrays.asList("^aa", "aaa", "aa$"), Arrays.asList(PluginSearchIndex.trigramsOf("aaaaa")));
+	}
+}
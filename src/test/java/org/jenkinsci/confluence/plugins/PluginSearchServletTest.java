@@ -0,0 +1,93 @@
+package org.jenkinsci.confluence.plugins;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import junit.framework.Assert;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import com.atlassian.confluence.util.http.HttpRetrievalService;
+
+public class PluginSearchServletTest {
+
+	private JenkinsRetriever jenkinsRetriever;
+
+	private PluginSearchServlet servlet;
+
+	private HttpServletResponse response;
+
+	private StringWriter body;
+
+	@Before
+	public void buildUp() throws Exception {
+		jenkinsRetriever = Mockito.mock(JenkinsRetriever.class);
+		Mockito.when(
+				jenkinsRetriever.getUpdateCenter(Mockito.any(HttpRetrievalService.class),
+						Mockito.anyLong())).thenReturn(
+				new UpdateCenterSnapshot((JSONObject) new JSONParser()
+						.parse("{\"plugins\":{\"git\":{\"title\":\"Git\",\"version\":\"2.0\"},"
+								+ "\"git-client\":{\"title\":\"Git Client\",\"version\":\"1.0\"},"
+								+ "\"subversion\":{\"title\":\"Subversion\",\"version\":\"1.50\"}}}")));
+		servlet = new PluginSearchServlet(jenkinsRetriever);
+		response = Mockito.mock(HttpServletResponse.class);
+		body = new StringWriter();
+		Mockito.when(response.getWriter()).thenReturn(new PrintWriter(body));
+	}
+
+	private static HttpServletRequest request(String q, String limit) {
+		HttpServletRequest request = Mockito.mock(HttpServletRequest.class);
+		Mockito.when(request.getParameter("q")).thenReturn(q);
+		Mockito.when(request.getParameter("limit")).thenReturn(limit);
+		return request;
+	}
+
+	@Test
+	public void search() throws Exception {
+		servlet.doGet(request("gi", null), response);
+		Mockito.verify(response).setContentType("application/json; charset=UTF-8");
+		JSONArray result = (JSONArray) new JSONParser().parse(body.toString());
+		Assert.assertEquals(2, result.size());
+		JSONObject first = (JSONObject) result.get(0);
+		Assert.assertEquals("git", first.get("id"));
+		Assert.assertEquals("Git", first.get("title"));
+		Assert.assertEquals("2.0", first.get("version"));
+		Assert.assertEquals("git-client", ((JSONObject) result.get(1)).get("id"));
+	}
+
+	@Test
+	public void limit() throws Exception {
+		servlet.doGet(request("gi", "1"), response);
+		Assert.assertEquals(1, ((JSONArray) new JSONParser().parse(body.toString())).size());
+	}
+
+	@Test
+	public void invalidRequests() throws Exception {
+		servlet.doGet(request(null, null), response);
+		servlet.doGet(request("git", "many"), response);
+		StringBuilder longQuery = new StringBuilder();
+		for (int i = 0; i <= PluginSearchServlet.MAX_QUERY_LENGTH; i++)
+			longQuery.append('g');
+		servlet.doGet(request(longQuery.toString(), null), response);
+		Mockito.verify(response, Mockito.times(3)).sendError(Mockito.eq(400), Mockito.anyString());
+	}
+
+	@Test
+	public void stillLoading() throws Exception {
+		Mockito.when(
+				jenkinsRetriever.getUpdateCenter(Mockito.any(HttpRetrievalService.class),
+						Mockito.anyLong())).thenReturn(null);
+		servlet.doGet(request("git", null), response);
+		Mockito.verify(jenkinsRetriever).getUpdateCenter(Mockito.any(HttpRetrievalService.class),
+				Mockito.eq(PluginInfoServlet.WAIT));
+		Mockito.verify(response).sendError(Mockito.eq(503), Mockito.anyString());
+	}
+}
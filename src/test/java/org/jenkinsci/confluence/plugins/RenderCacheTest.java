@@ -0,0 +1,135 @@
+package org.jenkinsci.confluence.plugins;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import com.atlassian.confluence.renderer.PageContext;
+import com.atlassian.renderer.RenderContext;
+
+public class RenderCacheTest {
+
+	@Test
+	public void evictsLeastRecentlyUsed() {
+		RenderCache cache = new RenderCache(2, 1000);
+		cache.put(1, "a", "A");
+		cache.put(1, "b", "B");
+		Assert.assertEquals("A", cache.get(1, "a"));
+		cache.put(1, "c", "C");
+		Assert.assertEquals(2, cache.size());
+		Assert.assertNull(cache.get(1, "b"));
+		Assert.assertEquals("A", cache.get(1, "a"));
+		Assert.assertEquals("C", cache.get(1, "c"));
+	}
+
+	@Test
+	public void evictsByWeight() {
+		RenderCache cache = new RenderCache(100, 10);
+		cache.put(1, "a", "1234");
+		cache.put(1, "b", "1234");
+		cache.put(1, "c", "1234");
+		Assert.assertEquals(2, cache.size());
+		Assert.assertNull(cache.get(1, "a"));
+		cache.put(1, "d", "12345678901");
+		Assert.assertNull(cache.get(1, "d"));
+	}
+
+	@Test
+	public void newGenerationInvalidatesEverything() {
+		RenderCache cache = new RenderCache(100, 1000);
+		cache.put(1, "a", "A");
+		Assert.assertNull(cache.get(2, "a"));
+		Assert.assertEquals(0, cache.size());
+		// late results rendered from an outdated snapshot are discarded
+		cache.put(1, "a", "A");
+		Assert.assertNull(cache.get(1, "a"));
+		Assert.assertNull(cache.get(2, "a"));
+	}
+
+	@Test
+	public void changeSetEvictsOnlyAffectedPlugins() throws Exception {
+		String v1 = "{'plugins':{'a':{'version':'1'},'b':{'version':'1'},'c':{'version':'1'}}}";
+		UpdateCenterSnapshot first = ChangeSetTest.snapshot(v1);
+		UpdateCenterSnapshot second = ChangeSetTest.snapshot(v1.replace("'b':{'version':'1'}", "'b':{'version':'2'}"))
+				.diffedAgainst(first);
+
+		RenderCache cache = new RenderCache(100, 1000);
+		cache.put(first, "a", Collections.singleton("a"), "A");
+		cache.put(first, "b", Collections.singleton("b"), "B");
+		cache.put(first, "ac", Arrays.asList("a", "c"), "AC");
+		cache.put(first, "ab", Arrays.asList("a", "b"), "AB");
+		cache.put(first.getGeneration(), "unknown", "?");
+
+		Assert.assertEquals("A", cache.get(second, "a"));
+		Assert.assertEquals("AC", cache.get(second, "ac"));
+		Assert.assertNull(cache.get(second, "b"));
+		Assert.assertNull(cache.get(second, "ab"));
+		Assert.assertNull(cache.get(second, "unknown"));
+		Assert.assertEquals(2, cache.size());
+	}
+
+	@Test
+	public void changeSetAgainstUnseenGenerationClearsEverything() throws Exception {
+		String v1 = "{'plugins':{'a':{'version':'1'},'b':{'version':'1'}}}";
+		UpdateCenterSnapshot first = ChangeSetTest.snapshot(v1);
+		UpdateCenterSnapshot second = ChangeSetTest.snapshot(v1);
+		UpdateCenterSnapshot third = ChangeSetTest.snapshot(v1).diffedAgainst(second);
+
+		RenderCache cache = new RenderCache(100, 1000);
+		cache.put(first, "a", Collections.singleton("a"), "A");
+		Assert.assertNull(cache.get(third, "a"));
+		Assert.assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void keyDistinguishesAdoption() {
+		RenderContext context = new RenderContext();
+		Assert.assertFalse(RenderCache.key(context, "foo", false, null).equals(
+				RenderCache.key(context, "foo", true, null)));
+		Assert.assertFalse(RenderCache.key(context, "foo", true, null).equals(
+				RenderCache.key(context, "foo", true, "help")));
+	}
+
+	@Test
+	public void keyDistinguishesSpaceAndOutputType() {
+		String display = RenderCache.key(new PageContext("JENKINS"), "foo", true, null);
+		Assert.assertEquals(display, RenderCache.key(new PageContext("JENKINS"), "foo", true, null));
+		Assert.assertFalse(display.equals(RenderCache.key(new PageContext("OTHER"), "foo", true, null)));
+		PageContext pdf = new PageContext("JENKINS");
+		pdf.setOutputType("pdf");
+		Assert.assertFalse(display.equals(RenderCache.key(pdf, "foo", true, null)));
+		Assert.assertFalse(display.equals(RenderCache.key(new RenderContext(), "foo", true, null)));
+	}
+
+	@Test
+	public void hitsDoNotWaitForWriters() throws Exception {
+		final RenderCache cache = new RenderCache(100, 1000);
+		cache.put(1, "a", "A");
+		final CountDownLatch locked = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		Thread writer = new Thread() {
+			public void run() {
+				synchronized (cache) {
+					locked.countDown();
+					try {
+						release.await();
+					} catch (InterruptedException e) {
+						// done
+					}
+				}
+			}
+		};
+		writer.start();
+		try {
+			locked.await();
+			Assert.assertEquals("A", cache.get(1, "a"));
+		} finally {
+			release.countDown();
+			writer.join();
+		}
+	}
+}
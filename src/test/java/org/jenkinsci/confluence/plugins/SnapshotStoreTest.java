@@ -0,0 +1,124 @@
+package org.jenkinsci.confluence.plugins;
+
+import java.io.File;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+
+import junit.framework.Assert;
+
+import org.apache.commons.io.FileUtils;
+import org.jenkinsci.confluence.plugins.WarningIndex.PluginWarnings;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SnapshotStoreTest {
+
+	private static final String WARNINGS = "{'plugins':{'foo':{'title':'Foo','version':'1.0'}},'warnings':["
+			+ "{'id':'SECURITY-1','type':'plugin','name':'foo','message':'XSS','url':'u1',"
+			+ "'versions':[{'pattern':'1[.]0'}]},"
+			+ "{'id':'SECURITY-2','type':'plugin','name':'foo','message':'CSRF','url':'u2',"
+			+ "'versions':[{'pattern':'0[.].*'}]},"
+			+ "{'id':'SECURITY-3','type':'plugin','name':'gone','message':'RCE','url':'u3','versions':[]},"
+			+ "{'id':'SECURITY-4','type':'plugin','name':'bad','message':'Bad','url':'u4',"
+			+ "'versions':[{'pattern':'(['}]}]}";
+
+	private File directory;
+
+	@Before
+	public void createDirectory() throws Exception {
+		directory = File.createTempFile("snapshot", "");
+		directory.delete();
+	}
+
+	@After
+	public void deleteDirectory() throws Exception {
+		FileUtils.deleteDirectory(directory);
+	}
+
+	@Test
+	public void roundTripsFixture() throws Exception {
+		UpdateCenterSnapshot original = new UpdateCenterSnapshot(UpdateCenterParser.parse(new InputStreamReader(
+				SnapshotStoreTest.class.getResourceAsStream("/update-center.json"), "UTF-8")), 1234L, "\"etag\"",
+				"Thu, 01 Jan 2015 00:00:00 GMT");
+		SnapshotStore store = new SnapshotStore(new File(directory, "update-center.snapshot"));
+		Assert.assertTrue(store.save(original));
+
+		UpdateCenterSnapshot restored = new SnapshotStore(store.getFile()).load();
+		Assert.assertNotNull(restored);
+		Assert.assertTrue(restored.getGeneration() != original.getGeneration());
+		Assert.assertEquals(1234L, restored.getTimestamp());
+		Assert.assertEquals("\"etag\"", restored.getEtag());
+		Assert.assertEquals("Thu, 01 Jan 2015 00:00:00 GMT", restored.getLastModified());
+		Assert.assertTrue(ChangeSet.between(original, restored).isEmpty());
+		Assert.assertEquals(790, restored.getPlugins().size());
+		int subversion = restored.getPlugins().indexOf("subversion");
+		Assert.assertEquals("1.50", restored.getPlugins().getVersion(subversion));
+		DependencyGraph dependencies = restored.getDependencies();
+		Assert.assertEquals(original.getDependencies().getEdgeCount(), dependencies.getEdgeCount());
+		int maven = dependencies.nodeOf("maven-plugin");
+		Assert.assertEquals("token-macro", dependencies.getId(dependencies.getDependency(maven, 2)));
+		Assert.assertTrue(dependencies.isOptional(maven, 2));
+		Assert.assertEquals("1.1", dependencies.getRequiredVersion(maven, 2));
+		Assert.assertFalse(dependencies.isDistributed(dependencies.nodeOf("copyarchiver")));
+	}
+
+	@Test
+	public void roundTripsWarnings() throws Exception {
+		UpdateCenterSnapshot original = ChangeSetTest.snapshot(WARNINGS);
+		UpdateCenterSnapshot restored = SnapshotStore.read(ByteBuffer.wrap(SnapshotStore.write(original)));
+		for (String pluginId : new String[] { "foo", "gone", "bad" }) {
+			Assert.assertEquals(original.getWarnings().get(pluginId), restored.getWarnings().get(pluginId));
+		}
+		PluginWarnings foo = restored.getWarnings().get("foo");
+		Assert.assertEquals(1, foo.getCurrent().size());
+		Assert.assertEquals(1, foo.getOlder().size());
+		Assert.assertTrue(foo.getOlder().get(0).isRelevantForSpecificVersion("0.9"));
+		Assert.assertTrue(restored.getWarnings().get("gone").getCurrent().get(0).isRelevantForAnyVersion());
+		Assert.assertEquals(original.getWarnings().getDiagnostics(), restored.getWarnings().getDiagnostics());
+		Assert.assertEquals(1, restored.getWarnings().getDiagnostics().size());
+	}
+
+	@Test
+	public void readsInPlaceAtAnyOffset() throws Exception {
+		byte[] bytes = SnapshotStore.write(ChangeSetTest.snapshot(WARNINGS));
+		byte[] padded = new byte[bytes.length + 7];
+		System.arraycopy(bytes, 0, padded, 7, bytes.length);
+		ByteBuffer buffer = ByteBuffer.wrap(padded);
+		buffer.position(3);
+		UpdateCenterSnapshot restored = SnapshotStore.read(((ByteBuffer) buffer.slice().position(4)).slice());
+		Assert.assertNotNull(restored);
+		Assert.assertEquals("1.0", restored.getPlugins().getVersion(restored.getPlugins().indexOf("foo")));
+	}
+
+	@Test
+	public void savesEachGenerationOnce() throws Exception {
+		SnapshotStore store = new SnapshotStore(new File(directory, "update-center.snapshot"));
+		UpdateCenterSnapshot snapshot = ChangeSetTest.snapshot(WARNINGS);
+		Assert.assertTrue(store.save(snapshot));
+		Assert.assertFalse(store.save(snapshot.revalidated()));
+		Assert.assertFalse(store.save(null));
+	}
+
+	@Test
+	public void ignoresMissingOrDamagedFiles() throws Exception {
+		SnapshotStore store = new SnapshotStore(new File(directory, "update-center.snapshot"));
+		Assert.assertNull(store.load());
+
+		store.save(ChangeSetTest.snapshot(WARNINGS));
+		RandomAccessFile file = new RandomAccessFile(store.getFile(), "rw");
+		try {
+			file.seek(file.length() - 5);
+			file.write('x');
+		} finally {
+			file.close();
+		}
+		Assert.assertNull(store.load());
+
+		byte[] data = SnapshotStore.write(ChangeSetTest.snapshot(WARNINGS));
+		data[7] = (byte) (SnapshotStore.FORMAT_VERSION + 1);
+		Assert.assertNull(SnapshotStore.read(ByteBuffer.wrap(data)));
+		Assert.assertNull(SnapshotStore.read(ByteBuffer.wrap(data, 0, 10)));
+	}
+}
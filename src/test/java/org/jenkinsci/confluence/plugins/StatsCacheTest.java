@@ -0,0 +1,161 @@
+package org.jenkinsci.confluence.plugins;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Assert;
+
+import org.apache.commons.io.IOUtils;
+import org.jenkinsci.confluence.plugins.exception.PluginHttpException;
+import org.junit.After;
+import org.junit.Test;
+
+public class StatsCacheTest {
+
+	/**
+	 * Serves the *.stats.json test resources, and 404 for everything else.
+	 */
+	private static class FixtureLoader implements StatsCache.Loader {
+		final Map<String, AtomicInteger> calls = new ConcurrentHashMap<String, AtomicInteger>();
+
+		final AtomicInteger total = new AtomicInteger();
+
+		final AtomicInteger running = new AtomicInteger();
+
+		final AtomicInteger maxRunning = new AtomicInteger();
+
+		public String load(String pluginId) throws IOException,
+				PluginHttpException {
+			total.incrementAndGet();
+			AtomicInteger counter = new AtomicInteger();
+			AtomicInteger existing = ((ConcurrentHashMap<String, AtomicInteger>) calls)
+					.putIfAbsent(pluginId, counter);
+			(existing != null ? existing : counter).incrementAndGet();
+
+			int now = running.incrementAndGet();
+			synchronized (maxRunning) {
+				maxRunning.set(Math.max(maxRunning.get(), now));
+			}
+			try {
+				Thread.sleep(50);
+			} catch (InterruptedException e) {
+				throw new IOException("interrupted");
+			} finally {
+				running.decrementAndGet();
+			}
+
+			InputStream in = StatsCacheTest.class.getResourceAsStream("/"
+					+ pluginId + ".stats.json");
+			if (in == null) {
+				throw new PluginHttpException(404);
+			}
+			try {
+				return IOUtils.toString(in, "UTF-8");
+			} finally {
+				in.close();
+			}
+		}
+
+		int calls(String pluginId) {
+			AtomicInteger c = calls.get(pluginId);
+			return c != null ? c.get() : 0;
+		}
+	}
+
+	private final ExecutorService pool = Executors.newFixedThreadPool(2);
+
+	private final StatsCache cache = new StatsCache(60000, 60000, pool);
+
+	private final FixtureLoader loader = new FixtureLoader();
+
+	@After
+	public void tearDown() throws InterruptedException {
+		pool.shutdownNow();
+		pool.awaitTermination(5, TimeUnit.SECONDS);
+	}
+
+	@Test
+	public void cachesParsedStats() throws Exception {
+		TimeSeries subversion = cache.get("subversion", loader);
+		Assert.assertEquals(20334, subversion.countAt(1275343200000L));
+		Assert.assertSame(subversion, cache.get("subversion", loader));
+		Assert.assertEquals(1, loader.calls("subversion"));
+	}
+
+	@Test
+	public void emptyStats() throws Exception {
+		Assert.assertEquals(0, cache.get("none-timeseries", loader).size());
+		Assert.assertEquals(0, cache.get("zero-timeseries", loader).size());
+		Assert.assertEquals(1, cache.get("one-timeseries", loader).size());
+		Assert.assertEquals(2, cache.get("two-timeseries", loader).size());
+	}
+
+	@Test
+	public void unknownPluginsAreNegativelyCached() throws Exception {
+		Assert.assertNull(cache.get("does-not-exist", loader));
+		Assert.assertNull(cache.get("does-not-exist", loader));
+		Assert.assertEquals(1, loader.calls("does-not-exist"));
+	}
+
+	@Test
+	public void expiredUnknownPluginsAreDropped() throws Exception {
+		StatsCache expiring = new StatsCache(60000, 0, pool);
+		expiring.get("does-not-exist", loader);
+		expiring.get("subversion", loader);
+		Assert.assertEquals(2, expiring.size());
+		Thread.sleep(5);
+		Assert.assertEquals(0, expiring.refreshHot(loader));
+		Assert.assertEquals(1, expiring.size());
+		Assert.assertNotNull(expiring.get("subversion", loader));
+		Assert.assertEquals(1, loader.calls("subversion"));
+	}
+
+	@Test
+	public void expiredEntriesAreReloaded() throws Exception {
+		StatsCache expiring = new StatsCache(0, 0, pool);
+		expiring.get("crap4j", loader);
+		Thread.sleep(5);
+		expiring.get("crap4j", loader);
+		Assert.assertEquals(2, loader.calls("crap4j"));
+	}
+
+	@Test
+	public void otherErrorsAreNotCached() throws Exception {
+		StatsCache.Loader failing = new StatsCache.Loader() {
+			public String load(String pluginId) throws PluginHttpException {
+				throw new PluginHttpException(500);
+			}
+		};
+		try {
+			cache.get("subversion", failing);
+			Assert.fail();
+		} catch (PluginHttpException e) {
+			Assert.assertEquals(500, e.getStatusCode());
+		}
+		Assert.assertNotNull(cache.get("subversion", loader));
+		Assert.assertEquals(1, loader.calls("subversion"));
+	}
+
+	@Test
+	public void prefetchesConcurrentlyOnBoundedPool() throws Exception {
+		Map<String, TimeSeries> all = cache.getAll(Arrays.asList("subversion",
+				"crap4j", "cucumber-reports", "analysis-collector",
+				"plugin-name", "does-not-exist"), loader);
+		Assert.assertEquals(6, all.size());
+		Assert.assertNotNull(all.get("crap4j"));
+		Assert.assertNull(all.get("does-not-exist"));
+		Assert.assertEquals(6, loader.total.get());
+		// two pool threads, plus the caller possibly picking up one queued plugin
+		Assert.assertTrue(loader.maxRunning.get() <= 3);
+
+		cache.getAll(Arrays.asList("subversion", "crap4j"), loader);
+		Assert.assertEquals(6, loader.total.get());
+	}
+}
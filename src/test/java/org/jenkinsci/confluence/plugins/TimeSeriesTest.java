@@ -0,0 +1,136 @@
+package org.jenkinsci.confluence.plugins;
+
+import java.io.IOException;
+
+import junit.framework.Assert;
+
+import org.apache.commons.io.IOUtils;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+import org.junit.Test;
+
+public class TimeSeriesTest {
+
+	private static TimeSeries load(String name) throws IOException,
+			ParseException {
+		return TimeSeries.parse(fixture(name));
+	}
+
+	private static String fixture(String name) throws IOException {
+		return IOUtils.toString(TimeSeriesTest.class.getResourceAsStream("/"
+				+ name + ".stats.json"), "UTF-8");
+	}
+
+	@Test
+	public void emptySeries() throws Exception {
+		for (String name : new String[] { "none-timeseries", "zero-timeseries" }) {
+			TimeSeries s = load(name);
+			Assert.assertTrue(s.isEmpty());
+			Assert.assertEquals(0, s.getLatest());
+			Assert.assertEquals(0, s.getGrowth());
+			Assert.assertEquals(0.0, s.getGrowthRate());
+			Assert.assertEquals(0, s.countAt(Long.MAX_VALUE));
+			Assert.assertTrue(s.downsample(10).isEmpty());
+			Assert.assertTrue(s.range(0, Long.MAX_VALUE).isEmpty());
+		}
+	}
+
+	@Test
+	public void singlePoint() throws Exception {
+		TimeSeries s = load("one-timeseries");
+		Assert.assertEquals(1, s.size());
+		Assert.assertEquals(s.getLatest(), s.getMax());
+		Assert.assertEquals(s.getMin(), s.getMax());
+		Assert.assertEquals(0, s.getGrowth());
+		Assert.assertEquals(1, s.downsample(1).size());
+	}
+
+	@Test
+	public void twoPoints() throws Exception {
+		TimeSeries s = load("two-timeseries");
+		Assert.assertEquals(2, s.size());
+		Assert.assertEquals(1277935200000L, s.getTimestamp(0));
+		Assert.assertEquals(27, s.getLatest());
+		Assert.assertEquals(18, s.getGrowth());
+		Assert.assertEquals(2.0, s.getGrowthRate());
+		Assert.assertEquals(0, s.countAt(1277935199999L));
+		Assert.assertEquals(9, s.countAt(1280613599999L));
+		Assert.assertEquals(27, s.countAt(1280613600000L));
+		Assert.assertEquals(2, s.downsample(2).size());
+		Assert.assertEquals(1, s.downsample(1).size());
+		Assert.assertEquals(27, s.downsample(1).getLatest());
+	}
+
+	@Test
+	public void matchesJsonParser() throws Exception {
+		for (String name : new String[] { "subversion", "analysis-collector",
+				"crap4j", "cucumber-reports", "plugin-name",
+				"AntepediaReporter-CI-plugin" }) {
+			JSONObject installations = (JSONObject) ((JSONObject) new JSONParser()
+					.parse(fixture(name))).get("installations");
+			TimeSeries s = load(name);
+			Assert.assertEquals(installations.size(), s.size());
+			for (int i = 0; i < s.size(); i++) {
+				Assert.assertEquals(((Number) installations.get(String
+						.valueOf(s.getTimestamp(i)))).intValue(), s.getCount(i));
+				if (i > 0) {
+					Assert.assertTrue(s.getTimestamp(i - 1) < s.getTimestamp(i));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void rangeQueries() throws Exception {
+		TimeSeries s = load("subversion");
+		TimeSeries year2010 = s.range(1262300400000L, 1293836400000L);
+		Assert.assertEquals(12, year2010.size());
+		Assert.assertEquals(1262300400000L, year2010.getTimestamp(0));
+		Assert.assertEquals(14391, year2010.getCount(0));
+		Assert.assertEquals(8319, year2010.getMin());
+		Assert.assertEquals(0, s.indexAtOrAfter(0));
+		Assert.assertEquals(s.size(), s.indexAtOrAfter(Long.MAX_VALUE));
+		Assert.assertTrue(s.range(5, 1).isEmpty());
+	}
+
+	@Test
+	public void summary() throws Exception {
+		TimeSeries s = load("subversion");
+		int max = 0;
+		for (int i = 0; i < s.size(); i++)
+			max = Math.max(max, s.getCount(i));
+		Assert.assertEquals(max, s.getMax());
+		Assert.assertEquals(max, s.countAt(s.getPeakTimestamp()));
+		Assert.assertEquals(s.getLatest() - s.getCount(0), s.getGrowth());
+	}
+
+	@Test
+	public void onlyInstallationsAreCollected() throws Exception {
+		TimeSeries s = TimeSeries.parse("{\"name\":\"foo\",\"installations\":{\"1000\":3,\"2000\":4},"
+				+ "\"installationsPercentage\":{\"3000\":5}}");
+		Assert.assertEquals(2, s.size());
+		Assert.assertEquals(2000L, s.getTimestamp(1));
+		s = TimeSeries.parse("{\"installations\":7,\"installationsPerVersion\":{\"1000\":3}}");
+		Assert.assertTrue(s.isEmpty());
+		s = TimeSeries.parse("{\"installations\":[{\"1000\":3}],\"other\":{\"2000\":4}}");
+		Assert.assertTrue(s.isEmpty());
+	}
+
+	@Test
+	public void downsampleKeepsEndsAndSpikes() {
+		long[] t = new long[100];
+		int[] c = new int[100];
+		for (int i = 0; i < 100; i++) {
+			t[i] = 1000L * (99 - i); // reversed on purpose
+			c[i] = (99 - i) == 37 ? 5000 : 99 - i;
+		}
+		TimeSeries s = TimeSeries.of(t, c);
+		TimeSeries d = s.downsample(10);
+		Assert.assertEquals(10, d.size());
+		Assert.assertEquals(0L, d.getTimestamp(0));
+		Assert.assertEquals(99000L, d.getTimestamp(9));
+		Assert.assertEquals(5000, d.getMax());
+		Assert.assertSame(s, s.downsample(100));
+	}
+}
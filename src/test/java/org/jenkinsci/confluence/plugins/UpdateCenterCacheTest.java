@@ -0,0 +1,369 @@
+package org.jenkinsci.confluence.plugins;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.Assert;
+
+import org.apache.commons.io.IOUtils;
+import org.jenkinsci.confluence.plugins.exception.PluginHttpException;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.ParseException;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.atlassian.confluence.util.http.HttpRequest;
+import com.atlassian.confluence.util.http.HttpResponse;
+import com.atlassian.confluence.util.http.HttpRetrievalService;
+import com.atlassian.renderer.RenderContext;
+import com.atlassian.renderer.v2.SubRenderer;
+
+public class UpdateCenterCacheTest {
+
+	private static final Executor SAME_THREAD = new Executor() {
+		public void execute(Runnable command) {
+			command.run();
+		}
+	};
+
+	private static class CountingLoader implements UpdateCenterCache.Loader {
+		final AtomicInteger calls = new AtomicInteger();
+
+		long timestamp = System.currentTimeMillis();
+
+		public UpdateCenterSnapshot load(UpdateCenterSnapshot previous)
+				throws IOException, PluginHttpException, ParseException {
+			calls.incrementAndGet();
+			return new UpdateCenterSnapshot(new JSONObject(), timestamp);
+		}
+	}
+
+	private static class ManualClock implements Clock {
+		long now = 1000;
+
+		public long currentTimeMillis() {
+			return now;
+		}
+	}
+
+	@Test
+	public void firstGetLoadsOnce() throws Exception {
+		UpdateCenterCache cache = new UpdateCenterCache(60000, SAME_THREAD);
+		CountingLoader loader = new CountingLoader();
+		UpdateCenterSnapshot first = cache.get(loader);
+		UpdateCenterSnapshot second = cache.get(loader);
+		Assert.assertSame(first, second);
+		Assert.assertEquals(1, loader.calls.get());
+	}
+
+	@Test
+	public void staleSnapshotIsServedWhileRefreshing() throws Exception {
+		final Runnable[] pending = new Runnable[1];
+		UpdateCenterCache cache = new UpdateCenterCache(60000, new Executor() {
+			public void execute(Runnable command) {
+				pending[0] = command;
+			}
+		});
+		CountingLoader loader = new CountingLoader();
+		loader.timestamp = 0; // long expired
+		UpdateCenterSnapshot stale = cache.get(loader);
+
+		// the expired snapshot is still returned, only one refresh is queued
+		Assert.assertSame(stale, cache.get(loader));
+		Assert.assertSame(stale, cache.get(loader));
+		Assert.assertEquals(1, loader.calls.get());
+		Assert.assertNotNull(pending[0]);
+
+		loader.timestamp = System.currentTimeMillis();
+		pending[0].run();
+		Assert.assertEquals(2, loader.calls.get());
+		Assert.assertNotSame(stale, cache.get(loader));
+	}
+
+	@Test
+	public void refreshCarriesChangesSincePreviousSnapshot() throws Exception {
+		UpdateCenterCache cache = new UpdateCenterCache(60000, SAME_THREAD);
+		CountingLoader loader = new CountingLoader();
+		loader.timestamp = 0;
+		UpdateCenterSnapshot first = cache.get(loader);
+		Assert.assertNull(first.getChanges());
+
+		loader.timestamp = System.currentTimeMillis();
+		cache.get(loader); // refreshes on the calling thread
+		UpdateCenterSnapshot second = cache.peek();
+		Assert.assertEquals(2, loader.calls.get());
+		Assert.assertEquals(first.getGeneration(), second.getChanges().getBaseGeneration());
+		Assert.assertTrue(second.getChanges().isEmpty());
+	}
+
+	@Test
+	public void failedRefreshKeepsOldSnapshot() throws Exception {
+		UpdateCenterCache cache = new UpdateCenterCache(60000, SAME_THREAD);
+		CountingLoader loader = new CountingLoader();
+		loader.timestamp = 0;
+		UpdateCenterSnapshot stale = cache.get(loader);
+		Assert.assertSame(stale, cache.get(new UpdateCenterCache.Loader() {
+			public UpdateCenterSnapshot load(UpdateCenterSnapshot previous)
+					throws IOException {
+				throw new IOException("update site down");
+			}
+		}));
+		Assert.assertSame(stale, cache.peek());
+	}
+
+	@Test(expected = PluginHttpException.class)
+	public void initialLoadFailureIsPropagated() throws Exception {
+		UpdateCenterCache cache = new UpdateCenterCache(60000, SAME_THREAD);
+		cache.get(new UpdateCenterCache.Loader() {
+			public UpdateCenterSnapshot load(UpdateCenterSnapshot previous)
+					throws PluginHttpException {
+				throw new PluginHttpException(503);
+			}
+		});
+	}
+
+	@Test
+	public void concurrentRendersShareOneFetch() throws Exception {
+		final byte[] body = IOUtils.toByteArray(UpdateCenterCacheTest.class
+				.getResourceAsStream("/update-center.json"));
+		final AtomicInteger fetches = new AtomicInteger();
+		HttpRetrievalService httpRetrievalService = Mockito
+				.mock(HttpRetrievalService.class);
+		Mockito.when(httpRetrievalService.getDefaultRequestFor(Mockito.anyString()))
+				.thenReturn(Mockito.mock(HttpRequest.class));
+		Mockito.when(httpRetrievalService.get(Mockito.any(HttpRequest.class)))
+				.thenAnswer(new Answer<HttpResponse>() {
+					public HttpResponse answer(InvocationOnMock invocation)
+							throws Throwable {
+						fetches.incrementAndGet();
+						Thread.sleep(200); // a slow update site
+						HttpResponse response = Mockito.mock(HttpResponse.class);
+						Mockito.when(response.getStatusCode()).thenReturn(200);
+						Mockito.when(response.getResponse()).thenReturn(
+								new ByteArrayInputStream(body));
+						return response;
+					}
+				});
+		SubRenderer subRenderer = Mockito.mock(SubRenderer.class);
+		Mockito.when(subRenderer.render(Mockito.anyString(),
+				Mockito.any(RenderContext.class))).thenAnswer(new Answer<String>() {
+			public String answer(InvocationOnMock invocation) {
+				return (String) invocation.getArguments()[0];
+			}
+		});
+
+		final JenkinsPluginInfoMacro macro = new JenkinsPluginInfoMacro();
+		macro.setJenkinsRetriever(new JenkinsRetriever(new UpdateCenterCache(
+				60000, SAME_THREAD)));
+		macro.setHttpRetrievalService(httpRetrievalService);
+		macro.setSubRenderer(subRenderer);
+
+		int threads = 32;
+		final CountDownLatch start = new CountDownLatch(1);
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<String>> renders = new ArrayList<Future<String>>();
+			for (int i = 0; i < threads; i++) {
+				renders.add(pool.submit(new Callable<String>() {
+					public String call() throws Exception {
+						start.await();
+						Map<String, String> parameters = new HashMap<String, String>();
+						parameters.put("pluginId", "subversion");
+						return macro.execute(parameters, null, new RenderContext());
+					}
+				}));
+			}
+			start.countDown();
+			for (Future<String> render : renders) {
+				Assert.assertTrue(render.get().contains("Subversion Plugin"));
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+		Assert.assertEquals(1, fetches.get());
+	}
+
+	@Test
+	public void waitersShareFailure() throws Exception {
+		final CountDownLatch loading = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final AtomicInteger calls = new AtomicInteger();
+		final AtomicReference<Thread> loader = new AtomicReference<Thread>();
+		final UpdateCenterCache cache = new UpdateCenterCache(60000, SAME_THREAD);
+		final UpdateCenterCache.Loader failing = new UpdateCenterCache.Loader() {
+			public UpdateCenterSnapshot load(UpdateCenterSnapshot previous)
+					throws PluginHttpException {
+				calls.incrementAndGet();
+				loader.set(Thread.currentThread());
+				loading.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					throw new AssertionError(e);
+				}
+				throw new PluginHttpException(503);
+			}
+		};
+		ExecutorService pool = Executors.newFixedThreadPool(2);
+		try {
+			final List<Thread> callers = Collections.synchronizedList(new ArrayList<Thread>());
+			Callable<Integer> render = new Callable<Integer>() {
+				public Integer call() throws Exception {
+					callers.add(Thread.currentThread());
+					try {
+						cache.get(failing);
+						return 0;
+					} catch (PluginHttpException e) {
+						return e.getStatusCode();
+					}
+				}
+			};
+			Future<Integer> first = pool.submit(render);
+			loading.await();
+			Future<Integer> second = pool.submit(render);
+			// the second caller has joined once it is parked waiting for the load, the only place it waits
+			long deadline = System.currentTimeMillis() + 10000;
+			Thread waiter = null;
+			while (waiter == null || waiter.getState() != Thread.State.TIMED_WAITING) {
+				Assert.assertTrue("the second caller never joined the load",
+						System.currentTimeMillis() < deadline);
+				Thread.sleep(1);
+				synchronized (callers) {
+					for (Thread caller : callers) {
+						if (caller != loader.get())
+							waiter = caller;
+					}
+				}
+			}
+			release.countDown();
+			Assert.assertEquals(503, first.get().intValue());
+			Assert.assertEquals(503, second.get().intValue());
+		} finally {
+			pool.shutdownNow();
+		}
+		Assert.assertEquals(1, calls.get());
+	}
+
+	@Test
+	public void openCircuitFailsFastWithoutSnapshot() throws Exception {
+		UpdateCenterCache cache = new UpdateCenterCache(60000, SAME_THREAD,
+				new CircuitBreaker(2, 60000, 60000));
+		final AtomicInteger calls = new AtomicInteger();
+		UpdateCenterCache.Loader failing = new UpdateCenterCache.Loader() {
+			public UpdateCenterSnapshot load(UpdateCenterSnapshot previous)
+					throws IOException {
+				throw new IOException("down #" + calls.incrementAndGet());
+			}
+		};
+		for (int i = 1; i <= 4; i++) {
+			try {
+				cache.get(failing);
+				Assert.fail();
+			} catch (IOException e) {
+				// the third and fourth attempt do not reach the update site
+				Assert.assertEquals("down #" + Math.min(i, 2), e.getMessage());
+			}
+		}
+		Assert.assertEquals(2, calls.get());
+		Assert.assertTrue(cache.getCircuitBreaker().isOpen());
+	}
+
+	@Test
+	public void staleSnapshotIsServedWhileCircuitIsOpen() throws Exception {
+		ManualClock clock = new ManualClock();
+		CircuitBreaker breaker = new CircuitBreaker(1, 100, 1000, clock);
+		UpdateCenterCache cache = new UpdateCenterCache(0, SAME_THREAD, breaker, clock);
+		CountingLoader loader = new CountingLoader();
+		loader.timestamp = clock.now;
+		UpdateCenterSnapshot stale = cache.get(loader);
+		final AtomicInteger calls = new AtomicInteger();
+		UpdateCenterCache.Loader failing = new UpdateCenterCache.Loader() {
+			public UpdateCenterSnapshot load(UpdateCenterSnapshot previous)
+					throws PluginHttpException {
+				calls.incrementAndGet();
+				throw new PluginHttpException(502);
+			}
+		};
+		clock.now += 5;
+		for (int i = 0; i < 10; i++) {
+			Assert.assertSame(stale, cache.get(failing));
+		}
+		Assert.assertEquals(1, calls.get());
+		clock.now += 99;
+		Assert.assertSame(stale, cache.get(failing));
+		Assert.assertEquals(1, calls.get());
+
+		clock.now += 1; // backoff elapsed, the next render tries again
+		Assert.assertSame(stale, cache.get(failing));
+		Assert.assertEquals(2, calls.get());
+
+		// the backoff has doubled, and a success closes the circuit again
+		clock.now += 199;
+		Assert.assertSame(stale, cache.get(loader));
+		Assert.assertTrue(breaker.isOpen());
+		Assert.assertEquals(1, loader.calls.get());
+		clock.now += 1;
+		Assert.assertSame(stale, cache.get(loader));
+		Assert.assertEquals(2, loader.calls.get());
+		Assert.assertFalse(breaker.isOpen());
+		Assert.assertNotSame(stale, cache.peek());
+	}
+
+	@Test
+	public void getWithTimeoutGivesUpButLoadCompletes() throws Exception {
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			UpdateCenterCache cache = new UpdateCenterCache(60000, executor);
+			final CountDownLatch release = new CountDownLatch(1);
+			UpdateCenterCache.Loader slow = new UpdateCenterCache.Loader() {
+				public UpdateCenterSnapshot load(UpdateCenterSnapshot previous)
+						throws IOException {
+					try {
+						release.await();
+					} catch (InterruptedException e) {
+						throw new IOException(e.toString());
+					}
+					return new UpdateCenterSnapshot(new JSONObject());
+				}
+			};
+			Assert.assertNull(cache.get(slow, 50));
+			release.countDown();
+			UpdateCenterSnapshot snapshot = cache.get(slow, 5000);
+			Assert.assertNotNull(snapshot);
+			Assert.assertSame(snapshot, cache.get(slow, 0));
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void ownExecutorIsRecreatedAfterShutdown() throws Exception {
+		UpdateCenterCache cache = new UpdateCenterCache(60000, null);
+		CountingLoader loader = new CountingLoader();
+		Assert.assertNotNull(cache.get(loader, 10000));
+		cache.shutdown();
+		// the first load may not have cleared itself yet, in which case it is joined again
+		long deadline = System.currentTimeMillis() + 10000;
+		while (loader.calls.get() < 2 && System.currentTimeMillis() < deadline) {
+			cache.invalidate();
+			Assert.assertNotNull(cache.get(loader, 10000));
+		}
+		Assert.assertEquals(2, loader.calls.get());
+		cache.shutdown();
+	}
+}
@@ -0,0 +1,63 @@
+package org.jenkinsci.confluence.plugins;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.Map;
+
+import junit.framework.Assert;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+import org.junit.Test;
+
+public class UpdateCenterParserTest {
+
+	@Test
+	public void keepsOnlyTitleVersionAndDependencies() throws IOException, ParseException {
+		JSONObject full = (JSONObject) new JSONParser().parse(open());
+		JSONObject pruned = UpdateCenterParser.parse(open());
+
+		Assert.assertEquals(1, pruned.size());
+		JSONObject fullPlugins = (JSONObject) full.get("plugins");
+		JSONObject prunedPlugins = (JSONObject) pruned.get("plugins");
+		Assert.assertEquals(fullPlugins.size(), prunedPlugins.size());
+		for (Object o : fullPlugins.entrySet()) {
+			Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+			JSONObject fullPlugin = (JSONObject) e.getValue();
+			JSONObject prunedPlugin = (JSONObject) prunedPlugins.get(e.getKey());
+			Assert.assertEquals(fullPlugin.get("title"), prunedPlugin.get("title"));
+			Assert.assertEquals(fullPlugin.get("version"), prunedPlugin.get("version"));
+			Assert.assertEquals(fullPlugin.get("dependencies"), prunedPlugin.get("dependencies"));
+			Assert.assertFalse(prunedPlugin.containsKey("wiki"));
+		}
+	}
+
+	@Test
+	public void keepsWarnings() throws ParseException {
+		JSONObject pruned = UpdateCenterParser.parse("{\"core\":{\"version\":\"2.0\"},"
+				+ "\"warnings\":[{\"id\":\"SECURITY-1\",\"type\":\"plugin\",\"name\":\"foo\","
+				+ "\"message\":\"XSS\",\"url\":\"https://jenkins.io/\",\"extra\":[1,{\"a\":[]}],"
+				+ "\"versions\":[{\"lastVersion\":\"1.0\",\"pattern\":\"1[.]0\"}]}]}");
+		Assert.assertEquals(1, pruned.size());
+		JSONObject warning = (JSONObject) ((JSONArray) pruned.get("warnings")).get(0);
+		Assert.assertEquals(6, warning.size());
+		Assert.assertEquals("foo", warning.get("name"));
+		Assert.assertEquals("XSS", warning.get("message"));
+		JSONObject version = (JSONObject) ((JSONArray) warning.get("versions")).get(0);
+		Assert.assertEquals(1, version.size());
+		Assert.assertEquals("1[.]0", version.get("pattern"));
+	}
+
+	@Test(expected = ParseException.class)
+	public void rejectsNonObject() throws ParseException {
+		UpdateCenterParser.parse("[1, 2]");
+	}
+
+	private Reader open() throws IOException {
+		return new InputStreamReader(UpdateCenterParserTest.class
+				.getResourceAsStream("/update-center.json"), "UTF-8");
+	}
+}
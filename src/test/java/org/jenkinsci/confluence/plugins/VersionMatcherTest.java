@@ -0,0 +1,67 @@
+package org.jenkinsci.confluence.plugins;
+
+import java.util.Arrays;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+public class VersionMatcherTest {
+
+	@Test
+	public void combinesPatterns() {
+		VersionMatcher m = VersionMatcher.compile(Arrays.asList("1[.][0-4]",
+				"2[.]0(|[.]1)", "3.*"));
+		Assert.assertTrue(m.matches("1.3"));
+		Assert.assertTrue(m.matches("2.0"));
+		Assert.assertTrue(m.matches("2.0.1"));
+		Assert.assertTrue(m.matches("3.14"));
+		Assert.assertFalse(m.matches("1.5"));
+		Assert.assertFalse(m.matches("2.0.2"));
+		Assert.assertFalse(m.matches(null));
+		Assert.assertTrue(m.getDiagnostics().isEmpty());
+	}
+
+	@Test
+	public void matchesWholeVersionOnly() {
+		VersionMatcher m = VersionMatcher.compile(Arrays.asList("1", "2"));
+		Assert.assertFalse(m.matches("12"));
+		Assert.assertFalse(m.matches("1|2"));
+	}
+
+	@Test
+	public void backReferencesStaySeparate() {
+		VersionMatcher m = VersionMatcher.compile(Arrays.asList("(\\d)[.]\\1",
+				"0[.]1"));
+		Assert.assertTrue(m.matches("2.2"));
+		Assert.assertTrue(m.matches("0.1"));
+		Assert.assertFalse(m.matches("2.3"));
+	}
+
+	@Test
+	public void invalidPatternsAreReported() {
+		VersionMatcher m = VersionMatcher.compile(Arrays.asList("(", "1[.]0"));
+		Assert.assertTrue(m.matches("1.0"));
+		Assert.assertFalse(m.matches("("));
+		Assert.assertEquals(1, m.getDiagnostics().size());
+		Assert.assertEquals(2, m.getPatterns().size());
+		Assert.assertFalse(VersionMatcher.NONE.matches("1.0"));
+	}
+
+	@Test
+	public void quotingStaysSeparate() {
+		VersionMatcher m = VersionMatcher.compile(Arrays.asList("\\Q1.0", "2[.]0"));
+		Assert.assertTrue(m.matches("1.0"));
+		Assert.assertFalse(m.matches("110"));
+		Assert.assertTrue(m.matches("2.0"));
+	}
+
+	@Test
+	public void commentsStaySeparate() {
+		VersionMatcher m = VersionMatcher.compile(Arrays.asList("(?x) 1[.]0 # first", "2[.]0"));
+		Assert.assertTrue(m.getDiagnostics().isEmpty());
+		Assert.assertTrue(m.matches("1.0"));
+		Assert.assertTrue(m.matches("2.0"));
+		Assert.assertFalse(m.matches("3.0"));
+	}
+}
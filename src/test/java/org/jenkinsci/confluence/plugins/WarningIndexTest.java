@@ -0,0 +1,63 @@
+package org.jenkinsci.confluence.plugins;
+
+import junit.framework.Assert;
+
+import org.jenkinsci.confluence.plugins.WarningIndex.PluginWarnings;
+import org.json.simple.JSONArray;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+import org.junit.Test;
+
+public class WarningIndexTest {
+
+	private static final String WARNINGS = "["
+			+ "{\"id\":\"SECURITY-1\",\"type\":\"plugin\",\"name\":\"foo\",\"message\":\"all\",\"url\":\"u1\",\"versions\":[]},"
+			+ "{\"id\":\"SECURITY-2\",\"type\":\"plugin\",\"name\":\"foo\",\"message\":\"old\",\"url\":\"u2\",\"versions\":[{\"pattern\":\"1[.][0-4]\"}]},"
+			+ "{\"id\":\"SECURITY-3\",\"type\":\"plugin\",\"name\":\"foo\",\"message\":\"latest\",\"url\":\"u3\",\"versions\":[{\"pattern\":\"1[.]5\"}]},"
+			+ "{\"id\":\"SECURITY-4\",\"type\":\"plugin\",\"name\":\"gone\",\"message\":\"any\",\"url\":\"u4\",\"versions\":[{\"pattern\":\".*\"}]},"
+			+ "{\"id\":\"SECURITY-5\",\"type\":\"plugin\",\"name\":\"bar\",\"message\":\"broken\",\"url\":\"u5\",\"versions\":[{\"pattern\":\"[\"}]},"
+			+ "{\"id\":\"SECURITY-6\",\"type\":\"core\",\"name\":\"core\",\"message\":\"core\",\"url\":\"u6\",\"versions\":[]},"
+			+ "{\"id\":\"SECURITY-1\",\"type\":\"plugin\",\"name\":\"foo\",\"message\":\"all\",\"url\":\"u1\",\"versions\":[]},"
+			+ "\"garbage\"]";
+
+	private WarningIndex build() throws ParseException {
+		PluginIndex plugins = new PluginIndex.Builder()
+				.add("foo", "Foo", "1.5").add("bar", "Bar", "2.0").build();
+		return WarningIndex.fromJSON((JSONArray) new JSONParser().parse(WARNINGS), plugins);
+	}
+
+	@Test
+	public void splitsByDistributedVersion() throws ParseException {
+		PluginWarnings foo = build().get("foo");
+		Assert.assertEquals(2, foo.getCurrent().size());
+		Assert.assertEquals("SECURITY-1", foo.getCurrent().get(0).getId());
+		Assert.assertEquals("SECURITY-3", foo.getCurrent().get(1).getId());
+		Assert.assertEquals(1, foo.getOlder().size());
+		Assert.assertEquals("SECURITY-2", foo.getOlder().get(0).getId());
+	}
+
+	@Test
+	public void suspendedPlugin() throws ParseException {
+		PluginWarnings gone = build().get("gone");
+		Assert.assertEquals(1, gone.getCurrent().size());
+		Assert.assertTrue(gone.getOlder().isEmpty());
+	}
+
+	@Test
+	public void invalidPatternMatchesNothing() throws ParseException {
+		PluginWarnings bar = build().get("bar");
+		Assert.assertTrue(bar.getCurrent().isEmpty());
+		Assert.assertEquals(1, bar.getOlder().size());
+		Assert.assertEquals(1, build().getDiagnostics().size());
+		Assert.assertTrue(build().getDiagnostics().get(0)
+				.startsWith("bar: SECURITY-5: invalid version pattern '['"));
+	}
+
+	@Test
+	public void ignoresOtherWarnings() throws ParseException {
+		WarningIndex index = build();
+		Assert.assertEquals(3, index.getPluginIds().size());
+		Assert.assertSame(PluginWarnings.NONE, index.get("core"));
+		Assert.assertTrue(WarningIndex.fromJSON(null, PluginIndex.EMPTY).get("foo").isEmpty());
+	}
+}
@@ -0,0 +1,45 @@
+package org.jenkinsci.confluence.plugins;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+public class WikiWriterTest {
+
+	@Test
+	public void template() {
+		WikiWriter.Template t = new WikiWriter.Template("| %e | %s | 100%% |");
+		Assert.assertEquals(2, t.arity());
+		Assert.assertEquals("|  |  | 100% |".length(), t.length());
+		Assert.assertEquals("| a\\|b | [x|y] | 100% |",
+				new WikiWriter().print(t, "a|b", "[x|y]").toString());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void wrongArity() {
+		new WikiWriter().print(new WikiWriter.Template("%s %s"), "a");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void unsupportedConversion() {
+		new WikiWriter.Template("%d");
+	}
+
+	@Test
+	public void hrefEscapesText() {
+		Assert.assertEquals("[Foo \\[beta\\] \\| bar|https://example.com/]",
+				new WikiWriter().href("Foo [beta] | bar", "https://example.com/").toString());
+		Assert.assertEquals("[null|u]", new WikiWriter().href(null, "u").toString());
+	}
+
+	@Test
+	public void printKeepsFormatSemantics() {
+		Assert.assertEquals("1 and 2", new WikiWriter().print("%s and %s", 1, 2).toString());
+		Assert.assertEquals("007 [a]", new WikiWriter().print("%03d %s", 7, "[a]").toString());
+	}
+
+	@Test
+	public void adHocTemplate() {
+		Assert.assertEquals("1 and \\[2\\]", new WikiWriter().printTemplate("%s and %e", 1, "[2]").toString());
+	}
+}